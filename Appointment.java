@@ -1,31 +1,38 @@
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Appointment class - manages patient appointments with health professionals
  * Demonstrates polymorphism through HealthProfessional field
  */
-public class Appointment {
+public class Appointment implements AppointmentView {
 
+    // Source of appointment IDs - unique within this process
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id;
     private String patientName;
-    private String patientMobile;
-    private String timeSlot;
+    private long patientMobile;  // packed, see MobileNumber
+    private short slotMinute;  // minute of the day, see TimeSlot
     private HealthProfessional doctor;
-    private String status;
+    private byte status;  // AppointmentStatus code
+
+    // Booking order assigned when the appointment is stored, 0 until then
+    private long bookingSequence;
 
-    // Validation patterns
-    private static final Pattern MOBILE_PATTERN = Pattern.compile("^04[0-9]{8}$");
-    private static final Pattern TIME_PATTERN = Pattern.compile("^([01]?[0-9]|2[0-3]):[0-5][0-9]$");
+    // Set by the booking engine while this appointment is booked
+    private AppointmentListener listener;
+    private boolean holdingSlot;
 
     /**
      * Default constructor
      */
     public Appointment() {
+        this.id = NEXT_ID.incrementAndGet();
         this.patientName = "Unknown";
-        this.patientMobile = "0400000000";
-        this.timeSlot = "09:00";
+        this.patientMobile = MobileNumber.pack("0400000000");
+        this.slotMinute = 9 * 60;
         this.doctor = null;
-        this.status = "SCHEDULED";
+        this.status = AppointmentStatus.SCHEDULED.code();
     }
 
     /**
@@ -35,121 +42,152 @@ public class Appointment {
                        String timeSlot, HealthProfessional doctor) {
 
         // Validate all input parameters
+        long start = BookingMetrics.validationStart();
         if (!isValidName(patientName)) {
+            BookingMetrics.validationRejected(BookingMetrics.Rejection.INVALID_NAME);
             throw new IllegalArgumentException("Invalid patient name: " + patientName);
         }
-        if (!isValidMobile(patientMobile)) {
+        long mobile = MobileNumber.parse(patientMobile);
+        if (mobile == MobileNumber.INVALID) {
+            BookingMetrics.validationRejected(BookingMetrics.Rejection.INVALID_MOBILE);
             throw new IllegalArgumentException("Invalid mobile number: " + patientMobile);
         }
-        if (!isValidTimeSlot(timeSlot)) {
+        int minute = TimeSlot.parse(timeSlot);
+        if (minute == TimeSlot.INVALID) {
+            BookingMetrics.validationRejected(BookingMetrics.Rejection.INVALID_TIME);
             throw new IllegalArgumentException("Invalid time format: " + timeSlot);
         }
         if (doctor == null) {
+            BookingMetrics.validationRejected(BookingMetrics.Rejection.MISSING_DOCTOR);
             throw new IllegalArgumentException("Doctor cannot be null");
         }
+        BookingMetrics.validationCompleted(start);
+
+        this.id = NEXT_ID.incrementAndGet();
 
         this.patientName = patientName.trim();
-        this.patientMobile = patientMobile.trim().replace(" ", "");
-        this.timeSlot = timeSlot;
+        this.patientMobile = mobile;
+        this.slotMinute = (short) minute;
         this.doctor = doctor;  // Polymorphic assignment
-        this.status = "SCHEDULED";
-    }
-
-    // Validation methods
-    private boolean isValidName(String name) {
-        return name != null && name.trim().length() >= 2;
-    }
-
-    private boolean isValidMobile(String mobile) {
-        if (mobile == null) return false;
-        String cleanMobile = mobile.trim().replace(" ", "");
-        Matcher matcher = MOBILE_PATTERN.matcher(cleanMobile);
-        return matcher.matches();
-    }
-
-    private boolean isValidTimeSlot(String time) {
-        if (time == null) return false;
-        Matcher matcher = TIME_PATTERN.matcher(time.trim());
-        return matcher.matches();
+        this.status = AppointmentStatus.SCHEDULED.code();
     }
 
     /**
-     * Print appointment details with formatted output
+     * Restore constructor - packed fields read back from trusted storage, so
+     * there is no validation, no parsing and no metrics
      */
-    public void printAppointmentDetails() {
-        System.out.println("=== Appointment Details ===");
-        System.out.println("Patient: " + patientName);
-        System.out.println("Mobile: " + patientMobile);
-        System.out.println("Time: " + timeSlot);
-        System.out.println("Doctor: " + doctor.getName());
-        System.out.println("Doctor ID: " + doctor.getId());
-        System.out.println("Doctor Type: " + doctor.getProfessionalType());
-        System.out.println("Status: " + status);
-        System.out.println("===========================");
+    Appointment(String patientName, long patientMobile, int slotMinute,
+                HealthProfessional doctor, AppointmentStatus status) {
+        this.id = NEXT_ID.incrementAndGet();
+        this.patientName = patientName;
+        this.patientMobile = patientMobile;
+        this.slotMinute = (short) slotMinute;
+        this.doctor = doctor;
+        this.status = status.code();
     }
 
     /**
-     * Cancel this appointment
+     * Next appointment ID - for stores that hold an appointment's fields
+     * without building the object
      */
-    public void cancel() {
-        if ("CANCELLED".equals(this.status)) {
-            System.out.println("Appointment already cancelled");
-            return;
-        }
-        this.status = "CANCELLED";
-        System.out.println("Appointment cancelled: " + patientName);
+    static long nextId() {
+        return NEXT_ID.incrementAndGet();
     }
 
-    /**
-     * Confirm this appointment
-     */
-    public void confirm() {
-        this.status = "CONFIRMED";
+    // Validation methods
+    private boolean isValidName(String name) {
+        return name != null && name.trim().length() >= 2;
     }
 
     /**
-     * Check if appointment is still valid (not cancelled)
+     * Move to a new status if the transition is legal
+     * Returns false, without throwing, for an illegal transition
      */
-    public boolean isValid() {
-        return !"CANCELLED".equals(this.status);
+    public boolean transitionTo(AppointmentStatus target) {
+        if (!getAppointmentStatus().canTransitionTo(target)) {
+            return false;
+        }
+        if (listener != null) {
+            return listener.statusChangeRequested(this, target);
+        }
+        this.status = target.code();
+        return true;
     }
 
+    // Getters and Setters
+
     /**
-     * Get summary string for this appointment
+     * Generated identity of this appointment - a patient may hold many
+     * appointments, so the mobile number does not identify one
      */
-    public String getAppointmentSummary() {
-        return String.format("%s - %s with %s",
-                timeSlot, patientName, doctor.getName());
+    public long getId() {
+        return id;
     }
 
-    // Getters and Setters
     public String getPatientName() {
         return patientName;
     }
 
+    /**
+     * Change the name - a booked appointment is re-indexed by the booking engine
+     */
     public void setPatientName(String patientName) {
-        if (isValidName(patientName)) {
+        if (!isValidName(patientName) || patientName.trim().equals(this.patientName)) {
+            return;
+        }
+        if (listener != null) {
+            listener.nameChangeRequested(this, patientName.trim());
+        } else {
             this.patientName = patientName.trim();
         }
     }
 
     public String getPatientMobile() {
+        return MobileNumber.unpack(patientMobile);
+    }
+
+    /**
+     * Mobile packed by MobileNumber.parse - the key stores and indexes use
+     */
+    public long getMobileKey() {
         return patientMobile;
     }
 
+    /**
+     * Change the mobile - a booked appointment is re-indexed by the booking engine
+     */
     public void setPatientMobile(String patientMobile) {
-        if (isValidMobile(patientMobile)) {
-            this.patientMobile = patientMobile.trim().replace(" ", "");
+        long mobile = MobileNumber.parse(patientMobile);
+        if (mobile == MobileNumber.INVALID || mobile == this.patientMobile) {
+            return;
+        }
+        if (listener != null) {
+            listener.mobileChangeRequested(this, mobile);
+        } else {
+            this.patientMobile = mobile;
         }
     }
 
-    public String getTimeSlot() {
-        return timeSlot;
+    /**
+     * Time slot as minute of the day - used for sorting and conflict checks
+     */
+    public int getSlotMinute() {
+        return slotMinute;
     }
 
+    /**
+     * Change the time slot - invalid times, or a slot the booking engine
+     * cannot move this appointment to, are ignored
+     */
     public void setTimeSlot(String timeSlot) {
-        if (isValidTimeSlot(timeSlot)) {
-            this.timeSlot = timeSlot;
+        int minute = TimeSlot.parse(timeSlot);
+        if (minute == TimeSlot.INVALID || minute == slotMinute) {
+            return;
+        }
+        if (listener != null) {
+            listener.timeSlotChangeRequested(this, minute);
+        } else {
+            this.slotMinute = (short) minute;
         }
     }
 
@@ -157,26 +195,96 @@ public class Appointment {
         return doctor;
     }
 
+    /**
+     * ID of the assigned doctor - the key used by the registry and booking engine
+     */
+    public int getDoctorId() {
+        return doctor.getId();
+    }
+
+    /**
+     * Change the doctor - a booked appointment is moved by the booking engine,
+     * which ignores the change if the new doctor cannot take the slot
+     */
     public void setDoctor(HealthProfessional doctor) {
-        if (doctor != null) {
+        if (doctor == null) {
+            return;
+        }
+        if (listener != null) {
+            listener.doctorChangeRequested(this, doctor);
+        } else {
             this.doctor = doctor;
         }
     }
 
-    public String getStatus() {
-        return status;
+    public AppointmentStatus getAppointmentStatus() {
+        return AppointmentStatus.fromCode(status);
     }
 
+    /**
+     * Set status by name - unknown names and illegal transitions are ignored
+     */
     public void setStatus(String status) {
-        this.status = status;
+        AppointmentStatus target = AppointmentStatus.parse(status);
+        if (target != null && target != getAppointmentStatus()) {
+            transitionTo(target);
+        }
+    }
+
+    long getBookingSequence() {
+        return bookingSequence;
+    }
+
+    void setBookingSequence(long bookingSequence) {
+        this.bookingSequence = bookingSequence;
+    }
+
+    void applyPatientMobile(long patientMobile) {
+        this.patientMobile = patientMobile;
+    }
+
+    void applyPatientName(String patientName) {
+        this.patientName = patientName;
+    }
+
+    void applySlotMinute(int minute) {
+        this.slotMinute = (short) minute;
+    }
+
+    void applyDoctor(HealthProfessional doctor) {
+        this.doctor = doctor;
+    }
+
+    void applyStatus(AppointmentStatus status) {
+        this.status = status.code();
+    }
+
+    AppointmentListener getListener() {
+        return listener;
+    }
+
+    void setListener(AppointmentListener listener) {
+        this.listener = listener;
+    }
+
+    boolean isHoldingSlot() {
+        return holdingSlot;
+    }
+
+    void setHoldingSlot(boolean holdingSlot) {
+        this.holdingSlot = holdingSlot;
     }
 
     @Override
     public String toString() {
-        return String.format(
-                "Appointment{patient='%s', mobile='%s', time='%s', doctor=%s}",
-                patientName, patientMobile, timeSlot, doctor.getName()
-        );
+        StringBuilder out = new StringBuilder(96)
+                .append("Appointment{id=").append(id)
+                .append(", patient='").append(patientName)
+                .append("', mobile='");
+        MobileNumber.appendTo(out, patientMobile);
+        return out.append("', time='").append(getTimeSlot())
+                .append("', doctor=").append(doctor.getName())
+                .append('}').toString();
     }
 
     @Override
@@ -184,11 +292,11 @@ public class Appointment {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Appointment that = (Appointment) obj;
-        return patientMobile.equals(that.patientMobile);
+        return id == that.id;
     }
 
     @Override
     public int hashCode() {
-        return patientMobile.hashCode();
+        return Long.hashCode(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,668 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * AppointmentJournal class - crash-safe persistence for a BookingEngine
+ * Appends one fixed-width binary record per booking change to a memory-mapped
+ * journal file, writes snapshots on request, and rebuilds the engine on startup
+ * by loading the latest snapshot and replaying the journal written after it.
+ * Every record carries a CRC32, so a truncated or torn tail is detected and
+ * dropped during recovery. Replay folds the records into packed per-booking
+ * state and only builds appointments for the bookings that survive, which
+ * it restores into the engine in one bulk pass
+ */
+public class AppointmentJournal implements BookingObserver, Closeable {
+
+    public static final String JOURNAL_FILE = "appointments.journal";
+    public static final String SNAPSHOT_FILE = "appointments.snapshot";
+
+    static final int RECORD_SIZE = 128;
+    static final int NAME_BYTES = 96;  // longer names are cut at a character boundary
+
+    private static final int REGION_SIZE = RECORD_SIZE * 512 * 1024;  // 64 MB per mapping
+    private static final int READ_CHUNK = RECORD_SIZE * 8192;
+    private static final int JOURNAL_MAGIC = 0x41504A31;   // "APJ1"
+    private static final int SNAPSHOT_MAGIC = 0x41505331;  // "APS1"
+    private static final int VERSION = 1;
+
+    // Record types - zero marks space that was never written
+    private static final byte BOOKED = 1;
+    private static final byte STATUS_CHANGED = 2;
+    private static final byte RESCHEDULED = 3;
+    private static final byte REMOVED = 4;
+    private static final byte MOBILE_CHANGED = 5;
+    private static final byte NAME_CHANGED = 6;
+
+    // Record layout - the CRC covers every byte after it
+    private static final int CRC = 0;
+    private static final int TYPE = 4;
+    private static final int STATUS = 5;
+    private static final int SLOT = 6;
+    private static final int SEQUENCE = 8;
+    private static final int MOBILE = 16;
+    private static final int DOCTOR = 24;
+    private static final int NAME_LENGTH = 28;
+    private static final int NAME = 32;
+
+    // Header layout, shared by the journal and the snapshot (first record slot)
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_COUNT = 12;
+    private static final int HEADER_JOURNAL_OFFSET = 16;
+
+    private final Path directory;
+    private final BookingEngine engine;
+    private final FileChannel channel;
+    private final AtomicLong nextOffset;
+    private volatile MappedByteBuffer[] regions;
+
+    // Serializes snapshots without blocking appends
+    private final Object snapshotLock = new Object();
+
+    // Encoding scratch space, one per booking thread
+    private final ThreadLocal<RecordBuffer> buffers = ThreadLocal.withInitial(RecordBuffer::new);
+
+    private final long recoveredEvents;
+    private final long discardedBytes;
+
+    private AppointmentJournal(Path directory, BookingEngine engine, FileChannel channel,
+                               long endOffset, long recoveredEvents, long discardedBytes) {
+        this.directory = directory;
+        this.engine = engine;
+        this.channel = channel;
+        this.nextOffset = new AtomicLong(endOffset);
+        this.regions = new MappedByteBuffer[0];
+        this.recoveredEvents = recoveredEvents;
+        this.discardedBytes = discardedBytes;
+    }
+
+    /**
+     * Recover the engine from the journal in a directory, then start journaling
+     * every later change. The engine should be empty and have no other
+     * persistence attached. Doctors are looked up by ID; records for unknown
+     * doctors are skipped
+     */
+    public static AppointmentJournal open(Path directory, BookingEngine engine,
+                                          IntFunction<HealthProfessional> doctors) throws IOException {
+        if (engine == null || doctors == null) {
+            throw new IllegalArgumentException("Engine and doctor lookup are required");
+        }
+        Files.createDirectories(directory);
+        Replay replay = new Replay(engine, doctors);
+
+        long fromOffset = RECORD_SIZE;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            fromOffset = Math.max(fromOffset, loadSnapshot(snapshot, replay));
+        }
+
+        FileChannel channel = FileChannel.open(directory.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                writeHeader(channel, JOURNAL_MAGIC, 0, 0);
+            } else {
+                checkHeader(channel, JOURNAL_MAGIC);
+            }
+
+            long size = channel.size();
+            replay.reserve((size - fromOffset) / RECORD_SIZE);
+            long endOffset = (fromOffset < size) ? readRecords(channel, fromOffset, size, replay) : size;
+            long discarded = countNonZero(channel, endOffset, size);
+            replay.restore();
+
+            // Drop the torn tail so stale records can never be replayed later
+            channel.truncate(endOffset);
+
+            AppointmentJournal journal = new AppointmentJournal(directory, engine, channel,
+                    endOffset, replay.events, discarded);
+            if (fromOffset > endOffset) {
+                // The journal lost records the snapshot relied on - re-anchor it
+                journal.snapshot();
+            }
+            engine.addObserver(journal);
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of snapshot and journal records applied during recovery
+     */
+    public long getRecoveredEvents() {
+        return recoveredEvents;
+    }
+
+    /**
+     * Bytes of damaged or incomplete records dropped from the journal tail
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * Bytes of journal written so far, including the header
+     */
+    public long getJournalSize() {
+        return nextOffset.get();
+    }
+
+    @Override
+    public void appointmentBooked(Appointment appointment) {
+        append(BOOKED, appointment);
+    }
+
+    @Override
+    public void statusChanged(Appointment appointment, AppointmentStatus oldStatus) {
+        append(STATUS_CHANGED, appointment);
+    }
+
+    @Override
+    public void timeSlotChanged(Appointment appointment, int oldMinute) {
+        append(RESCHEDULED, appointment);
+    }
+
+    @Override
+    public void patientMobileChanged(Appointment appointment, long oldMobile) {
+        append(MOBILE_CHANGED, appointment);
+    }
+
+    @Override
+    public void patientNameChanged(Appointment appointment, String oldName) {
+        append(NAME_CHANGED, appointment);
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        append(REMOVED, appointment);
+    }
+
+    /**
+     * Write every booked appointment to a new snapshot file, so recovery can
+     * skip the journal written before it. The file is replaced atomically
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        // Taken before copying the engine: replaying from here is idempotent
+        long journalOffset = nextOffset.get();
+        List<Appointment> appointments = engine.snapshot();
+
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, SNAPSHOT_MAGIC, appointments.size(), journalOffset);
+
+            ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK);
+            RecordBuffer record = buffers.get();
+            for (Appointment appointment : appointments) {
+                record.encode(BOOKED, appointment);
+                if (chunk.remaining() < RECORD_SIZE) {
+                    writeFully(out, chunk);
+                }
+                chunk.put(record.bytes);
+            }
+            writeFully(out, chunk);
+            out.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Flush mapped journal pages to the storage device
+     */
+    public void sync() {
+        for (MappedByteBuffer region : regions) {
+            if (region != null) {
+                region.force();
+            }
+        }
+    }
+
+    /**
+     * Stop journaling, flush, and trim the file to the records written
+     */
+    @Override
+    public void close() throws IOException {
+        engine.removeObserver(this);
+        sync();
+        regions = new MappedByteBuffer[0];
+        channel.truncate(nextOffset.get());
+        channel.close();
+    }
+
+    // Reserve the next record slot without locking, then copy the record in
+    private void append(byte type, Appointment appointment) {
+        RecordBuffer record = buffers.get();
+        record.encode(type, appointment);
+
+        long offset = nextOffset.getAndAdd(RECORD_SIZE);
+        region((int) (offset / REGION_SIZE)).put((int) (offset % REGION_SIZE), record.bytes);
+    }
+
+    private MappedByteBuffer region(int index) {
+        MappedByteBuffer[] current = regions;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+
+        synchronized (this) {
+            current = regions;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, index + 1);
+            }
+            if (current[index] == null) {
+                try {
+                    current[index] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            (long) index * REGION_SIZE, REGION_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot map appointment journal", e);
+                }
+            }
+            regions = current;
+            return current[index];
+        }
+    }
+
+    // Returns the journal offset the snapshot covers, or the start if it is unusable
+    private static long loadSnapshot(Path snapshot, Replay replay) throws IOException {
+        try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = checkHeader(in, SNAPSHOT_MAGIC);
+            int count = header.getInt(HEADER_COUNT);
+            long end = RECORD_SIZE + (long) count * RECORD_SIZE;
+
+            // Validate every record before restoring any of them
+            if (in.size() < end || readRecords(in, RECORD_SIZE, end, null) != end) {
+                return RECORD_SIZE;
+            }
+            replay.reserve(count);
+            readRecords(in, RECORD_SIZE, end, replay);
+            return header.getLong(HEADER_JOURNAL_OFFSET);
+        } catch (IOException e) {
+            return RECORD_SIZE;
+        }
+    }
+
+    // Apply valid records in [from, to) and return the offset of the first invalid one.
+    // Each region is mapped read-only and decoded in place, with no copy to the heap
+    private static long readRecords(FileChannel in, long from, long to, Replay replay) throws IOException {
+        CRC32 crc = new CRC32();
+        long offset = from;
+        long end = from + (Math.min(to, in.size()) - from) / RECORD_SIZE * RECORD_SIZE;
+
+        while (offset < end) {
+            int length = (int) Math.min(REGION_SIZE, end - offset);
+            MappedByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            for (int start = 0; start < length; start += RECORD_SIZE) {
+                crc.reset();
+                region.limit(start + RECORD_SIZE).position(start + TYPE);
+                crc.update(region);
+                if (region.get(start + TYPE) == 0 || (int) crc.getValue() != region.getInt(start + CRC)) {
+                    return offset + start;
+                }
+                if (replay != null) {
+                    replay.apply(region, start);
+                }
+            }
+            offset += length;
+        }
+        return offset;
+    }
+
+    private static long countNonZero(FileChannel in, long from, long to) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK);
+        long offset = from;
+        long lastNonZero = from;
+        while (offset < to) {
+            chunk.clear();
+            int read = in.read(chunk, offset);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (chunk.get(i) != 0) {
+                    lastNonZero = offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return lastNonZero - from;
+    }
+
+    private static void writeHeader(FileChannel out, int magic, int count, long journalOffset)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE);
+        header.putInt(HEADER_MAGIC, magic);
+        header.putInt(HEADER_VERSION, VERSION);
+        header.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        header.putInt(HEADER_COUNT, count);
+        header.putLong(HEADER_JOURNAL_OFFSET, journalOffset);
+        out.write(header, 0);
+        out.position(RECORD_SIZE);
+    }
+
+    private static ByteBuffer checkHeader(FileChannel in, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE);
+        in.read(header, 0);
+        if (header.position() < RECORD_SIZE || header.getInt(HEADER_MAGIC) != magic
+                || header.getInt(HEADER_VERSION) != VERSION
+                || header.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IOException("Not a version " + VERSION + " appointment file");
+        }
+        return header;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            out.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Reusable encoder for one fixed-width record
+     */
+    private static class RecordBuffer {
+        final byte[] bytes = new byte[RECORD_SIZE];
+        final ByteBuffer view = ByteBuffer.wrap(bytes);
+        final CRC32 crc = new CRC32();
+
+        void encode(byte type, Appointment appointment) {
+            Arrays.fill(bytes, (byte) 0);
+            view.put(TYPE, type);
+            view.put(STATUS, appointment.getAppointmentStatus().code());
+            view.putShort(SLOT, (short) appointment.getSlotMinute());
+            view.putLong(SEQUENCE, appointment.getBookingSequence());
+            view.putLong(MOBILE, appointment.getMobileKey());
+            view.putInt(DOCTOR, appointment.getDoctor().getId());
+
+            byte[] name = appointment.getPatientName().getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(name.length, NAME_BYTES);
+            while (length < name.length && (name[length] & 0xC0) == 0x80) {
+                length--;  // do not split a multi-byte character
+            }
+            view.putShort(NAME_LENGTH, (short) length);
+            System.arraycopy(name, 0, bytes, NAME, length);
+
+            crc.reset();
+            crc.update(bytes, TYPE, RECORD_SIZE - TYPE);
+            view.putInt(CRC, (int) crc.getValue());
+        }
+    }
+
+    /**
+     * Folds recovered records into the latest state of each booking, keyed
+     * by booking sequence, as packed columns - no appointment exists until
+     * restore. Every record type is idempotent, so records already reflected
+     * in the snapshot can safely be replayed again
+     */
+    private static class Replay {
+        private static final byte GONE = -1;  // status of a removed booking
+        private static final int STATUS_COUNT = AppointmentStatus.values().length;
+        private static final int MAX_ROWS = 1 << 28;  // reserve never sizes beyond this
+
+        final BookingEngine engine;
+        final IntFunction<HealthProfessional> doctors;
+        long events;
+
+        // Open-addressing table from booking sequence to row, 0 marks a free slot
+        private long[] keys = new long[1 << 12];
+        private int[] rowOf = new int[1 << 12];
+
+        // One row per booking, in the order their first records were read
+        private int rows;
+        private long[] sequenceOf = new long[1 << 10];
+        private int[] doctorIds = new int[1 << 10];
+        private long[] mobiles = new long[1 << 10];
+        private short[] minutes = new short[1 << 10];
+        private byte[] statuses = new byte[1 << 10];
+        private int[] nameAt = new int[1 << 10];
+        private byte[] nameLengths = new byte[1 << 10];
+
+        // Raw name bytes, appended as read: decoding them only for the rows
+        // that survive keeps a million short-lived strings out of the heap
+        private byte[] nameBytes = new byte[1 << 16];
+        private int nameEnd;
+
+        Replay(BookingEngine engine, IntFunction<HealthProfessional> doctors) {
+            this.engine = engine;
+            this.doctors = doctors;
+        }
+
+        void apply(ByteBuffer chunk, int start) {
+            events++;
+            long sequence = chunk.getLong(start + SEQUENCE);
+            byte type = chunk.get(start + TYPE);
+            byte status = chunk.get(start + STATUS);
+            if (sequence <= 0 || status < 0 || status >= STATUS_COUNT) {
+                return;
+            }
+            int slot = slotOf(sequence);
+            int row = (keys[slot] == sequence) ? rowOf[slot] : -1;
+
+            switch (type) {
+                case BOOKED:
+                    if (row < 0) {
+                        row = newRow();
+                        sequenceOf[row] = sequence;
+                        keys[slot] = sequence;
+                        rowOf[slot] = row;
+                        growKeys();
+                    } else if (statuses[row] != GONE) {
+                        break;
+                    }
+                    // A new booking, or a removed one booked again with a new doctor
+                    doctorIds[row] = chunk.getInt(start + DOCTOR);
+                    mobiles[row] = chunk.getLong(start + MOBILE);
+                    minutes[row] = chunk.getShort(start + SLOT);
+                    statuses[row] = status;
+                    readName(chunk, start, row);
+                    break;
+                case STATUS_CHANGED:
+                    if (row >= 0 && statuses[row] != GONE) {
+                        statuses[row] = status;
+                    }
+                    break;
+                case RESCHEDULED:
+                    if (row >= 0 && statuses[row] != GONE) {
+                        minutes[row] = chunk.getShort(start + SLOT);
+                    }
+                    break;
+                case MOBILE_CHANGED:
+                    if (row >= 0 && statuses[row] != GONE) {
+                        mobiles[row] = chunk.getLong(start + MOBILE);
+                    }
+                    break;
+                case NAME_CHANGED:
+                    if (row >= 0 && statuses[row] != GONE) {
+                        readName(chunk, start, row);
+                    }
+                    break;
+                case REMOVED:
+                    if (row >= 0) {
+                        statuses[row] = GONE;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Build the surviving bookings straight from their packed fields and
+         * restore them in one pass. Bookings for unknown doctors are skipped.
+         * Rows are counting-sorted by engine stripe first, so appointments are
+         * allocated in the order restoreAll walks them instead of jumping
+         * around the heap; within a stripe they keep journal order. Each pass
+         * is its own method, so the JIT compiles one small loop at a time.
+         * This is the replay's last step, so its tables are dropped as soon
+         * as they are no longer needed
+         */
+        void restore() {
+            // Nothing is looked up by sequence any more
+            keys = null;
+            rowOf = null;
+
+            HealthProfessional[] doctorOf = new HealthProfessional[rows];
+            int[] stripeStart = new int[engine.stripeCount() + 1];
+            int kept = resolveDoctors(doctorOf, stripeStart);
+            int[] order = orderByStripe(doctorOf, stripeStart, kept);
+
+            List<Appointment> restored = new ArrayList<>(kept);
+            long[] sequences = new long[kept];
+            build(order, doctorOf, restored, sequences);
+
+            // Let the columns go before the engine builds its indexes
+            sequenceOf = null;
+            doctorIds = null;
+            mobiles = null;
+            minutes = null;
+            statuses = null;
+            nameAt = null;
+            nameLengths = null;
+            nameBytes = null;
+            engine.restoreAll(restored, sequences);
+        }
+
+        // Doctor of each surviving row, counted per stripe; returns how many survive
+        private int resolveDoctors(HealthProfessional[] doctorOf, int[] stripeStart) {
+            int kept = 0;
+            for (int row = 0; row < rows; row++) {
+                if (statuses[row] == GONE) {
+                    continue;
+                }
+                HealthProfessional doctor = doctors.apply(doctorIds[row]);
+                if (doctor == null || minutes[row] < 0 || minutes[row] >= TimeSlot.MINUTES_PER_DAY) {
+                    continue;
+                }
+                doctorOf[row] = doctor;
+                stripeStart[engine.stripeOf(doctor.getId()) + 1]++;
+                kept++;
+            }
+            return kept;
+        }
+
+        private int[] orderByStripe(HealthProfessional[] doctorOf, int[] stripeStart, int kept) {
+            for (int stripe = 1; stripe < stripeStart.length; stripe++) {
+                stripeStart[stripe] += stripeStart[stripe - 1];
+            }
+            int[] order = new int[kept];
+            for (int row = 0; row < rows; row++) {
+                if (doctorOf[row] != null) {
+                    order[stripeStart[engine.stripeOf(doctorOf[row].getId())]++] = row;
+                }
+            }
+            return order;
+        }
+
+        private void build(int[] order, HealthProfessional[] doctorOf, List<Appointment> restored,
+                           long[] sequences) {
+            for (int row : order) {
+                sequences[restored.size()] = sequenceOf[row];
+                String name = new String(nameBytes, nameAt[row], nameLengths[row] & 0xFF,
+                        StandardCharsets.UTF_8);
+                restored.add(new Appointment(name, mobiles[row], minutes[row], doctorOf[row],
+                        AppointmentStatus.fromCode(statuses[row])));
+            }
+        }
+
+        private void readName(ByteBuffer chunk, int start, int row) {
+            int length = Math.min(Math.max(chunk.getShort(start + NAME_LENGTH), 0), NAME_BYTES);
+            if (nameEnd + length > nameBytes.length) {
+                nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, nameEnd + length));
+            }
+            chunk.get(start + NAME, nameBytes, nameEnd, length);
+            nameAt[row] = nameEnd;
+            nameLengths[row] = (byte) length;
+            nameEnd += length;
+        }
+
+        // Slot holding the sequence, or the free slot where it belongs. Booking
+        // sequences are dense and mostly ascending, so their low bits spread
+        // them without collisions and keep neighbouring probes close together
+        private int slotOf(long sequence) {
+            int mask = keys.length - 1;
+            int slot = (int) sequence & mask;
+            while (keys[slot] != 0 && keys[slot] != sequence) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // Make room for this many more records, so the row columns and the
+        // sequence table are sized once instead of doubling as they fill
+        void reserve(long records) {
+            int capacity = (int) Math.min(rows + Math.max(records, 0), MAX_ROWS);
+            if (capacity > doctorIds.length) {
+                resizeRows(capacity);
+            }
+            int length = keys.length;
+            while (capacity * 2L > length && length < MAX_ROWS * 2) {
+                length *= 2;
+            }
+            if (length != keys.length) {
+                resizeKeys(length);
+            }
+        }
+
+        private int newRow() {
+            if (rows == doctorIds.length) {
+                resizeRows(rows * 2);
+            }
+            return rows++;
+        }
+
+        private void resizeRows(int capacity) {
+            sequenceOf = Arrays.copyOf(sequenceOf, capacity);
+            doctorIds = Arrays.copyOf(doctorIds, capacity);
+            mobiles = Arrays.copyOf(mobiles, capacity);
+            minutes = Arrays.copyOf(minutes, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            nameAt = Arrays.copyOf(nameAt, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+        }
+
+        // Keep the table at most half full
+        private void growKeys() {
+            if (rows * 2 > keys.length) {
+                resizeKeys(keys.length * 2);
+            }
+        }
+
+        private void resizeKeys(int length) {
+            long[] oldKeys = keys;
+            int[] oldRows = rowOf;
+            keys = new long[length];
+            rowOf = new int[length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    rowOf[slot] = oldRows[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Listener for changes made directly on a booked appointment
+ * Lets the booking engine keep its schedules in step with the appointment
+ */
+public interface AppointmentListener {
+
+    /**
+     * Called when the appointment requests a legal status transition
+     * The listener applies it with Appointment.applyStatus and returns true,
+     * or returns false to refuse it
+     */
+    boolean statusChangeRequested(Appointment appointment, AppointmentStatus target);
+
+    /**
+     * Called when the appointment's time slot is set to a new minute of the day
+     * The listener applies the move with Appointment.applySlotMinute, or leaves
+     * the appointment unchanged to veto it
+     */
+    void timeSlotChangeRequested(Appointment appointment, int newMinute);
+
+    /**
+     * Called when the appointment's doctor is set to a different professional
+     * The listener applies the move with Appointment.applyDoctor, or leaves
+     * the appointment unchanged to veto it
+     */
+    void doctorChangeRequested(Appointment appointment, HealthProfessional newDoctor);
+
+    /**
+     * Called when the patient's mobile is set to a different, already
+     * validated number, packed by MobileNumber.parse. The listener re-indexes
+     * the appointment and applies it with Appointment.applyPatientMobile
+     */
+    void mobileChangeRequested(Appointment appointment, long newMobile);
+
+    /**
+     * Called when the patient's name is set to a different, already
+     * validated and trimmed name. The listener re-indexes the appointment
+     * and applies it with Appointment.applyPatientName
+     */
+    void nameChangeRequested(Appointment appointment, String newName);
+}
@@ -0,0 +1,34 @@
+import java.util.List;
+
+/**
+ * AppointmentRepository interface - lookup and cancellation by appointment
+ * ID and patient mobile, shared by the BookingEngine, a standalone
+ * AppointmentStore and the off-heap ColumnarAppointmentStore, so code written
+ * against it runs on whichever storage fits the schedule's size
+ */
+public interface AppointmentRepository<A extends AppointmentView> {
+
+    /**
+     * Stored appointment with an ID, or null
+     */
+    A findById(long appointmentId);
+
+    /**
+     * All stored appointments for a patient mobile, in booking order
+     */
+    List<A> findByMobile(String patientMobile);
+
+    /**
+     * Take the appointment with an ID out of the schedule
+     * Returns the removed appointment, or null if none is stored with that ID
+     */
+    A cancelById(long appointmentId);
+
+    /**
+     * Take the earliest booking for a patient mobile out of the schedule
+     * Returns the removed appointment, or null if none was found
+     */
+    A cancelByMobile(String patientMobile);
+
+    boolean isEmpty();
+}
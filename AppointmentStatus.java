@@ -0,0 +1,67 @@
+/**
+ * AppointmentStatus enum - lifecycle states of an appointment
+ * Each status is stored as a one-byte code, and legal transitions are kept
+ * as a bitmask so checking one is a single AND with no exceptions
+ */
+public enum AppointmentStatus {
+    SCHEDULED,
+    CONFIRMED,
+    CANCELLED;
+
+    private static final AppointmentStatus[] BY_CODE = values();
+
+    // Bit n is set when a transition to the status with code n is legal
+    private int allowedTargets;
+
+    static {
+        SCHEDULED.allowedTargets = bit(CONFIRMED) | bit(CANCELLED);
+        CONFIRMED.allowedTargets = bit(CANCELLED);
+        CANCELLED.allowedTargets = 0;
+    }
+
+    /**
+     * Compact code used when storing the status in a byte
+     */
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * Status for a stored code
+     */
+    public static AppointmentStatus fromCode(int code) {
+        return BY_CODE[code];
+    }
+
+    /**
+     * Status with the given name (case-insensitive), or null if there is none
+     */
+    public static AppointmentStatus parse(String name) {
+        if (name == null) return null;
+        String trimmed = name.trim();
+        for (AppointmentStatus status : BY_CODE) {
+            if (status.name().equalsIgnoreCase(trimmed)) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether moving from this status to the target is allowed
+     */
+    public boolean canTransitionTo(AppointmentStatus target) {
+        return target != null && (allowedTargets & bit(target)) != 0;
+    }
+
+    /**
+     * Scheduled and confirmed appointments still hold their slot
+     */
+    public boolean isActive() {
+        return this != CANCELLED;
+    }
+
+    private static int bit(AppointmentStatus status) {
+        return 1 << status.ordinal();
+    }
+}
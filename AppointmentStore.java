@@ -0,0 +1,625 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * AppointmentStore class - indexed storage for appointments
+ * Keeps appointments in booking order with hash indexes by patient mobile,
+ * doctor ID, time slot and status, so lookups and cancellations do not scan
+ * the whole list. Appointments are also indexed by ID, and active ones by
+ * doctor and minute. The mobile and time slot indexes are only built once
+ * something searches by them - BookingEngine segments never do
+ */
+public class AppointmentStore implements Iterable<Appointment>, AppointmentRepository<Appointment> {
+
+    // Compaction only starts once this many tombstones have built up
+    private static final int MIN_TOMBSTONES_FOR_COMPACTION = 1024;
+
+    // Primary storage in booking order - removed entries become null tombstones
+    private ArrayList<Appointment> records;
+
+    // Position of each appointment by its generated ID
+    private PositionMap idIndex;
+
+    // Indexes map a key to the positions of its appointments in records,
+    // kept in the order they were indexed with constant-time removal.
+    // The mobile and time slot indexes stay null until first searched
+    private PositionIndex mobileIndex;
+    private PositionIndex doctorIndex;
+    private PositionIndex timeSlotIndex;
+    private PositionIndex statusIndex;
+    private PositionIndex doctorStatusIndex;
+
+    // Active appointment holding each doctor's minute - the engine keeps these unique
+    private PositionMap activeSlotIndex;
+
+    private int liveCount;
+    private int tombstoneCount;
+
+    /**
+     * Default constructor - creates an empty store
+     */
+    public AppointmentStore() {
+        this.records = new ArrayList<>();
+        this.idIndex = new PositionMap();
+        this.doctorIndex = new PositionIndex();
+        this.statusIndex = new PositionIndex();
+        this.doctorStatusIndex = new PositionIndex();
+        this.activeSlotIndex = new PositionMap();
+        this.liveCount = 0;
+        this.tombstoneCount = 0;
+    }
+
+    /**
+     * Display form of a mobile as the user typed it, minus spaces
+     * Lookups key on MobileNumber.parse instead, so this is only for messages
+     */
+    public static String normalizeMobile(String mobile) {
+        return (mobile != null) ? mobile.trim().replace(" ", "") : null;
+    }
+
+    /**
+     * Add an appointment and index it by mobile, doctor and time slot
+     */
+    public void add(Appointment appointment) {
+        if (appointment == null) {
+            throw new IllegalArgumentException("Appointment cannot be null");
+        }
+        int position = records.size();
+        records.add(appointment);
+        index(appointment, position);
+        liveCount++;
+    }
+
+    /**
+     * Make room for this many more appointments, so a bulk load grows the
+     * storage and its indexes once instead of step by step
+     */
+    public void ensureCapacity(int additional) {
+        int positions = records.size() + additional;
+        records.ensureCapacity(positions);
+        idIndex.reserve(idIndex.size + additional);
+        activeSlotIndex.reserve(activeSlotIndex.size + additional);
+        doctorIndex.reserve(positions);
+        statusIndex.reserve(positions);
+        doctorStatusIndex.reserve(positions);
+        if (mobileIndex != null) {
+            mobileIndex.reserve(positions);
+        }
+        if (timeSlotIndex != null) {
+            timeSlotIndex.reserve(positions);
+        }
+    }
+
+    /**
+     * Stored appointment with the given ID, or null
+     */
+    @Override
+    public Appointment findById(long appointmentId) {
+        int position = idIndex.get(appointmentId);
+        return (position >= 0) ? records.get(position) : null;
+    }
+
+    /**
+     * Find all appointments booked with the given patient mobile
+     */
+    @Override
+    public List<Appointment> findByMobile(String patientMobile) {
+        return resolve(mobileIndex(), MobileNumber.parse(patientMobile));
+    }
+
+    /**
+     * Find all appointments booked with the given doctor ID
+     */
+    public List<Appointment> findByDoctor(int doctorId) {
+        return resolve(doctorIndex, doctorId);
+    }
+
+    /**
+     * Find all appointments booked at the given time slot
+     */
+    public List<Appointment> findByTimeSlot(String timeSlot) {
+        return resolve(timeSlotIndex(), TimeSlot.parse(timeSlot));
+    }
+
+    /**
+     * Find all appointments with the given status
+     */
+    public List<Appointment> findByStatus(AppointmentStatus status) {
+        return resolve(statusIndex, status.code());
+    }
+
+    /**
+     * Find a doctor's appointments with the given status
+     */
+    public List<Appointment> findByDoctorAndStatus(int doctorId, AppointmentStatus status) {
+        return resolve(doctorStatusIndex, doctorStatusKey(doctorId, status));
+    }
+
+    /**
+     * Active appointment a doctor has at a minute of the day, or null
+     */
+    public Appointment findActiveAt(int doctorId, int minute) {
+        int position = activeSlotIndex.get(doctorSlotKey(doctorId, minute));
+        return (position >= 0) ? records.get(position) : null;
+    }
+
+    /**
+     * Number of stored appointments with the given status
+     */
+    public int countByStatus(AppointmentStatus status) {
+        return statusIndex.size(status.code());
+    }
+
+    /**
+     * Re-index an appointment whose status is about to change
+     * Call before the appointment's status is updated
+     */
+    public void moveStatus(Appointment appointment, AppointmentStatus newStatus) {
+        int position = positionOf(appointment);
+        if (position < 0) return;
+
+        int doctorId = appointment.getDoctor().getId();
+        AppointmentStatus oldStatus = appointment.getAppointmentStatus();
+        statusIndex.remove(oldStatus.code(), position);
+        doctorStatusIndex.remove(doctorStatusKey(doctorId, oldStatus), position);
+        statusIndex.add(newStatus.code(), position);
+        doctorStatusIndex.add(doctorStatusKey(doctorId, newStatus), position);
+
+        long slotKey = doctorSlotKey(doctorId, appointment.getSlotMinute());
+        if (oldStatus.isActive() && !newStatus.isActive()) {
+            activeSlotIndex.remove(slotKey, position);
+        } else if (!oldStatus.isActive() && newStatus.isActive()) {
+            activeSlotIndex.put(slotKey, position);
+        }
+    }
+
+    /**
+     * Re-index an appointment whose time slot is about to change
+     * Call before the appointment's slot minute is updated
+     */
+    public void moveTimeSlot(Appointment appointment, int newMinute) {
+        int position = positionOf(appointment);
+        if (position < 0) return;
+
+        if (timeSlotIndex != null) {
+            timeSlotIndex.remove(appointment.getSlotMinute(), position);
+            timeSlotIndex.add(newMinute, position);
+        }
+
+        if (appointment.getAppointmentStatus().isActive()) {
+            int doctorId = appointment.getDoctor().getId();
+            activeSlotIndex.remove(doctorSlotKey(doctorId, appointment.getSlotMinute()), position);
+            activeSlotIndex.put(doctorSlotKey(doctorId, newMinute), position);
+        }
+    }
+
+    /**
+     * Re-index an appointment whose patient mobile is about to change
+     * Call before the appointment's mobile is updated
+     */
+    public void moveMobile(Appointment appointment, long newMobile) {
+        int position = positionOf(appointment);
+        if (position < 0) return;
+
+        if (mobileIndex != null) {
+            mobileIndex.remove(appointment.getMobileKey(), position);
+            mobileIndex.add(newMobile, position);
+        }
+    }
+
+    /**
+     * Remove the earliest booking for a patient mobile
+     * Returns the removed appointment, or null if none was found
+     */
+    @Override
+    public Appointment cancelByMobile(String patientMobile) {
+        int position = mobileIndex().first(MobileNumber.parse(patientMobile));
+        return (position >= 0) ? removeAt(position) : null;
+    }
+
+    /**
+     * Remove the appointment with an ID
+     * Returns the removed appointment, or null if none is stored with that ID
+     */
+    @Override
+    public Appointment cancelById(long appointmentId) {
+        int position = idIndex.get(appointmentId);
+        return (position >= 0) ? removeAt(position) : null;
+    }
+
+    /**
+     * Remove a specific appointment instance from the store
+     * Returns true if the appointment was stored here
+     */
+    public boolean remove(Appointment appointment) {
+        int position = positionOf(appointment);
+        if (position < 0) return false;
+
+        removeAt(position);
+        return true;
+    }
+
+    /**
+     * Check whether this exact appointment instance is stored here
+     */
+    public boolean contains(Appointment appointment) {
+        return positionOf(appointment) >= 0;
+    }
+
+    public int size() {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return liveCount == 0;
+    }
+
+    /**
+     * Iterate live appointments in booking order, skipping tombstones
+     */
+    @Override
+    public Iterator<Appointment> iterator() {
+        return new Iterator<Appointment>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < records.size() && records.get(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < records.size();
+            }
+
+            @Override
+            public Appointment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Appointment appointment = records.get(next);
+                next = advance(next + 1);
+                return appointment;
+            }
+        };
+    }
+
+    // Position of this exact instance in records, or -1
+    private int positionOf(Appointment appointment) {
+        if (appointment == null) return -1;
+        int position = idIndex.get(appointment.getId());
+        return (position >= 0 && records.get(position) == appointment) ? position : -1;
+    }
+
+    // Replace the record with a tombstone and drop it from every index
+    private Appointment removeAt(int position) {
+        Appointment appointment = records.get(position);
+        records.set(position, null);
+        unindex(appointment, position);
+        liveCount--;
+        tombstoneCount++;
+
+        if (tombstoneCount >= MIN_TOMBSTONES_FOR_COMPACTION && tombstoneCount > liveCount) {
+            compact();
+        }
+        return appointment;
+    }
+
+    // Rebuild primary storage without tombstones and re-point all indexes
+    private void compact() {
+        ArrayList<Appointment> live = new ArrayList<>(liveCount);
+        for (Appointment appointment : records) {
+            if (appointment != null) {
+                live.add(appointment);
+            }
+        }
+
+        records = live;
+        idIndex = new PositionMap();
+        mobileIndex = null;
+        doctorIndex = new PositionIndex();
+        timeSlotIndex = null;
+        statusIndex = new PositionIndex();
+        doctorStatusIndex = new PositionIndex();
+        activeSlotIndex = new PositionMap();
+        for (int position = 0; position < records.size(); position++) {
+            index(records.get(position), position);
+        }
+        tombstoneCount = 0;
+    }
+
+    private void index(Appointment appointment, int position) {
+        idIndex.put(appointment.getId(), position);
+        if (mobileIndex != null) {
+            mobileIndex.add(appointment.getMobileKey(), position);
+        }
+        doctorIndex.add(appointment.getDoctor().getId(), position);
+        if (timeSlotIndex != null) {
+            timeSlotIndex.add(appointment.getSlotMinute(), position);
+        }
+        statusIndex.add(appointment.getAppointmentStatus().code(), position);
+        doctorStatusIndex.add(doctorStatusKey(appointment.getDoctor().getId(),
+                appointment.getAppointmentStatus()), position);
+        if (appointment.getAppointmentStatus().isActive()) {
+            activeSlotIndex.put(doctorSlotKey(appointment.getDoctor().getId(), appointment.getSlotMinute()),
+                    position);
+        }
+    }
+
+    private void unindex(Appointment appointment, int position) {
+        idIndex.remove(appointment.getId(), position);
+        if (mobileIndex != null) {
+            mobileIndex.remove(appointment.getMobileKey(), position);
+        }
+        doctorIndex.remove(appointment.getDoctor().getId(), position);
+        if (timeSlotIndex != null) {
+            timeSlotIndex.remove(appointment.getSlotMinute(), position);
+        }
+        statusIndex.remove(appointment.getAppointmentStatus().code(), position);
+        doctorStatusIndex.remove(doctorStatusKey(appointment.getDoctor().getId(),
+                appointment.getAppointmentStatus()), position);
+        activeSlotIndex.remove(doctorSlotKey(appointment.getDoctor().getId(), appointment.getSlotMinute()),
+                position);
+    }
+
+    private PositionIndex mobileIndex() {
+        if (mobileIndex == null) {
+            mobileIndex = new PositionIndex();
+            for (int position = 0; position < records.size(); position++) {
+                Appointment appointment = records.get(position);
+                if (appointment != null) {
+                    mobileIndex.add(appointment.getMobileKey(), position);
+                }
+            }
+        }
+        return mobileIndex;
+    }
+
+    private PositionIndex timeSlotIndex() {
+        if (timeSlotIndex == null) {
+            timeSlotIndex = new PositionIndex();
+            for (int position = 0; position < records.size(); position++) {
+                Appointment appointment = records.get(position);
+                if (appointment != null) {
+                    timeSlotIndex.add(appointment.getSlotMinute(), position);
+                }
+            }
+        }
+        return timeSlotIndex;
+    }
+
+    // Doctor ID in the high bits, status code in the low byte
+    private static long doctorStatusKey(int doctorId, AppointmentStatus status) {
+        return ((long) doctorId << 8) | status.code();
+    }
+
+    // Doctor ID in the high bits, minute of day in the low 11 bits
+    private static long doctorSlotKey(int doctorId, int minute) {
+        return ((long) doctorId << 11) | minute;
+    }
+
+    private List<Appointment> resolve(PositionIndex index, long key) {
+        List<Appointment> result = new ArrayList<>(index.size(key));
+        for (int position = index.first(key); position >= 0; position = index.next(position)) {
+            result.add(records.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Positions of appointments by index key, as one intrusive doubly linked
+     * chain per key. Every position sits in at most one chain of an index, so
+     * the links are two int arrays parallel to records - no node per entry -
+     * and adding or removing a position is constant time however many
+     * appointments share the key. Chains keep the order positions were added.
+     * Keys map to chain numbers, whose head, tail and size are int columns
+     */
+    private static final class PositionIndex {
+        private static final int NONE = -1;
+
+        private final PositionMap chains = new PositionMap();
+        private int[] next = new int[16];
+        private int[] previous = new int[16];
+
+        // Chain columns, with freed chain numbers kept for reuse
+        private int[] heads = new int[16];
+        private int[] tails = new int[16];
+        private int[] sizes = new int[16];
+        private int[] freeChains = new int[16];
+        private int freeCount;
+        private int chainCount;
+
+        void reserve(int positions) {
+            if (positions > next.length) {
+                next = Arrays.copyOf(next, positions);
+                previous = Arrays.copyOf(previous, positions);
+            }
+        }
+
+        void add(long key, int position) {
+            if (position >= next.length) {
+                int capacity = Math.max(position + 1, next.length + (next.length >> 1));
+                next = Arrays.copyOf(next, capacity);
+                previous = Arrays.copyOf(previous, capacity);
+            }
+            int chain = chains.get(key);
+            if (chain == NONE) {
+                chain = newChain();
+                chains.put(key, chain);
+            }
+            next[position] = NONE;
+            previous[position] = tails[chain];
+            if (tails[chain] == NONE) {
+                heads[chain] = position;
+            } else {
+                next[tails[chain]] = position;
+            }
+            tails[chain] = position;
+            sizes[chain]++;
+        }
+
+        // The position must be in the key's chain
+        void remove(long key, int position) {
+            int chain = chains.get(key);
+            if (chain == NONE) return;
+
+            int before = previous[position];
+            int after = next[position];
+            if (before == NONE) {
+                heads[chain] = after;
+            } else {
+                next[before] = after;
+            }
+            if (after == NONE) {
+                tails[chain] = before;
+            } else {
+                previous[after] = before;
+            }
+            if (--sizes[chain] == 0) {
+                chains.remove(key, chain);
+                freeChains[freeCount++] = chain;
+            }
+        }
+
+        // First position under the key, or -1
+        int first(long key) {
+            int chain = chains.get(key);
+            return (chain != NONE) ? heads[chain] : NONE;
+        }
+
+        // Position after this one under the same key, or -1
+        int next(int position) {
+            return next[position];
+        }
+
+        int size(long key) {
+            int chain = chains.get(key);
+            return (chain != NONE) ? sizes[chain] : 0;
+        }
+
+        private int newChain() {
+            int chain;
+            if (freeCount > 0) {
+                chain = freeChains[--freeCount];
+            } else {
+                if (chainCount == heads.length) {
+                    int capacity = chainCount * 2;
+                    heads = Arrays.copyOf(heads, capacity);
+                    tails = Arrays.copyOf(tails, capacity);
+                    sizes = Arrays.copyOf(sizes, capacity);
+                    freeChains = Arrays.copyOf(freeChains, capacity);
+                }
+                chain = chainCount++;
+            }
+            heads[chain] = NONE;
+            tails[chain] = NONE;
+            sizes[chain] = 0;
+            return chain;
+        }
+    }
+
+    /**
+     * Open-addressing map from a long key to a position, with linear probing
+     * and backward-shift deletion, so entries need no boxed key, value or
+     * node. A position of -1 marks a free slot; the table stays at most half full
+     */
+    private static final class PositionMap {
+        private static final int NONE = -1;
+
+        private long[] keys = new long[16];
+        private int[] values = emptyValues(16);
+        private int size;
+
+        // Position mapped to the key, or -1
+        int get(long key) {
+            return values[slotOf(keys, values, key)];
+        }
+
+        void put(long key, int value) {
+            int slot = slotOf(keys, values, key);
+            if (values[slot] == NONE) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        // Remove the key only while it still maps to this position
+        void remove(long key, int value) {
+            int slot = slotOf(keys, values, key);
+            if (values[slot] != value || value == NONE) return;
+
+            // Shift later entries of the probe run back into the hole
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; values[i] != NONE; i = (i + 1) & mask) {
+                int home = homeOf(keys[i], mask);
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            values[hole] = NONE;
+            size--;
+        }
+
+        // Grow once so the map can take this many entries
+        void reserve(int entries) {
+            int length = keys.length;
+            while (entries * 2 > length) {
+                length *= 2;
+            }
+            if (length != keys.length) {
+                resize(length);
+            }
+        }
+
+        private void grow() {
+            resize(keys.length * 2);
+        }
+
+        private void resize(int length) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[length];
+            values = emptyValues(length);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != NONE) {
+                    int slot = slotOf(keys, values, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        // Slot holding the key, or the free slot where it belongs
+        private static int slotOf(long[] keys, int[] values, long key) {
+            int mask = keys.length - 1;
+            int slot = homeOf(key, mask);
+            while (values[slot] != NONE && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int homeOf(long key, int mask) {
+            return (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        }
+
+        private static int[] emptyValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, NONE);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * AppointmentView interface - the Appointment API over any storage of its fields
+ * Implemented by Appointment and by the row views of ColumnarAppointmentStore,
+ * so rendering, lookups and status changes read the same whichever holds the
+ * appointment. Rendering and lifecycle shortcuts are defaults built on the
+ * getters and transitionTo
+ */
+public interface AppointmentView {
+
+    /**
+     * Generated identity of the appointment
+     */
+    long getId();
+
+    String getPatientName();
+
+    String getPatientMobile();
+
+    /**
+     * Mobile packed by MobileNumber.parse
+     */
+    long getMobileKey();
+
+    /**
+     * Time slot as minute of the day
+     */
+    int getSlotMinute();
+
+    HealthProfessional getDoctor();
+
+    int getDoctorId();
+
+    AppointmentStatus getAppointmentStatus();
+
+    /**
+     * Move to a new status if the transition is legal
+     * Returns false, without throwing, for an illegal transition
+     */
+    boolean transitionTo(AppointmentStatus target);
+
+    default String getTimeSlot() {
+        return TimeSlot.format(getSlotMinute());
+    }
+
+    default String getStatus() {
+        return getAppointmentStatus().name();
+    }
+
+    /**
+     * Check if the appointment is still valid (not cancelled)
+     */
+    default boolean isValid() {
+        return getAppointmentStatus().isActive();
+    }
+
+    /**
+     * Confirm the appointment
+     * Returns false if it is cancelled and so cannot be confirmed
+     */
+    default boolean confirm() {
+        return getAppointmentStatus() == AppointmentStatus.CONFIRMED
+                || transitionTo(AppointmentStatus.CONFIRMED);
+    }
+
+    /**
+     * Cancel the appointment
+     */
+    default void cancel() {
+        if (getAppointmentStatus() == AppointmentStatus.CANCELLED) {
+            EventLog.getDefault().publish(BookingEvent.warning("Appointment already cancelled"));
+            return;
+        }
+        if (transitionTo(AppointmentStatus.CANCELLED)) {
+            EventLog.getDefault().publish(BookingEvent.cancelled(getPatientMobile(),
+                    "Appointment cancelled: " + getPatientName()));
+        }
+    }
+
+    /**
+     * Get summary string for the appointment
+     */
+    default String getAppointmentSummary() {
+        StringBuilder summary = new StringBuilder(64);
+        appendSummary(summary);
+        return summary.toString();
+    }
+
+    /**
+     * Append the one-line summary to a reusable builder
+     */
+    default void appendSummary(StringBuilder out) {
+        out.append(getTimeSlot()).append(" - ").append(getPatientName())
+                .append(" with ").append(getDoctor().getName());
+    }
+
+    /**
+     * Print appointment details with formatted output
+     */
+    default void printAppointmentDetails() {
+        StringBuilder details = new StringBuilder(256);
+        appendDetails(details);
+        System.out.print(details);
+    }
+
+    /**
+     * Append the appointment detail block to a reusable builder
+     */
+    default void appendDetails(StringBuilder out) {
+        HealthProfessional doctor = getDoctor();
+        String nl = ScheduleRenderer.NEW_LINE;
+        out.append("=== Appointment Details ===").append(nl);
+        out.append("Patient: ").append(getPatientName()).append(nl);
+        out.append("Mobile: ");
+        MobileNumber.appendTo(out, getMobileKey());
+        out.append(nl);
+        out.append("Time: ").append(getTimeSlot()).append(nl);
+        out.append("Doctor: ").append(doctor.getName()).append(nl);
+        out.append("Doctor ID: ").append(doctor.getId()).append(nl);
+        out.append("Doctor Type: ").append(doctor.getProfessionalType()).append(nl);
+        out.append("Status: ").append(getStatus()).append(nl);
+        out.append("===========================").append(nl);
+    }
+}
@@ -1,6 +1,3 @@
-import java.util.ArrayList;
-import java.util.Iterator;
-
 /**
  * Main class for PROG2004 A1 - Health Appointment System
  * Demonstrates object-oriented programming principles
@@ -8,13 +5,20 @@ import java.util.Iterator;
  */
 public class AssignmentOne {
 
-    // ArrayList to store appointments - Part 5 requirement
-    private static ArrayList<Appointment> appointments = new ArrayList<>();
+    // Thread-safe indexed collection of appointments - Part 5 requirement
+    private static BookingEngine appointments = new BookingEngine();
+
+    // One shared object per health professional, looked up by ID
+    private static ProfessionalRegistry professionals = new ProfessionalRegistry();
+
+    // Booking outcomes are published here and printed by the console sink main adds
+    private static EventLog events = EventLog.getDefault();
 
     /**
      * Main method - program entry point
      */
     public static void main(String[] args) {
+        events.addSink(new ConsoleSink());
         System.out.println("=== Health Service Appointment System ===");
 
         // Part 3: Using classes and objects
@@ -23,6 +27,7 @@ public class AssignmentOne {
         // Part 5: Collection of appointments
         demonstratePart5();
 
+        events.flush();
         System.out.println("=== Program Completed ===");
     }
 
@@ -32,19 +37,19 @@ public class AssignmentOne {
     private static void demonstratePart3() {
         System.out.println("\n// Part 3 – Using classes and objects");
 
-        // Create three General Practitioners
-        GeneralPractitioner gp1 = new GeneralPractitioner(101, "Dr. Smith",
-                "General Medicine", true, 25);
-        GeneralPractitioner gp2 = new GeneralPractitioner(102, "Dr. Johnson",
-                "Family Medicine", true, 20);
-        GeneralPractitioner gp3 = new GeneralPractitioner(103, "Dr. Brown",
-                "Primary Care", false, 15);
+        // Create and register three General Practitioners
+        GeneralPractitioner gp1 = professionals.register(new GeneralPractitioner(101, "Dr. Smith",
+                "General Medicine", true, 25));
+        GeneralPractitioner gp2 = professionals.register(new GeneralPractitioner(102, "Dr. Johnson",
+                "Family Medicine", true, 20));
+        GeneralPractitioner gp3 = professionals.register(new GeneralPractitioner(103, "Dr. Brown",
+                "Primary Care", false, 15));
 
-        // Create two Specialists
-        Specialist specialist1 = new Specialist(201, "Dr. Wilson",
-                "Cardiology", "Heart Surgery", 12);
-        Specialist specialist2 = new Specialist(202, "Dr. Davis",
-                "Radiology", "MRI Diagnosis", 8);
+        // Create and register two Specialists
+        Specialist specialist1 = professionals.register(new Specialist(201, "Dr. Wilson",
+                "Cardiology", "Heart Surgery", 12));
+        Specialist specialist2 = professionals.register(new Specialist(202, "Dr. Davis",
+                "Radiology", "MRI Diagnosis", 8));
 
         // Print all health professional details
         gp1.printHealthProfessionalDetails();
@@ -79,11 +84,9 @@ public class AssignmentOne {
     private static void demonstratePart5() {
         System.out.println("\n// Part 5 – Collection of appointments");
 
-        // Create doctor objects for appointments
-        GeneralPractitioner gp = new GeneralPractitioner(101, "Dr. Smith",
-                "General Medicine", true, 25);
-        Specialist specialist = new Specialist(201, "Dr. Wilson",
-                "Cardiology", "Heart Surgery", 12);
+        // Reuse the doctors registered in Part 3 instead of creating duplicates
+        HealthProfessional gp = professionals.findById(101);
+        HealthProfessional specialist = professionals.findById(201);
 
         // Create appointments
         createAppointment("John Doe", "0412345678", "09:00", gp);
@@ -100,83 +103,94 @@ public class AssignmentOne {
         // Print updated appointments
         printExistingAppointments();
 
+        events.flush();
         System.out.println("---");
     }
 
     /**
-     * Create new appointment and add to ArrayList
+     * Create new appointment and add to the appointment store
      * Polymorphic method - accepts any HealthProfessional subclass
      */
     public static void createAppointment(String patientName, String patientMobile,
                                          String timeSlot, HealthProfessional doctor) {
+        // Events about a patient carry their mobile as the subject
+        String subject = AppointmentStore.normalizeMobile(patientMobile);
+
         // Input validation
         if (patientName == null || patientName.trim().isEmpty()) {
-            System.out.println("Error: Patient name is required");
+            events.publish(BookingEvent.rejected(subject, "Error: Patient name is required"));
             return;
         }
         if (patientMobile == null || patientMobile.trim().isEmpty()) {
-            System.out.println("Error: Patient mobile is required");
+            events.publish(BookingEvent.rejected(subject, "Error: Patient mobile is required"));
             return;
         }
         if (timeSlot == null || timeSlot.trim().isEmpty()) {
-            System.out.println("Error: Time slot is required");
+            events.publish(BookingEvent.rejected(subject, "Error: Time slot is required"));
             return;
         }
         if (doctor == null) {
-            System.out.println("Error: Doctor is required");
+            events.publish(BookingEvent.rejected(subject, "Error: Doctor is required"));
             return;
         }
 
         try {
             Appointment newAppointment = new Appointment(patientName, patientMobile, timeSlot, doctor);
-            appointments.add(newAppointment);
-            System.out.println("Appointment created: " + patientName);
+            if (!appointments.book(newAppointment)) {
+                if (!appointments.canAcceptNewPatient(doctor)) {
+                    events.publish(BookingEvent.rejected(subject, "Failed to create appointment: "
+                            + doctor.getName() + " has no capacity left today"));
+                } else {
+                    events.publish(BookingEvent.rejected(subject, "Failed to create appointment: "
+                            + doctor.getName() + " is already booked at " + timeSlot));
+                }
+                return;
+            }
+            events.publish(BookingEvent.created(subject, patientName));
         } catch (IllegalArgumentException e) {
-            System.out.println("Failed to create appointment: " + e.getMessage());
+            events.publish(BookingEvent.rejected(subject, "Failed to create appointment: " + e.getMessage()));
         }
     }
 
     /**
-     * Display all existing appointments in the ArrayList
+     * Display all existing appointments in booking order
      */
     public static void printExistingAppointments() {
+        // Let queued booking messages print before the list
+        events.flush();
         if (appointments.isEmpty()) {
             System.out.println("No existing appointments.");
             return;
         }
 
-        System.out.println("Existing appointments (" + appointments.size() + "):");
+        // Render the whole list into one buffer and write it out once
+        ScheduleRenderer renderer = new ScheduleRenderer(System.out);
+        renderer.line().append("Existing appointments (").append(appointments.size()).append("):");
+        renderer.endLine();
         for (Appointment appointment : appointments) {
-            appointment.printAppointmentDetails();
+            renderer.renderDetails(appointment);
         }
+        renderer.flush();
     }
 
     /**
      * Cancel appointment using patient's mobile number
-     * Uses Iterator for safe removal from ArrayList
+     * Uses the store's mobile index instead of scanning every appointment
      */
     public static void cancelBooking(String patientMobile) {
         if (patientMobile == null || patientMobile.trim().isEmpty()) {
-            System.out.println("Error: Patient mobile is required");
+            events.publish(BookingEvent.rejected(AppointmentStore.normalizeMobile(patientMobile),
+                    "Error: Patient mobile is required"));
             return;
         }
 
-        String cleanMobile = patientMobile.trim().replace(" ", "");
-        Iterator<Appointment> iterator = appointments.iterator();
-        boolean found = false;
-
-        while (iterator.hasNext()) {
-            Appointment appointment = iterator.next();
-            if (appointment.getPatientMobile().equals(cleanMobile)) {
-                iterator.remove();
-                System.out.println("Appointment cancelled for: " + cleanMobile);
-                found = true;
-                break;
-            }
-        }
+        Appointment removed = appointments.cancelByMobile(patientMobile);
 
-        if (!found) {
-            System.out.println("No appointment found for: " + cleanMobile);
+        if (removed != null) {
+            String mobile = removed.getPatientMobile();
+            events.publish(BookingEvent.cancelled(mobile, "Appointment cancelled for: " + mobile));
+        } else {
+            events.publish(BookingEvent.notFound(AppointmentStore.normalizeMobile(patientMobile)));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,507 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * BatchScheduler class - places a batch of pending requests across many
+ * professionals at once, instead of first-fit one request at a time
+ * A request names a time window and who may see the patient: any GP, a GP
+ * who can prescribe, or the specialists a referral condition matches (the
+ * same matching as Specialist.acceptReferral). Requests are placed most
+ * constrained first. Each goes to the eligible professional with the least
+ * contention for their remaining capacity, in the slot of its window that
+ * the rest of the batch wants least. Professionals no request can share
+ * form independent groups that are planned in parallel. Plans start from
+ * what the engine has already booked and are only booked when passed to book
+ */
+public class BatchScheduler {
+
+    public static final int DEFAULT_SLOT_LENGTH = 15;
+
+    private static final String ANY_GP = "\u0000gp";
+    private static final String PRESCRIBING_GP = "\u0000rx";
+
+    private final BookingEngine engine;
+    private final HealthProfessional[] professionals;
+    private final int[] capacities;
+    private final int slotLength;
+    private final ReferralIndex referrals;
+    private final HashMap<Integer, Integer> indexById;
+    private final ConcurrentHashMap<String, int[]> eligibleByKey;
+
+    /**
+     * Scheduler over a set of professionals with 15-minute slots
+     */
+    public BatchScheduler(BookingEngine engine, Collection<? extends HealthProfessional> professionals) {
+        this(engine, professionals, DEFAULT_SLOT_LENGTH);
+    }
+
+    /**
+     * Scheduler whose appointments start on multiples of slotLength minutes
+     */
+    public BatchScheduler(BookingEngine engine, Collection<? extends HealthProfessional> professionals,
+                          int slotLength) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine cannot be null");
+        }
+        if (slotLength <= 0 || slotLength > DoctorSchedule.MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Invalid slot length: " + slotLength);
+        }
+        this.engine = engine;
+        this.slotLength = slotLength;
+        this.professionals = professionals.toArray(new HealthProfessional[0]);
+        this.capacities = new int[this.professionals.length];
+        this.indexById = new HashMap<>();
+        this.eligibleByKey = new ConcurrentHashMap<>();
+
+        List<Specialist> specialists = new ArrayList<>();
+        for (int d = 0; d < this.professionals.length; d++) {
+            HealthProfessional professional = this.professionals[d];
+            if (indexById.put(professional.getId(), d) != null) {
+                throw new IllegalArgumentException("Duplicate professional ID: " + professional.getId());
+            }
+            capacities[d] = BookingEngine.capacityOf(professional);
+            if (professional instanceof Specialist) {
+                specialists.add((Specialist) professional);
+            }
+        }
+        this.referrals = new ReferralIndex(specialists);
+    }
+
+    /**
+     * Plan the batch with the contention-aware heuristic
+     */
+    public Plan schedule(List<Request> requests) {
+        long start = System.nanoTime();
+        DoctorSchedule[] schedules = seedSchedules();
+        int capacity = freeCapacity(schedules);
+        Appointment[] placed = new Appointment[requests.size()];
+
+        int[][] eligible = new int[requests.size()][];
+        IntStream.range(0, requests.size()).parallel()
+                .forEach(i -> eligible[i] = eligibleFor(requests.get(i)));
+
+        // Requests sharing an eligible set form a group; groups sharing a professional, a component
+        IdentityHashMap<int[], Group> groups = new IdentityHashMap<>();
+        for (int i = 0; i < eligible.length; i++) {
+            groups.computeIfAbsent(eligible[i], Group::new).requests.add(i);
+        }
+        List<Component> components = componentsOf(groups.values());
+        components.parallelStream().forEach(component -> component.place(requests, eligible, schedules, placed));
+
+        return new Plan(placed, capacity, System.nanoTime() - start);
+    }
+
+    /**
+     * Plan the batch the way intake does today - each request in turn takes
+     * the earliest free slot in its window with the first eligible
+     * professional, the baseline to compare schedule against
+     */
+    public Plan scheduleGreedy(List<Request> requests) {
+        long start = System.nanoTime();
+        DoctorSchedule[] schedules = seedSchedules();
+        int capacity = freeCapacity(schedules);
+        Appointment[] placed = new Appointment[requests.size()];
+
+        for (int i = 0; i < placed.length; i++) {
+            Request request = requests.get(i);
+            int bestDoctor = -1;
+            int bestMinute = request.toMinute;
+            for (int d : eligibleFor(request)) {
+                int minute = firstFree(schedules[d], d, request.fromMinute, bestMinute);
+                if (minute >= 0) {
+                    bestDoctor = d;
+                    bestMinute = minute;
+                    if (minute <= request.fromMinute) break;  // nobody can start earlier
+                }
+            }
+            if (bestDoctor >= 0 && schedules[bestDoctor].tryReserve(bestMinute, capacities[bestDoctor])) {
+                placed[i] = request.toAppointment(professionals[bestDoctor], bestMinute);
+            }
+        }
+        return new Plan(placed, capacity, System.nanoTime() - start);
+    }
+
+    /**
+     * Book a plan's appointments in one batch
+     * Returns which were booked - the engine may have changed since planning
+     */
+    public boolean[] book(Plan plan) {
+        return engine.bookAll(plan.getAppointments());
+    }
+
+    // Fresh planning schedules holding what the engine has already booked
+    private DoctorSchedule[] seedSchedules() {
+        DoctorSchedule[] schedules = new DoctorSchedule[professionals.length];
+        for (int d = 0; d < professionals.length; d++) {
+            schedules[d] = new DoctorSchedule();
+            for (Appointment appointment : engine.findByDoctor(professionals[d].getId())) {
+                if (appointment.isHoldingSlot()) {
+                    schedules[d].tryReserve(appointment.getSlotMinute(), Integer.MAX_VALUE);
+                }
+            }
+        }
+        return schedules;
+    }
+
+    // Appointments the professionals could still take, in slot starts and capacity
+    private int freeCapacity(DoctorSchedule[] schedules) {
+        int total = 0;
+        for (int d = 0; d < schedules.length; d++) {
+            int free = 0;
+            for (int minute = 0; minute < DoctorSchedule.MINUTES_PER_DAY; minute += slotLength) {
+                if (!schedules[d].isOccupied(minute)) free++;
+            }
+            total += Math.max(0, Math.min(free, capacities[d] - schedules[d].getBookedCount()));
+        }
+        return total;
+    }
+
+    // Indices of the professionals who may take a request; shared by equal requirements
+    private int[] eligibleFor(Request request) {
+        String key = (request.condition != null) ? ReferralIndex.fold(request.condition)
+                : request.needsPrescription ? PRESCRIBING_GP : ANY_GP;
+        return eligibleByKey.computeIfAbsent(key, k -> {
+            List<Integer> found = new ArrayList<>();
+            if (request.condition != null) {
+                for (Specialist specialist : referrals.findSpecialists(request.condition)) {
+                    found.add(indexById.get(specialist.getId()));
+                }
+            } else {
+                for (int d = 0; d < professionals.length; d++) {
+                    if (professionals[d] instanceof GeneralPractitioner && (!request.needsPrescription
+                            || ((GeneralPractitioner) professionals[d]).canPrescribeMedication())) {
+                        found.add(d);
+                    }
+                }
+            }
+            return found.stream().mapToInt(Integer::intValue).toArray();
+        });
+    }
+
+    // First free slot start in [fromMinute, toMinute), or -1 when none or at capacity
+    private int firstFree(DoctorSchedule schedule, int doctor, int fromMinute, int toMinute) {
+        if (schedule.getBookedCount() >= capacities[doctor]) {
+            return -1;
+        }
+        for (int minute = alignUp(fromMinute); minute < toMinute; minute += slotLength) {
+            if (!schedule.isOccupied(minute)) {
+                return minute;
+            }
+        }
+        return -1;
+    }
+
+    private int alignUp(int minute) {
+        return (minute + slotLength - 1) / slotLength * slotLength;
+    }
+
+    // Union groups that share a professional into independent components
+    private List<Component> componentsOf(Collection<Group> groups) {
+        int[] owner = new int[professionals.length];
+        Arrays.fill(owner, -1);
+        Group[] all = groups.toArray(new Group[0]);
+        int[] parent = new int[all.length];
+        for (int g = 0; g < all.length; g++) {
+            parent[g] = g;
+            for (int d : all[g].eligible) {
+                if (owner[d] < 0) {
+                    owner[d] = g;
+                } else {
+                    parent[find(parent, g)] = find(parent, owner[d]);
+                }
+            }
+        }
+        HashMap<Integer, Component> byRoot = new HashMap<>();
+        for (int g = 0; g < all.length; g++) {
+            byRoot.computeIfAbsent(find(parent, g), root -> new Component()).groups.add(all[g]);
+        }
+        return new ArrayList<>(byRoot.values());
+    }
+
+    private static int find(int[] parent, int g) {
+        while (parent[g] != g) {
+            parent[g] = parent[parent[g]];
+            g = parent[g];
+        }
+        return g;
+    }
+
+    /**
+     * Requests with the same eligible professionals
+     */
+    private static final class Group {
+        final int[] eligible;
+        final List<Integer> requests;
+        int[] ranked;   // eligible, least contended first
+        int cursor;     // ranked entries before this are at capacity
+
+        Group(int[] eligible) {
+            this.eligible = eligible;
+            this.requests = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Groups competing for the same professionals - planned on one thread
+     */
+    private final class Component {
+        final List<Group> groups = new ArrayList<>();
+
+        void place(List<Request> requests, int[][] eligible, DoctorSchedule[] schedules, Appointment[] placed) {
+            // Expected demand per professional, against what they have left
+            HashMap<Integer, Double> contention = new HashMap<>();
+            for (Group group : groups) {
+                double share = (double) group.requests.size() / Math.max(1, group.eligible.length);
+                for (int d : group.eligible) {
+                    contention.merge(d, share, Double::sum);
+                }
+            }
+            for (Integer d : contention.keySet()) {
+                int left = capacities[d] - schedules[d].getBookedCount();
+                contention.put(d, (left > 0) ? contention.get(d) / left : Double.MAX_VALUE);
+            }
+            for (Group group : groups) {
+                group.ranked = Arrays.stream(group.eligible).boxed()
+                        .sorted((a, b) -> Double.compare(contention.get(a), contention.get(b)))
+                        .mapToInt(Integer::intValue).toArray();
+            }
+
+            // Expected demand per slot start, spread evenly over each window
+            double[] demand = new double[DoctorSchedule.MINUTES_PER_DAY / slotLength + 1];
+            List<Integer> order = new ArrayList<>();
+            for (Group group : groups) {
+                for (int i : group.requests) {
+                    adjustDemand(demand, requests.get(i), 1);
+                    order.add(i);
+                }
+            }
+            // Fewest eligible slot-professional pairs first
+            Collections.sort(order, (a, b) -> {
+                int byFlexibility = Long.compare(flexibility(requests.get(a), eligible[a]),
+                        flexibility(requests.get(b), eligible[b]));
+                return (byFlexibility != 0) ? byFlexibility : Integer.compare(a, b);
+            });
+
+            IdentityHashMap<int[], Group> groupOf = new IdentityHashMap<>();
+            for (Group group : groups) {
+                groupOf.put(group.eligible, group);
+            }
+            for (int i : order) {
+                Request request = requests.get(i);
+                adjustDemand(demand, request, -1);
+                Group group = groupOf.get(eligible[i]);
+                for (int r = group.cursor; r < group.ranked.length; r++) {
+                    int d = group.ranked[r];
+                    if (schedules[d].getBookedCount() >= capacities[d]) {
+                        if (r == group.cursor) group.cursor++;
+                        continue;
+                    }
+                    int minute = leastWanted(schedules[d], request, demand);
+                    if (minute >= 0 && schedules[d].tryReserve(minute, capacities[d])) {
+                        placed[i] = request.toAppointment(professionals[d], minute);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Free slot start in the request's window the rest of the batch wants least
+        private int leastWanted(DoctorSchedule schedule, Request request, double[] demand) {
+            int best = -1;
+            for (int minute = alignUp(request.fromMinute); minute < request.toMinute; minute += slotLength) {
+                if (!schedule.isOccupied(minute) && (best < 0 || demand[minute / slotLength] < demand[best / slotLength])) {
+                    best = minute;
+                }
+            }
+            return best;
+        }
+
+        private void adjustDemand(double[] demand, Request request, int sign) {
+            int first = alignUp(request.fromMinute);
+            int slots = (request.toMinute - first + slotLength - 1) / slotLength;
+            for (int minute = first; minute < request.toMinute; minute += slotLength) {
+                demand[minute / slotLength] += sign / (double) slots;
+            }
+        }
+
+        private long flexibility(Request request, int[] eligible) {
+            return (long) eligible.length * (request.toMinute - alignUp(request.fromMinute));
+        }
+    }
+
+    /**
+     * One patient waiting to be placed
+     */
+    public static final class Request {
+        private final String patientName;
+        private final String patientMobile;
+        private final int fromMinute;
+        private final int toMinute;
+        private final String condition;         // null for a GP visit
+        private final boolean needsPrescription;
+
+        private Request(String patientName, String patientMobile, int fromMinute, int toMinute,
+                        String condition, boolean needsPrescription) {
+            if (patientName == null || patientName.trim().length() < 2) {
+                throw new IllegalArgumentException("Invalid patient name: " + patientName);
+            }
+            if (!MobileNumber.isValid(patientMobile)) {
+                throw new IllegalArgumentException("Invalid mobile number: " + patientMobile);
+            }
+            if (fromMinute < 0 || toMinute > DoctorSchedule.MINUTES_PER_DAY || fromMinute >= toMinute) {
+                throw new IllegalArgumentException("Invalid time window: " + fromMinute + "-" + toMinute);
+            }
+            this.patientName = patientName.trim();
+            this.patientMobile = patientMobile;
+            this.fromMinute = fromMinute;
+            this.toMinute = toMinute;
+            this.condition = condition;
+            this.needsPrescription = needsPrescription;
+        }
+
+        /**
+         * A visit with any General Practitioner, or only one who can prescribe
+         */
+        public static Request forGp(String patientName, String patientMobile, int fromMinute, int toMinute,
+                                    boolean needsPrescription) {
+            return new Request(patientName, patientMobile, fromMinute, toMinute, null, needsPrescription);
+        }
+
+        /**
+         * A referral to any specialist whose specialty appears in the condition
+         */
+        public static Request forReferral(String patientName, String patientMobile, String condition,
+                                          int fromMinute, int toMinute) {
+            if (condition == null || condition.trim().isEmpty()) {
+                throw new IllegalArgumentException("Condition cannot be empty");
+            }
+            return new Request(patientName, patientMobile, fromMinute, toMinute, condition, false);
+        }
+
+        public String getPatientName() {
+            return patientName;
+        }
+
+        public String getPatientMobile() {
+            return patientMobile;
+        }
+
+        public int getFromMinute() {
+            return fromMinute;
+        }
+
+        /**
+         * End of the window, exclusive
+         */
+        public int getToMinute() {
+            return toMinute;
+        }
+
+        public String getCondition() {
+            return condition;
+        }
+
+        public boolean needsPrescription() {
+            return needsPrescription;
+        }
+
+        Appointment toAppointment(HealthProfessional doctor, int minute) {
+            return new Appointment(patientName, patientMobile, TimeSlot.format(minute), doctor);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(96)
+                    .append("Request{patient='").append(patientName)
+                    .append("', window=").append(TimeSlot.format(fromMinute)).append('-')
+                    .append((toMinute == DoctorSchedule.MINUTES_PER_DAY) ? "24:00" : TimeSlot.format(toMinute));
+            if (condition != null) {
+                out.append(", condition='").append(condition).append('\'');
+            } else if (needsPrescription) {
+                out.append(", prescribing GP");
+            }
+            return out.append('}').toString();
+        }
+    }
+
+    /**
+     * Appointments planned for a batch, by request position
+     */
+    public static final class Plan {
+        private final Appointment[] placed;
+        private final int assigned;
+        private final int capacity;
+        private final long elapsedNanos;
+
+        private Plan(Appointment[] placed, int capacity, long elapsedNanos) {
+            this.placed = placed;
+            this.capacity = capacity;
+            this.elapsedNanos = elapsedNanos;
+            int count = 0;
+            for (Appointment appointment : placed) {
+                if (appointment != null) count++;
+            }
+            this.assigned = count;
+        }
+
+        /**
+         * Appointment planned for a request, or null if it could not be placed
+         */
+        public Appointment getAppointment(int request) {
+            return placed[request];
+        }
+
+        /**
+         * Planned appointments in request order
+         */
+        public List<Appointment> getAppointments() {
+            List<Appointment> appointments = new ArrayList<>(assigned);
+            for (Appointment appointment : placed) {
+                if (appointment != null) appointments.add(appointment);
+            }
+            return appointments;
+        }
+
+        public int getRequestCount() {
+            return placed.length;
+        }
+
+        public int getAssignedCount() {
+            return assigned;
+        }
+
+        /**
+         * Share of requests placed, 0 to 1
+         */
+        public double getFillRate() {
+            return (placed.length == 0) ? 0 : (double) assigned / placed.length;
+        }
+
+        /**
+         * Share of the professionals' free capacity the plan uses, 0 to 1
+         */
+        public double getUtilization() {
+            return (capacity == 0) ? 0 : (double) assigned / capacity;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(64)
+                    .append("Plan{assigned=").append(assigned)
+                    .append('/').append(placed.length)
+                    .append(", utilization=").append(String.format("%.3f", getUtilization()))
+                    .append('}').toString();
+        }
+    }
+}
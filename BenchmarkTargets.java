@@ -0,0 +1,122 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+
+/**
+ * BenchmarkTargets class - the hot paths both benchmark harnesses measure
+ * Each target is built with its data already in place and returned as an
+ * IntToLongFunction from invocation number to a result the harness must
+ * consume. MicroBenchmark calls them directly; the JMH classes under jmh/
+ * live in a named package, which cannot see this one, so they look the
+ * targets up by name through reflection once per trial
+ */
+public final class BenchmarkTargets {
+
+    public static final String APPOINTMENT_CONSTRUCT = "appointment.construct";
+    public static final String RENDER_DETAILS = "schedule.renderDetails";
+    public static final String CANCEL_AND_REBOOK = "engine.cancelAndRebook";
+    public static final String FIND_BY_MOBILE = "engine.findByMobile";
+    public static final String REGISTRY_FIND_BY_ID = "registry.findById";
+    public static final String REFERRAL_INDEX = "referral.index";
+    public static final String REFERRAL_SCAN = "referral.acceptReferralScan";
+
+    private static final String CONDITION = "Referred for neurology 42 review after oncology 7 consult";
+    private static final String[] SPECIALTIES = {"Cardiology", "Neurology", "Oncology", "Dermatology",
+            "Orthopaedics", "Paediatrics", "Psychiatry", "Radiology", "Urology", "Nephrology"};
+
+    private BenchmarkTargets() {
+    }
+
+    /**
+     * Build a target by name; size is the number of appointments or
+     * professionals it runs against, and is ignored by targets without data
+     */
+    public static IntToLongFunction create(String name, int size) {
+        switch (name) {
+            case APPOINTMENT_CONSTRUCT:
+                return appointmentConstruct();
+            case RENDER_DETAILS:
+                return renderDetails();
+            case CANCEL_AND_REBOOK:
+            case FIND_BY_MOBILE:
+                return engineTarget(name, size);
+            case REGISTRY_FIND_BY_ID:
+            case REFERRAL_INDEX:
+            case REFERRAL_SCAN:
+                return registryTarget(name, size);
+            default:
+                throw new IllegalArgumentException("Unknown benchmark target: " + name);
+        }
+    }
+
+    private static IntToLongFunction appointmentConstruct() {
+        Specialist cardiologist = new Specialist(201, "Dr. Brown", "Cardiology", "Heart Surgery", 15);
+        return i -> new Appointment("Patient " + (i & 1023), PerformanceBenchmark.mobileFor(i & 0xFFFFF),
+                PerformanceBenchmark.timeFor(i), cardiologist).getSlotMinute();
+    }
+
+    private static IntToLongFunction renderDetails() {
+        Specialist cardiologist = new Specialist(201, "Dr. Brown", "Cardiology", "Heart Surgery", 15);
+        ScheduleRenderer renderer = new ScheduleRenderer(new PrintStream(OutputStream.nullOutputStream()));
+        Appointment sample = new Appointment("Alice Johnson", "0412345678", "09:00", cardiologist);
+        return i -> {
+            renderer.renderDetails(sample);
+            return 1;
+        };
+    }
+
+    // An engine holding size appointments, one doctor per full day
+    private static IntToLongFunction engineTarget(String name, int size) {
+        BookingEngine engine = new BookingEngine();
+        Specialist[] doctors = new Specialist[size / DoctorSchedule.MINUTES_PER_DAY + 1];
+        for (int d = 0; d < doctors.length; d++) {
+            doctors[d] = new Specialist(1_000 + d, "Dr. " + d, "Cardiology", "Heart Surgery", 10);
+        }
+        List<Appointment> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(new Appointment("Patient " + i, PerformanceBenchmark.mobileFor(i),
+                    PerformanceBenchmark.timeFor(i), doctors[i / DoctorSchedule.MINUTES_PER_DAY]));
+        }
+        engine.bookAll(batch);
+
+        Random random = new Random(11);
+        if (name.equals(FIND_BY_MOBILE)) {
+            return i -> engine.findByMobile(PerformanceBenchmark.mobileFor(random.nextInt(size))).size();
+        }
+        // Cancel a random booking and book it again so the size stays fixed
+        return i -> {
+            int row = random.nextInt(size);
+            engine.cancelByMobile(PerformanceBenchmark.mobileFor(row));
+            return engine.book(new Appointment("Patient " + row, PerformanceBenchmark.mobileFor(row),
+                    PerformanceBenchmark.timeFor(row), doctors[row / DoctorSchedule.MINUTES_PER_DAY])) ? 1 : 0;
+        };
+    }
+
+    private static IntToLongFunction registryTarget(String name, int size) {
+        ProfessionalRegistry registry = new ProfessionalRegistry();
+        List<Specialist> specialists = new ArrayList<>(size);
+        for (int d = 0; d < size; d++) {
+            specialists.add(registry.register(new Specialist(d, "Dr. " + d, "Dept " + (d % 20),
+                    SPECIALTIES[d % SPECIALTIES.length] + " " + (d % 97), 1 + d % 30)));
+        }
+
+        Random random = new Random(11);
+        if (name.equals(REGISTRY_FIND_BY_ID)) {
+            return i -> registry.findById(random.nextInt(size)).getId();
+        }
+        if (name.equals(REFERRAL_INDEX)) {
+            ReferralIndex index = ReferralIndex.fromRegistry(registry);
+            return i -> index.findSpecialists(CONDITION).size();
+        }
+        return i -> {
+            int matches = 0;
+            for (Specialist specialist : specialists) {
+                if (specialist.acceptReferral(CONDITION)) matches++;
+            }
+            return matches;
+        };
+    }
+}
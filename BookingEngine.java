@@ -0,0 +1,1410 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * BookingEngine class - thread-safe appointment booking
+ * Partitions appointments into lock-striped segments by doctor ID, so bookings
+ * for doctors in different segments never contend with each other.
+ * Each doctor's occupied slots and daily capacity live in a DoctorSchedule.
+ * Booked appointments are also indexed by ID and by patient mobile across
+ * segments, so per-patient lookups and cancels never visit every segment.
+ * Running counts per doctor, department and type live in ScheduleAggregates,
+ * and slots freed by cancellation are offered to the Waitlist first.
+ * Each change is atomic per doctor; a bookAll batch spans stripes, so it is
+ * applied atomically only with respect to published schedule views
+ */
+public class BookingEngine implements Iterable<Appointment>, AppointmentListener,
+        AppointmentRepository<Appointment> {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    // Each segment is only accessed while holding its own monitor
+    private final AppointmentStore[] segments;
+    private final int stripeMask;
+
+    // Global booking order, used to list appointments across segments
+    private final AtomicLong nextSequence;
+
+    // Per-doctor slot bitmap and booked count - readable without any lock
+    private final LongTable<DoctorSchedule> schedules;
+
+    // Every booked appointment by ID
+    private final LongTable<Appointment> byId;
+
+    // Patient mobile to the IDs of that patient's bookings; arrays are replaced, never modified
+    private final LongTable<long[]> patients;
+
+    // Booked appointments per status, indexed by status code
+    private final AtomicIntegerArray statusCounts;
+
+    // Replaced as a whole when observers change, so notifying never locks or allocates
+    private volatile BookingObserver[] observers;
+
+    // Held shared while bookAll fills its stripes and exclusively while a
+    // schedule view is copied, so a view holds all of a batch or none of it
+    private final ReentrantReadWriteLock batchGate;
+
+    private final BookingMetrics metrics;
+    private final ScheduleAggregates aggregates;
+    private final Waitlist waitlist;
+    private volatile SchedulePublisher schedulePublisher;  // created on first use
+    private volatile PatientNameIndex nameIndex;           // created on first use
+    private volatile ChangeFeed changeFeed;                // created on first use
+
+    /**
+     * Default constructor - uses the default number of lock stripes
+     */
+    public BookingEngine() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Parameterized constructor - stripes is rounded up to a power of two
+     */
+    public BookingEngine(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+
+        this.segments = new AppointmentStore[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new AppointmentStore();
+        }
+        this.stripeMask = size - 1;
+        this.nextSequence = new AtomicLong();
+        this.schedules = new LongTable<>(size);
+        this.byId = new LongTable<>(size);
+        this.patients = new LongTable<>(size);
+        this.statusCounts = new AtomicIntegerArray(AppointmentStatus.values().length);
+        this.metrics = new BookingMetrics();
+        this.aggregates = new ScheduleAggregates();
+        this.waitlist = new Waitlist();
+        this.observers = new BookingObserver[] {aggregates};
+        this.batchGate = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Latency and outcome metrics for this engine
+     */
+    public BookingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Running counts per doctor, department and professional type
+     */
+    public ScheduleAggregates getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Patients waiting for a slot - a cancellation books the best eligible
+     * one into the freed slot before anyone else can take it
+     */
+    public Waitlist getWaitlist() {
+        return waitlist;
+    }
+
+    /**
+     * Publisher of immutable schedule views for lock-free readers
+     * Created on first use; from then on every bookAll publishes a new view
+     */
+    public SchedulePublisher getSchedulePublisher() {
+        SchedulePublisher publisher = schedulePublisher;
+        if (publisher == null) {
+            synchronized (this) {
+                publisher = schedulePublisher;
+                if (publisher == null) {
+                    publisher = new SchedulePublisher(this);
+                    addObserver(publisher);
+                    // Doctors booked before the observer was added
+                    List<Integer> booked = new ArrayList<>();
+                    for (long doctorId : schedules.keys()) {
+                        booked.add((int) doctorId);
+                    }
+                    publisher.markChanged(booked);
+                    publisher.publish();
+                    schedulePublisher = publisher;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    /**
+     * Patient name search index, kept current from then on
+     * Created on first use from the appointments already booked
+     */
+    public PatientNameIndex getNameIndex() {
+        PatientNameIndex index = nameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nameIndex;
+                if (index == null) {
+                    index = new PatientNameIndex();
+                    attachSeeded(index, 0);
+                    nameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Change-data-capture feed of every booking change from then on
+     * Created on first use; subscribers start from a snapshot or sequence
+     */
+    public ChangeFeed getChangeFeed() {
+        ChangeFeed feed = changeFeed;
+        if (feed == null) {
+            synchronized (this) {
+                feed = changeFeed;
+                if (feed == null) {
+                    feed = new ChangeFeed();
+                    addObserver(feed);
+                    changeFeed = feed;
+                }
+            }
+        }
+        return feed;
+    }
+
+    /**
+     * Register an observer for every later booking change
+     */
+    public synchronized void addObserver(BookingObserver observer) {
+        if (observer == null) {
+            throw new IllegalArgumentException("Observer cannot be null");
+        }
+        BookingObserver[] updated = Arrays.copyOf(observers, observers.length + 1);
+        updated[observers.length] = observer;
+        observers = updated;
+    }
+
+    public synchronized void removeObserver(BookingObserver observer) {
+        for (int i = 0; i < observers.length; i++) {
+            if (observers[i] == observer) {
+                BookingObserver[] updated = new BookingObserver[observers.length - 1];
+                System.arraycopy(observers, 0, updated, 0, i);
+                System.arraycopy(observers, i + 1, updated, i, updated.length - i);
+                observers = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Book an appointment unless the doctor already has that time slot
+     * or a General Practitioner has reached maxPatientsPerDay
+     * Returns false when the booking is refused - the check and insert are atomic
+     */
+    public boolean book(Appointment appointment) {
+        if (appointment == null) {
+            throw new IllegalArgumentException("Appointment cannot be null");
+        }
+        long start = metrics.start();
+        if (!appointment.isValid()) {
+            metrics.bookingRefused(start, BookingMetrics.Rejection.NOT_BOOKABLE);
+            return false;
+        }
+        if (!insert(appointment, 0)) {
+            metrics.bookingRefused(start, refusalOf(appointment));
+            return false;
+        }
+        metrics.bookingCompleted(start, appointment.getDoctor().getId());
+        return true;
+    }
+
+    /**
+     * Re-insert appointments recovered from storage in bulk, each with its
+     * original booking sequence; cancelled ones are listed without a slot.
+     * Each segment lock is taken once and observers get one
+     * appointmentsRestored call per segment instead of one call per
+     * appointment. Meant for an engine nobody else uses yet: IDs and patient
+     * mobiles are linked after every segment is filled, in one pass grouped
+     * by table stripe. Returns, per appointment, whether it was restored
+     */
+    boolean[] restoreAll(List<Appointment> appointments, long[] bookingSequences) {
+        int count = appointments.size();
+        boolean[] restored = new boolean[count];
+        nextSequence.accumulateAndGet(highestSequence(bookingSequences, count), Math::max);
+
+        int[] stripeStart = new int[segments.length + 1];
+        int[] order = groupByStripe(appointments, stripeStart);
+        for (int stripe = 0; stripe < segments.length; stripe++) {
+            if (stripeStart[stripe] != stripeStart[stripe + 1]) {
+                restoreStripe(stripe, appointments, bookingSequences,
+                        Arrays.copyOfRange(order, stripeStart[stripe], stripeStart[stripe + 1]), restored);
+            }
+        }
+        linkRestored(appointments, restored);
+        return restored;
+    }
+
+    // Each phase of restoreAll is its own method, so the JIT compiles each
+    // hot loop once rather than recompiling the whole of restoreAll per loop
+    private static long highestSequence(long[] bookingSequences, int count) {
+        long highest = 0;
+        for (int i = 0; i < count; i++) {
+            if (bookingSequences[i] <= 0) {
+                throw new IllegalArgumentException("Booking sequence must be positive");
+            }
+            highest = Math.max(highest, bookingSequences[i]);
+        }
+        return highest;
+    }
+
+    private void restoreStripe(int stripe, List<Appointment> appointments, long[] bookingSequences,
+                               int[] positions, boolean[] restored) {
+        synchronized (segments[stripe]) {
+            segments[stripe].ensureCapacity(positions.length);
+            List<Appointment> inserted = new ArrayList<>(positions.length);
+            for (int i : positions) {
+                Appointment appointment = appointments.get(i);
+                if (placeLocked(appointment, bookingSequences[i])) {
+                    restored[i] = true;
+                    inserted.add(appointment);
+                }
+            }
+            for (BookingObserver observer : observers) {
+                observer.appointmentsRestored(inserted);
+            }
+        }
+    }
+
+    private void linkRestored(List<Appointment> appointments, boolean[] restored) {
+        int linked = 0;
+        long[] ids = new long[restored.length];
+        long[] mobiles = new long[restored.length];
+        Appointment[] byPosition = new Appointment[restored.length];
+        for (int i = 0; i < restored.length; i++) {
+            if (restored[i]) {
+                Appointment appointment = appointments.get(i);
+                ids[linked] = appointment.getId();
+                mobiles[linked] = appointment.getMobileKey();
+                byPosition[linked++] = appointment;
+            }
+        }
+        byId.putAll(ids, byPosition, linked);
+        patients.computeAll(mobiles, linked, (i, current) -> appended(current, ids[i]));
+    }
+
+    /**
+     * Book a batch of appointments, taking each segment lock only once
+     * Segments are filled in parallel; booking order follows the list order
+     * Returns, per appointment, whether it was booked
+     */
+    public boolean[] bookAll(List<Appointment> batch) {
+        int count = batch.size();
+        boolean[] booked = new boolean[count];
+
+        int[] stripeStart = new int[segments.length + 1];
+        int[] order = groupByStripe(batch, stripeStart);
+
+        // Reserve one block of booking sequences for the whole batch
+        long base = nextSequence.getAndAdd(count);
+        batchGate.readLock().lock();
+        try {
+            IntStream.range(0, segments.length).parallel().forEach(stripe -> {
+                if (stripeStart[stripe] == stripeStart[stripe + 1]) {
+                    return;
+                }
+                synchronized (segments[stripe]) {
+                    for (int k = stripeStart[stripe]; k < stripeStart[stripe + 1]; k++) {
+                        int i = order[k];
+                        Appointment appointment = batch.get(i);
+                        booked[i] = appointment.isValid() && insertLocked(appointment, base + i + 1);
+                    }
+                }
+            });
+        } finally {
+            batchGate.readLock().unlock();
+        }
+
+        if (metrics.isEnabled()) {
+            for (int i = 0; i < count; i++) {
+                Appointment appointment = batch.get(i);
+                metrics.batchCompleted(appointment.getDoctor().getId(), booked[i] ? null
+                        : appointment.isValid() ? refusalOf(appointment) : BookingMetrics.Rejection.NOT_BOOKABLE);
+            }
+        }
+        SchedulePublisher publisher = schedulePublisher;
+        if (publisher != null) {
+            publisher.publish();
+        }
+        return booked;
+    }
+
+    // Positions grouped by stripe with a counting sort, keeping list order;
+    // stripe s owns order[stripeStart[s]] up to order[stripeStart[s + 1]]
+    private int[] groupByStripe(List<Appointment> batch, int[] stripeStart) {
+        for (Appointment appointment : batch) {
+            if (appointment == null || appointment.getDoctor() == null) {
+                throw new IllegalArgumentException("Appointments and doctors cannot be null");
+            }
+            stripeStart[stripeOf(appointment.getDoctor().getId()) + 1]++;
+        }
+        for (int stripe = 0; stripe < segments.length; stripe++) {
+            stripeStart[stripe + 1] += stripeStart[stripe];
+        }
+        int[] fill = Arrays.copyOf(stripeStart, segments.length);
+        int[] order = new int[batch.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[fill[stripeOf(batch.get(i).getDoctor().getId())]++] = i;
+        }
+        return order;
+    }
+
+    // A bookingSequence of 0 assigns the next one
+    private boolean insert(Appointment appointment, long bookingSequence) {
+        HealthProfessional doctor = appointment.getDoctor();
+        if (doctor == null) {
+            throw new IllegalArgumentException("Doctor cannot be null");
+        }
+        synchronized (segmentFor(doctor.getId())) {
+            return insertLocked(appointment, bookingSequence);
+        }
+    }
+
+    // Must be called while holding the doctor's segment lock
+    private boolean insertLocked(Appointment appointment, long bookingSequence) {
+        if (!storeLocked(appointment, bookingSequence)) {
+            return false;
+        }
+        for (BookingObserver observer : observers) {
+            observer.appointmentBooked(appointment);
+        }
+        return true;
+    }
+
+    // Insert without telling observers - the caller does, under the same lock
+    private boolean storeLocked(Appointment appointment, long bookingSequence) {
+        if (!placeLocked(appointment, bookingSequence)) {
+            return false;
+        }
+        byId.put(appointment.getId(), appointment);
+        linkPatient(appointment.getMobileKey(), appointment.getId());
+        return true;
+    }
+
+    // Everything storeLocked does except linking the ID and patient mobile
+    private boolean placeLocked(Appointment appointment, long bookingSequence) {
+        HealthProfessional doctor = appointment.getDoctor();
+        boolean active = appointment.isValid();
+        if (active && !scheduleFor(doctor.getId()).tryReserve(appointment.getSlotMinute(), capacityOf(doctor))) {
+            return false;
+        }
+        appointment.setHoldingSlot(active);
+        appointment.setListener(this);
+        appointment.setBookingSequence(
+                (bookingSequence > 0) ? bookingSequence : nextSequence.incrementAndGet());
+        segmentFor(doctor.getId()).add(appointment);
+        statusCounts.incrementAndGet(appointment.getAppointmentStatus().code());
+        return true;
+    }
+
+    /**
+     * Cancel the earliest booking for a patient mobile
+     * Returns the removed appointment, or null if none was found
+     */
+    @Override
+    public Appointment cancelByMobile(String patientMobile) {
+        long start = metrics.start();
+        long mobile = MobileNumber.parse(patientMobile);
+
+        while (true) {
+            Appointment earliest = null;
+            for (Appointment appointment : patientAppointments(mobile)) {
+                if (earliest == null || appointment.getBookingSequence() < earliest.getBookingSequence()) {
+                    earliest = appointment;
+                }
+            }
+            if (earliest == null) {
+                metrics.cancelCompleted(start, false);
+                return null;
+            }
+
+            // Another thread may have removed it meanwhile - search again if so
+            if (remove(earliest)) {
+                metrics.cancelCompleted(start, true);
+                return earliest;
+            }
+        }
+    }
+
+    /**
+     * Cancel every booking for a patient mobile
+     * Returns the removed appointments in booking order
+     */
+    public List<Appointment> cancelAllByMobile(String patientMobile) {
+        List<Appointment> removed = new ArrayList<>();
+        for (Appointment appointment : findByMobile(patientMobile)) {
+            if (cancel(appointment)) {
+                removed.add(appointment);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the booked appointment with an ID
+     * Returns the removed appointment, or null if none is booked with that ID
+     */
+    @Override
+    public Appointment cancelById(long appointmentId) {
+        Appointment appointment = byId.get(appointmentId);
+        return (appointment != null && cancel(appointment)) ? appointment : null;
+    }
+
+    /**
+     * Remove a specific booked appointment
+     * Returns false if it is not (or no longer) booked here
+     */
+    public boolean cancel(Appointment appointment) {
+        long start = metrics.start();
+        boolean removed = remove(appointment);
+        metrics.cancelCompleted(start, removed);
+        return removed;
+    }
+
+    private boolean remove(Appointment appointment) {
+        if (appointment == null || appointment.getDoctor() == null) return false;
+
+        AppointmentStore segment = segmentFor(appointment.getDoctor().getId());
+        synchronized (segment) {
+            if (!segment.remove(appointment)) {
+                return false;
+            }
+            byId.remove(appointment.getId());
+            unlinkPatient(appointment.getMobileKey(), appointment.getId());
+            statusCounts.decrementAndGet(appointment.getAppointmentStatus().code());
+            boolean freed = appointment.isHoldingSlot();
+            releaseSlot(appointment);
+            appointment.setListener(null);
+
+            for (BookingObserver observer : observers) {
+                observer.appointmentRemoved(appointment);
+            }
+            if (freed) {
+                fillFromWaitlist(appointment.getDoctor(), appointment.getSlotMinute());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Apply a status change made on a booked appointment and update the
+     * status indexes. A cancelled appointment stays listed, but its slot and
+     * capacity become free
+     */
+    @Override
+    public boolean statusChangeRequested(Appointment appointment, AppointmentStatus target) {
+        long start = metrics.start();
+        if (!applyStatusChange(appointment, target)) {
+            return false;
+        }
+        if (target == AppointmentStatus.CONFIRMED) {
+            metrics.confirmCompleted(start);
+        } else if (target == AppointmentStatus.CANCELLED) {
+            metrics.cancelCompleted(start, true);
+        }
+        return true;
+    }
+
+    private boolean applyStatusChange(Appointment appointment, AppointmentStatus target) {
+        AppointmentStore segment = segmentFor(appointment.getDoctor().getId());
+        synchronized (segment) {
+            // Re-check under the lock in case another thread changed or removed it first
+            if (!segment.contains(appointment)) {
+                return false;
+            }
+            AppointmentStatus current = appointment.getAppointmentStatus();
+            if (!current.canTransitionTo(target)) {
+                return false;
+            }
+            segment.moveStatus(appointment, target);
+            statusCounts.decrementAndGet(current.code());
+            statusCounts.incrementAndGet(target.code());
+            appointment.applyStatus(target);
+            boolean freed = !target.isActive() && appointment.isHoldingSlot();
+            if (freed) {
+                releaseSlot(appointment);
+            }
+
+            for (BookingObserver observer : observers) {
+                observer.statusChanged(appointment, current);
+            }
+            if (freed) {
+                fillFromWaitlist(appointment.getDoctor(), appointment.getSlotMinute());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Find all appointments for a patient mobile, in booking order
+     */
+    @Override
+    public List<Appointment> findByMobile(String patientMobile) {
+        long start = metrics.start();
+        List<Appointment> result = patientAppointments(MobileNumber.parse(patientMobile));
+        if (result.size() > 1) {
+            result.sort(Comparator.comparingLong(Appointment::getBookingSequence));
+        }
+        metrics.lookupCompleted(start);
+        return result;
+    }
+
+    /**
+     * Appointments whose patient name has a word starting with the prefix,
+     * case-insensitively, at most limit of them in no particular order
+     * Cancelled appointments are left out
+     */
+    public List<Appointment> findByNamePrefix(String prefix, int limit) {
+        long start = metrics.start();
+        List<Appointment> result = resolve(getNameIndex().findByPrefix(prefix, limit));
+        metrics.lookupCompleted(start);
+        return result;
+    }
+
+    /**
+     * Appointments whose patient name matches every word of the query with
+     * at most one typo per word, at most limit of them in no particular order
+     * Cancelled appointments are left out
+     */
+    public List<Appointment> findByNameSimilar(String query, int limit) {
+        long start = metrics.start();
+        List<Appointment> result = resolve(getNameIndex().findSimilar(query, limit));
+        metrics.lookupCompleted(start);
+        return result;
+    }
+
+    /**
+     * Booked appointment with an ID, or null
+     */
+    @Override
+    public Appointment findById(long appointmentId) {
+        return byId.get(appointmentId);
+    }
+
+    /**
+     * Find all appointments for a doctor - only locks that doctor's segment
+     */
+    public List<Appointment> findByDoctor(int doctorId) {
+        AppointmentStore segment = segmentFor(doctorId);
+        synchronized (segment) {
+            return segment.findByDoctor(doctorId);
+        }
+    }
+
+    /**
+     * Gate a schedule view takes exclusively, so no bookAll is part-way
+     * through its stripes while the view is copied
+     */
+    ReentrantReadWriteLock.WriteLock batchExclusion() {
+        return batchGate.writeLock();
+    }
+
+    /**
+     * Immutable rows for all of a doctor's appointments in time order,
+     * copied under the doctor's segment lock
+     */
+    List<ScheduleView.Row> copySchedule(int doctorId) {
+        AppointmentStore segment = segmentFor(doctorId);
+        List<ScheduleView.Row> rows;
+        synchronized (segment) {
+            List<Appointment> appointments = segment.findByDoctor(doctorId);
+            rows = new ArrayList<>(appointments.size());
+            for (Appointment appointment : appointments) {
+                rows.add(new ScheduleView.Row(appointment));
+            }
+        }
+        rows.sort(Comparator.comparingInt(ScheduleView.Row::getSlotMinute)
+                .thenComparingLong(ScheduleView.Row::getBookingSequence));
+        return rows;
+    }
+
+    /**
+     * A doctor's active appointments starting in [fromMinute, toMinute), in
+     * time order. Walks the occupied bits of the doctor's schedule, so the
+     * cost depends on the matches rather than on the doctor's bookings
+     */
+    public List<Appointment> findByDoctorBetween(int doctorId, int fromMinute, int toMinute) {
+        if (fromMinute < 0 || toMinute > DoctorSchedule.MINUTES_PER_DAY || fromMinute > toMinute) {
+            throw new IllegalArgumentException("Invalid time range: " + fromMinute + "-" + toMinute);
+        }
+        List<Appointment> result = new ArrayList<>();
+        DoctorSchedule schedule = schedules.get(doctorId);
+        if (schedule == null || fromMinute == toMinute) {
+            return result;
+        }
+
+        AppointmentStore segment = segmentFor(doctorId);
+        synchronized (segment) {
+            int minute = schedule.nextOccupiedSlot(fromMinute);
+            while (minute >= 0 && minute < toMinute) {
+                Appointment appointment = segment.findActiveAt(doctorId, minute);
+                if (appointment != null) {
+                    result.add(appointment);
+                }
+                minute = schedule.nextOccupiedSlot(minute + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Range query with HH:mm bounds - from is inclusive, to is exclusive
+     */
+    public List<Appointment> findByDoctorBetween(int doctorId, String fromTime, String toTime) {
+        int from = TimeSlot.parse(fromTime);
+        int to = TimeSlot.parse(toTime);
+        if (from == TimeSlot.INVALID || to == TimeSlot.INVALID) {
+            throw new IllegalArgumentException("Invalid time range: " + fromTime + "-" + toTime);
+        }
+        return findByDoctorBetween(doctorId, from, to);
+    }
+
+    /**
+     * Active appointment already holding a doctor's slot, or null if it is free
+     */
+    public Appointment findConflict(int doctorId, int minute) {
+        DoctorSchedule schedule = schedules.get(doctorId);
+        if (schedule == null || !schedule.isOccupied(minute)) {
+            return null;
+        }
+        AppointmentStore segment = segmentFor(doctorId);
+        synchronized (segment) {
+            return segment.findActiveAt(doctorId, minute);
+        }
+    }
+
+    /**
+     * Earliest start at or after fromMinute where any of the doctors has
+     * length free minutes and spare capacity; ties go to the first doctor
+     * in the collection. Returns null if none of them is free
+     */
+    public FreeSlot findFirstFreeSlot(Collection<? extends HealthProfessional> doctors,
+                                      int fromMinute, int length) {
+        if (length <= 0 || fromMinute < 0 || fromMinute + length > DoctorSchedule.MINUTES_PER_DAY) {
+            return null;
+        }
+        HealthProfessional bestDoctor = null;
+        int bestMinute = DoctorSchedule.MINUTES_PER_DAY;
+        for (HealthProfessional doctor : doctors) {
+            if (!canAcceptNewPatient(doctor)) {
+                continue;
+            }
+            DoctorSchedule schedule = schedules.get(doctor.getId());
+            int minute = (schedule != null) ? schedule.firstFreeRun(fromMinute, length) : fromMinute;
+            if (minute != DoctorSchedule.NO_FREE_SLOT && minute < bestMinute) {
+                bestDoctor = doctor;
+                bestMinute = minute;
+                if (minute == fromMinute) {
+                    break;  // nobody can start earlier
+                }
+            }
+        }
+        return (bestDoctor != null) ? new FreeSlot(bestDoctor, bestMinute) : null;
+    }
+
+    /**
+     * Move a booked appointment's slot when its time is changed directly
+     * The change is ignored if the doctor already has the new slot, or if
+     * the appointment was removed or moved to another doctor meanwhile
+     */
+    @Override
+    public void timeSlotChangeRequested(Appointment appointment, int newMinute) {
+        int doctorId = appointment.getDoctor().getId();
+        AppointmentStore segment = segmentFor(doctorId);
+        synchronized (segment) {
+            if (!segment.contains(appointment) || appointment.getDoctor().getId() != doctorId) {
+                return;
+            }
+            if (appointment.isHoldingSlot()) {
+                DoctorSchedule schedule = scheduleFor(doctorId);
+                if (schedule.isOccupied(newMinute)) {
+                    return;
+                }
+                // A move keeps the booked count, so capacity cannot block the new slot
+                schedule.release(appointment.getSlotMinute());
+                schedule.tryReserve(newMinute, Integer.MAX_VALUE);
+            }
+            int oldMinute = appointment.getSlotMinute();
+            segment.moveTimeSlot(appointment, newMinute);
+            appointment.applySlotMinute(newMinute);
+
+            for (BookingObserver observer : observers) {
+                observer.timeSlotChanged(appointment, oldMinute);
+            }
+        }
+    }
+
+    /**
+     * Move a booked appointment to another doctor when its doctor is changed
+     * directly. Observers see the move as a removal followed by a booking with
+     * the same booking sequence. The change is ignored if the new doctor
+     * already has the slot or has no capacity left. The slot the old doctor
+     * frees goes to the waitlist, as when a booking is cancelled
+     */
+    @Override
+    public void doctorChangeRequested(Appointment appointment, HealthProfessional newDoctor) {
+        HealthProfessional oldDoctor = appointment.getDoctor();
+        int fromIndex = stripeOf(oldDoctor.getId());
+        int toIndex = stripeOf(newDoctor.getId());
+
+        // Always lock the lower stripe first so two moves cannot deadlock
+        synchronized (segments[Math.min(fromIndex, toIndex)]) {
+            synchronized (segments[Math.max(fromIndex, toIndex)]) {
+                AppointmentStore from = segments[fromIndex];
+                if (!from.contains(appointment)) {
+                    return;
+                }
+                if (oldDoctor.getId() == newDoctor.getId()) {
+                    // Same doctor ID, e.g. swapping in the registry's canonical instance
+                    appointment.applyDoctor(newDoctor);
+                    return;
+                }
+
+                boolean holding = appointment.isHoldingSlot();
+                if (holding && !scheduleFor(newDoctor.getId())
+                        .tryReserve(appointment.getSlotMinute(), capacityOf(newDoctor))) {
+                    return;
+                }
+                releaseSlot(appointment);
+                from.remove(appointment);
+                for (BookingObserver observer : observers) {
+                    observer.appointmentRemoved(appointment);
+                }
+
+                appointment.applyDoctor(newDoctor);
+                appointment.setHoldingSlot(holding);
+                segments[toIndex].add(appointment);
+                for (BookingObserver observer : observers) {
+                    observer.appointmentBooked(appointment);
+                }
+                if (holding) {
+                    // The old doctor's slot is free now
+                    fillFromWaitlist(oldDoctor, appointment.getSlotMinute());
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-index a booked appointment when its patient mobile is changed directly
+     */
+    @Override
+    public void mobileChangeRequested(Appointment appointment, long newMobile) {
+        AppointmentStore segment = segmentFor(appointment.getDoctor().getId());
+        synchronized (segment) {
+            if (!segment.contains(appointment)) {
+                return;
+            }
+            long oldMobile = appointment.getMobileKey();
+            segment.moveMobile(appointment, newMobile);
+            unlinkPatient(oldMobile, appointment.getId());
+            appointment.applyPatientMobile(newMobile);
+            linkPatient(newMobile, appointment.getId());
+
+            for (BookingObserver observer : observers) {
+                observer.patientMobileChanged(appointment, oldMobile);
+            }
+        }
+    }
+
+    /**
+     * Re-index a booked appointment when its patient name is changed directly
+     */
+    @Override
+    public void nameChangeRequested(Appointment appointment, String newName) {
+        AppointmentStore segment = segmentFor(appointment.getDoctor().getId());
+        synchronized (segment) {
+            if (!segment.contains(appointment)) {
+                return;
+            }
+            String oldName = appointment.getPatientName();
+            appointment.applyPatientName(newName);
+
+            for (BookingObserver observer : observers) {
+                observer.patientNameChanged(appointment, oldName);
+            }
+        }
+    }
+
+    /**
+     * Number of booked appointments with a status - lock-free, no scan
+     */
+    public int countByStatus(AppointmentStatus status) {
+        return statusCounts.get(status.code());
+    }
+
+    /**
+     * All booked appointments with a status, in booking order
+     */
+    public List<Appointment> findByStatus(AppointmentStatus status) {
+        List<Appointment> result = new ArrayList<>(countByStatus(status));
+        for (AppointmentStore segment : segments) {
+            synchronized (segment) {
+                result.addAll(segment.findByStatus(status));
+            }
+        }
+        result.sort(Comparator.comparingLong(Appointment::getBookingSequence));
+        return result;
+    }
+
+    /**
+     * All booked appointments that are not cancelled, in booking order
+     */
+    public List<Appointment> findValid() {
+        List<Appointment> result = new ArrayList<>();
+        for (AppointmentStore segment : segments) {
+            synchronized (segment) {
+                for (AppointmentStatus status : AppointmentStatus.values()) {
+                    if (status.isActive()) {
+                        result.addAll(segment.findByStatus(status));
+                    }
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(Appointment::getBookingSequence));
+        return result;
+    }
+
+    /**
+     * A doctor's appointments with a status - only locks that doctor's segment
+     */
+    public List<Appointment> findByDoctorAndStatus(int doctorId, AppointmentStatus status) {
+        AppointmentStore segment = segmentFor(doctorId);
+        synchronized (segment) {
+            return segment.findByDoctorAndStatus(doctorId, status);
+        }
+    }
+
+    /**
+     * Check a doctor's remaining capacity for the day in constant time
+     */
+    public boolean canAcceptNewPatient(HealthProfessional doctor) {
+        if (doctor instanceof GeneralPractitioner) {
+            return ((GeneralPractitioner) doctor).canAcceptNewPatient(getBookedCount(doctor.getId()));
+        }
+        return getBookedCount(doctor.getId()) < DoctorSchedule.MINUTES_PER_DAY;
+    }
+
+    /**
+     * Number of slots currently held by a doctor
+     */
+    public int getBookedCount(int doctorId) {
+        DoctorSchedule schedule = schedules.get(doctorId);
+        return (schedule != null) ? schedule.getBookedCount() : 0;
+    }
+
+    /**
+     * First free minute of the day at or after fromMinute for a doctor,
+     * or DoctorSchedule.NO_FREE_SLOT
+     */
+    public int nextFreeSlot(int doctorId, int fromMinute) {
+        DoctorSchedule schedule = schedules.get(doctorId);
+        return (schedule != null) ? schedule.nextFreeSlot(fromMinute) : fromMinute;
+    }
+
+    public int size() {
+        int total = 0;
+        for (AppointmentStore segment : segments) {
+            synchronized (segment) {
+                total += segment.size();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Copy of all booked appointments in global booking order
+     * Each segment is copied under its own lock
+     */
+    public List<Appointment> snapshot() {
+        List<Appointment> result = new ArrayList<>();
+        for (AppointmentStore segment : segments) {
+            synchronized (segment) {
+                for (Appointment appointment : segment) {
+                    result.add(appointment);
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(Appointment::getBookingSequence));
+        return result;
+    }
+
+    /**
+     * Iterate a snapshot, so callers never see concurrent modification
+     */
+    @Override
+    public Iterator<Appointment> iterator() {
+        return snapshot().iterator();
+    }
+
+    // Register an observer while holding every segment lock from stripe on,
+    // so each booking reaches it exactly once - from the seed or as a callback
+    private void attachSeeded(BookingObserver observer, int stripe) {
+        if (stripe == segments.length) {
+            addObserver(observer);
+            for (AppointmentStore segment : segments) {
+                for (Appointment appointment : segment) {
+                    observer.appointmentBooked(appointment);
+                }
+            }
+            return;
+        }
+        synchronized (segments[stripe]) {
+            attachSeeded(observer, stripe + 1);
+        }
+    }
+
+    // Appointments still booked under the given IDs
+    private List<Appointment> resolve(long[] ids) {
+        List<Appointment> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Appointment appointment = byId.get(id);
+            if (appointment != null) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    // Booked appointments for a packed mobile, in no particular order
+    private List<Appointment> patientAppointments(long mobile) {
+        List<Appointment> result = new ArrayList<>();
+        long[] ids = (mobile != MobileNumber.INVALID) ? patients.get(mobile) : null;
+        if (ids != null) {
+            for (long id : ids) {
+                Appointment appointment = byId.get(id);
+                if (appointment != null) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void linkPatient(long mobile, long appointmentId) {
+        patients.compute(mobile, ids -> appended(ids, appointmentId));
+    }
+
+    private static long[] appended(long[] ids, long appointmentId) {
+        if (ids == null) {
+            return new long[] {appointmentId};
+        }
+        long[] updated = Arrays.copyOf(ids, ids.length + 1);
+        updated[ids.length] = appointmentId;
+        return updated;
+    }
+
+    private void unlinkPatient(long mobile, long appointmentId) {
+        patients.compute(mobile, ids -> {
+            if (ids == null) {
+                return null;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == appointmentId) {
+                    if (ids.length == 1) {
+                        return null;
+                    }
+                    long[] updated = new long[ids.length - 1];
+                    System.arraycopy(ids, 0, updated, 0, i);
+                    System.arraycopy(ids, i + 1, updated, i, updated.length - i);
+                    return updated;
+                }
+            }
+            return ids;
+        });
+    }
+
+    // Must be called while holding the doctor's segment lock, so the freed
+    // slot goes to the waitlist before any other booking can take it
+    private void fillFromWaitlist(HealthProfessional doctor, int minute) {
+        if (!waitlist.isEmpty()) {
+            waitlist.promote(doctor, minute, appointment -> insertLocked(appointment, 0));
+        }
+    }
+
+    // Must be called while holding the appointment's segment lock
+    private void releaseSlot(Appointment appointment) {
+        if (!appointment.isHoldingSlot()) {
+            return;
+        }
+        schedules.get(appointment.getDoctor().getId()).release(appointment.getSlotMinute());
+        appointment.setHoldingSlot(false);
+    }
+
+    // Why an insert was refused - the slot may have been freed since, so this is best effort
+    private BookingMetrics.Rejection refusalOf(Appointment appointment) {
+        DoctorSchedule schedule = schedules.get(appointment.getDoctor().getId());
+        return (schedule != null && schedule.isOccupied(appointment.getSlotMinute()))
+                ? BookingMetrics.Rejection.SLOT_TAKEN : BookingMetrics.Rejection.AT_CAPACITY;
+    }
+
+    private DoctorSchedule scheduleFor(int doctorId) {
+        return schedules.computeIfAbsent(doctorId, id -> new DoctorSchedule());
+    }
+
+    // Only General Practitioners have a daily patient limit
+    static int capacityOf(HealthProfessional doctor) {
+        if (doctor instanceof GeneralPractitioner) {
+            return ((GeneralPractitioner) doctor).getMaxPatientsPerDay();
+        }
+        return DoctorSchedule.MINUTES_PER_DAY;
+    }
+
+    // Spread doctor IDs so consecutive IDs land in different stripes
+    private AppointmentStore segmentFor(int doctorId) {
+        return segments[stripeOf(doctorId)];
+    }
+
+    // How many stripes there are and which one a doctor's bookings go to, so a
+    // bulk loader can build appointments in the order restoreAll fills them
+    int stripeCount() {
+        return segments.length;
+    }
+
+    int stripeOf(int doctorId) {
+        int hash = doctorId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+
+    /**
+     * Map from a long key to a value, split into lock stripes by key. Each
+     * stripe is an open-addressing table with linear probing, so entries need
+     * no boxed key or node. Writers take their stripe's write lock; readers
+     * try an optimistic read first and only lock if a writer got in the way
+     */
+    private static final class LongTable<V> {
+        private final Stripe[] stripes;
+        private final int stripeShift;
+
+        // stripes must be a power of two
+        LongTable(int stripes) {
+            this.stripes = new Stripe[stripes];
+            for (int i = 0; i < stripes; i++) {
+                this.stripes[i] = new Stripe();
+            }
+            this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripes);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            Stripe stripe = stripeFor(hash);
+            long stamp = stripe.lock.tryOptimisticRead();
+            Object value = stripe.find(key, hash);
+            if (!stripe.lock.validate(stamp)) {
+                stamp = stripe.lock.readLock();
+                try {
+                    value = stripe.find(key, hash);
+                } finally {
+                    stripe.lock.unlockRead(stamp);
+                }
+            }
+            return (V) value;
+        }
+
+        // The key's value, first storing one made by the factory if it is absent
+        @SuppressWarnings("unchecked")
+        V computeIfAbsent(long key, LongFunction<V> factory) {
+            V value = get(key);
+            if (value != null) {
+                return value;
+            }
+            long hash = key * 0x9E3779B97F4A7C15L;
+            Stripe stripe = stripeFor(hash);
+            long stamp = stripe.lock.writeLock();
+            try {
+                int slot = stripe.slotOf(key, hash);
+                value = (V) stripe.values[slot];
+                if (value == null) {
+                    value = factory.apply(key);
+                    stripe.put(slot, key, value);
+                }
+                return value;
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+
+        // Every key present, each stripe read under its lock
+        long[] keys() {
+            long[] keys = new long[0];
+            int count = 0;
+            for (Stripe stripe : stripes) {
+                long stamp = stripe.lock.readLock();
+                try {
+                    keys = Arrays.copyOf(keys, count + stripe.size);
+                    for (int slot = 0; slot < stripe.keys.length; slot++) {
+                        if (stripe.values[slot] != null) {
+                            keys[count++] = stripe.keys[slot];
+                        }
+                    }
+                } finally {
+                    stripe.lock.unlockRead(stamp);
+                }
+            }
+            return keys;
+        }
+
+        void put(long key, V value) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            Stripe stripe = stripeFor(hash);
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.put(stripe.slotOf(key, hash), key, value);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            Stripe stripe = stripeFor(hash);
+            long stamp = stripe.lock.writeLock();
+            try {
+                int slot = stripe.slotOf(key, hash);
+                if (stripe.values[slot] != null) {
+                    stripe.remove(slot);
+                }
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+
+        // Replace the key's value, or null when absent, with the result; null removes it
+        @SuppressWarnings("unchecked")
+        void compute(long key, UnaryOperator<V> remapping) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            Stripe stripe = stripeFor(hash);
+            long stamp = stripe.lock.writeLock();
+            try {
+                int slot = stripe.slotOf(key, hash);
+                stripe.replace(slot, key, remapping.apply((V) stripe.values[slot]));
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+
+        // put for the first count keys and values, grouped by stripe as in computeAll
+        void putAll(long[] keys, V[] values, int count) {
+            int[] stripeStart = new int[stripes.length + 1];
+            int[] order = groupByStripe(keys, count, stripeStart);
+            for (int s = 0; s < stripes.length; s++) {
+                if (stripeStart[s] != stripeStart[s + 1]) {
+                    putStripe(stripes[s], keys, values, order, stripeStart[s], stripeStart[s + 1]);
+                }
+            }
+        }
+
+        // compute for the first count keys, where the remapping also gets the
+        // key's position. Keys are grouped by stripe first, so each stripe is
+        // locked and sized once and stays in cache while it is filled
+        void computeAll(long[] keys, int count, IndexedRemapping<V> remapping) {
+            int[] stripeStart = new int[stripes.length + 1];
+            int[] order = groupByStripe(keys, count, stripeStart);
+            for (int s = 0; s < stripes.length; s++) {
+                if (stripeStart[s] != stripeStart[s + 1]) {
+                    computeStripe(stripes[s], keys, order, stripeStart[s], stripeStart[s + 1], remapping);
+                }
+            }
+        }
+
+        // Key positions grouped by stripe with a counting sort, as BookingEngine.groupByStripe
+        private int[] groupByStripe(long[] keys, int count, int[] stripeStart) {
+            for (int i = 0; i < count; i++) {
+                stripeStart[stripeIndex(keys[i] * 0x9E3779B97F4A7C15L) + 1]++;
+            }
+            for (int s = 0; s < stripes.length; s++) {
+                stripeStart[s + 1] += stripeStart[s];
+            }
+            int[] fill = Arrays.copyOf(stripeStart, stripes.length);
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[fill[stripeIndex(keys[i] * 0x9E3779B97F4A7C15L)]++] = i;
+            }
+            return order;
+        }
+
+        private void putStripe(Stripe stripe, long[] keys, V[] values, int[] order, int from, int to) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.reserve(stripe.size + to - from);
+                for (int k = from; k < to; k++) {
+                    int i = order[k];
+                    stripe.put(stripe.slotOf(keys[i], keys[i] * 0x9E3779B97F4A7C15L), keys[i], values[i]);
+                }
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void computeStripe(Stripe stripe, long[] keys, int[] order, int from, int to,
+                                   IndexedRemapping<V> remapping) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.reserve(stripe.size + to - from);
+                for (int k = from; k < to; k++) {
+                    int i = order[k];
+                    int slot = stripe.slotOf(keys[i], keys[i] * 0x9E3779B97F4A7C15L);
+                    stripe.replace(slot, keys[i], remapping.apply(i, (V) stripe.values[slot]));
+                }
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+
+        private Stripe stripeFor(long hash) {
+            return stripes[stripeIndex(hash)];
+        }
+
+        private int stripeIndex(long hash) {
+            return (stripeShift == 64) ? 0 : (int) (hash >>> stripeShift);
+        }
+    }
+
+    // Remapping for LongTable.computeAll: the key's position and its current
+    // value, or null when absent, to the new value, or null to remove it
+    @FunctionalInterface
+    private interface IndexedRemapping<V> {
+        V apply(int index, V current);
+    }
+
+    // One lock stripe of a LongTable; a null value marks a free slot, and the
+    // table is kept at most half full
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        long[] keys = new long[8];
+        Object[] values = new Object[8];
+        int size;
+
+        // Also called without the lock, where a writer may be mid-change: the
+        // answer may then be wrong, but the caller's validate discards it
+        Object find(long key, long hash) {
+            long[] keys = this.keys;
+            Object[] values = this.values;
+            int mask = Math.min(keys.length, values.length) - 1;
+            int slot = homeOf(hash, mask);
+            for (int probes = 0; probes <= mask; probes++) {
+                Object value = values[slot];
+                if (value == null || keys[slot] == key) {
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        // Slot holding the key, or the free slot where it belongs
+        int slotOf(long key, long hash) {
+            int mask = keys.length - 1;
+            int slot = homeOf(hash, mask);
+            while (values[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void put(int slot, long key, Object value) {
+            if (values[slot] == null) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        // Store the key's new value at its slot from slotOf; null removes it
+        void replace(int slot, long key, Object value) {
+            if (value != null) {
+                put(slot, key, value);
+            } else if (values[slot] != null) {
+                remove(slot);
+            }
+        }
+
+        // Grow once so the table can take this many entries
+        void reserve(int entries) {
+            int length = keys.length;
+            while (entries * 2 > length) {
+                length *= 2;
+            }
+            if (length != keys.length) {
+                resize(length);
+            }
+        }
+
+        // Shift later entries of the probe run back into the hole
+        void remove(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+                int home = homeOf(keys[i] * 0x9E3779B97F4A7C15L, mask);
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            values[hole] = null;
+            size--;
+        }
+
+        private void grow() {
+            resize(keys.length * 2);
+        }
+
+        private void resize(int length) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] newKeys = new long[length];
+            Object[] newValues = new Object[length];
+            int mask = newKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = homeOf(oldKeys[i] * 0x9E3779B97F4A7C15L, mask);
+                    while (newValues[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newKeys[slot] = oldKeys[i];
+                    newValues[slot] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        // The stripe was picked from the top bits of the same hash, so fold
+        // both halves in: the high bits alone cluster keys within a stripe
+        private static int homeOf(long hash, int mask) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
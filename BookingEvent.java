@@ -0,0 +1,78 @@
+/**
+ * BookingEvent class - one outcome reported by the booking system
+ * Immutable, so it can be handed from a booking thread to the EventLog
+ * consumer without copying. The message is the line a console sink prints
+ */
+public class BookingEvent {
+
+    /**
+     * Kind of outcome being reported
+     */
+    public enum Type {
+        CREATED, REJECTED, CANCELLED, NOT_FOUND, WARNING
+    }
+
+    private final Type type;
+    private final long timestampMillis;
+    private final String subject;
+    private final String message;
+
+    /**
+     * Parameterized constructor - subject is the mobile of the patient
+     * concerned, as entered, or null when there is none
+     */
+    public BookingEvent(Type type, String subject, String message) {
+        if (type == null || message == null) {
+            throw new IllegalArgumentException("Event type and message are required");
+        }
+        this.type = type;
+        this.timestampMillis = System.currentTimeMillis();
+        this.subject = subject;
+        this.message = message;
+    }
+
+    public static BookingEvent created(String patientMobile, String patientName) {
+        return new BookingEvent(Type.CREATED, patientMobile, "Appointment created: " + patientName);
+    }
+
+    public static BookingEvent rejected(String patientMobile, String reason) {
+        return new BookingEvent(Type.REJECTED, patientMobile, reason);
+    }
+
+    public static BookingEvent cancelled(String patientMobile, String message) {
+        return new BookingEvent(Type.CANCELLED, patientMobile, message);
+    }
+
+    public static BookingEvent notFound(String patientMobile) {
+        return new BookingEvent(Type.NOT_FOUND, patientMobile, "No appointment found for: " + patientMobile);
+    }
+
+    public static BookingEvent warning(String message) {
+        return new BookingEvent(Type.WARNING, null, message);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(64)
+                .append("BookingEvent{type=").append(type)
+                .append(", subject='").append(subject)
+                .append("', message='").append(message)
+                .append("'}").toString();
+    }
+}
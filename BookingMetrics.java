@@ -0,0 +1,623 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * BookingMetrics class - counters and latency histograms for booking operations
+ * Each BookingEngine owns one instance recording create, cancel, confirm and
+ * lookup latency, refusals by reason and bookings per doctor. Appointment
+ * validation happens before any engine is involved, so its rejections and
+ * latency are process-wide statics, switched on and off by the latest
+ * setEnabled call on any instance. Every operation is counted, but only a
+ * random one in SAMPLE_INTERVAL per thread reads the clock into the latency
+ * histograms, which keeps the clock off the hot path. Counts are plain
+ * per-thread longs rather than atomic adds; recording never locks, and when
+ * disabled nothing is counted or timed
+ */
+public class BookingMetrics implements BookingMetricsMBean {
+
+    /**
+     * Why a booking never reached or was refused by the engine
+     */
+    public enum Rejection {
+        INVALID_NAME, INVALID_MOBILE, INVALID_TIME, MISSING_DOCTOR,
+        NOT_BOOKABLE, SLOT_TAKEN, AT_CAPACITY
+    }
+
+    /**
+     * One operation in this many is timed - a power of two
+     */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    // Start tokens that are not clock readings: nothing recorded, or counted
+    // but not timed. Clock readings are shifted left with the low bit set, so
+    // they can never equal either of these
+    private static final long DISABLED = 0;
+    private static final long UNTIMED = 2;
+
+    // Slots in counters - refusals by reason come next, then one per doctor
+    private static final int CANCELLED = 0;
+    private static final int CANCEL_MISSES = 1;
+    private static final int CONFIRMED = 2;
+    private static final int LOOKUPS = 3;
+    private static final int REFUSALS = 4;
+
+    private static final LongAdder[] VALIDATION_REJECTIONS = newAdders(Rejection.values().length);
+    private static final LatencyRecorder VALIDATION_LATENCY = new LatencyRecorder();
+    private static volatile boolean validationEnabled = true;
+
+    private static final double[] SNAPSHOT_PERCENTILES = {50, 90, 99, 99.9};
+
+    private volatile boolean enabled;
+    private volatile long startedNanos;
+
+    private final LatencyRecorder createLatency;
+    private final LatencyRecorder cancelLatency;
+    private final LatencyRecorder confirmLatency;
+    private final LatencyRecorder lookupLatency;
+    private final Counters counters;
+    private final SlotTable doctorSlots;              // counter slot for bookings by doctor
+
+    /**
+     * Default constructor - metrics start enabled
+     */
+    public BookingMetrics() {
+        this.enabled = true;
+        this.startedNanos = System.nanoTime();
+        this.createLatency = new LatencyRecorder();
+        this.cancelLatency = new LatencyRecorder();
+        this.confirmLatency = new LatencyRecorder();
+        this.lookupLatency = new LatencyRecorder();
+        this.counters = new Counters();
+        this.doctorSlots = new SlotTable(REFUSALS + Rejection.values().length);
+    }
+
+    // Recording - called by BookingEngine and Appointment
+
+    /**
+     * Start token for an operation - a clock reading for the sampled ones,
+     * a marker for the rest and for all of them when metrics are disabled
+     */
+    long start() {
+        return enabled ? sampledStart() : DISABLED;
+    }
+
+    void bookingCompleted(long start, int doctorId) {
+        if (start == DISABLED) return;
+        record(createLatency, start);
+        counters.increment(slotOf(doctorId));
+    }
+
+    // Bulk bookings are counted but not timed; a null reason means booked
+    void batchCompleted(int doctorId, Rejection reason) {
+        if (reason == null) {
+            counters.increment(slotOf(doctorId));
+        } else {
+            counters.increment(REFUSALS + reason.ordinal());
+        }
+    }
+
+    void bookingRefused(long start, Rejection reason) {
+        if (start == DISABLED) return;
+        record(createLatency, start);
+        counters.increment(REFUSALS + reason.ordinal());
+    }
+
+    void cancelCompleted(long start, boolean removed) {
+        if (start == DISABLED) return;
+        record(cancelLatency, start);
+        counters.increment(removed ? CANCELLED : CANCEL_MISSES);
+    }
+
+    void confirmCompleted(long start) {
+        if (start == DISABLED) return;
+        record(confirmLatency, start);
+        counters.increment(CONFIRMED);
+    }
+
+    void lookupCompleted(long start) {
+        if (start == DISABLED) return;
+        record(lookupLatency, start);
+        counters.increment(LOOKUPS);
+    }
+
+    /**
+     * Start token for an Appointment validation, sampled like start()
+     */
+    static long validationStart() {
+        return validationEnabled ? sampledStart() : DISABLED;
+    }
+
+    static void validationCompleted(long start) {
+        if (start == DISABLED) return;
+        record(VALIDATION_LATENCY, start);
+    }
+
+    // Doctors keep their slot across resets, which only rebase the counts
+    private int slotOf(int doctorId) {
+        int slot = doctorSlots.get(doctorId);
+        return (slot >= 0) ? slot : doctorSlots.add(doctorId);
+    }
+
+    private static long sampledStart() {
+        if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_INTERVAL - 1)) != 0) {
+            return UNTIMED;
+        }
+        return (System.nanoTime() << 1) | 1;
+    }
+
+    private static void record(LatencyRecorder recorder, long start) {
+        if (start != UNTIMED) {
+            // Doubled clock difference, exact while it fits in 62 bits
+            recorder.record(((System.nanoTime() << 1) - (start & ~1L)) >> 1);
+        }
+    }
+
+    static void validationRejected(Rejection reason) {
+        if (!validationEnabled) return;
+        VALIDATION_REJECTIONS[reason.ordinal()].increment();
+    }
+
+    // Queries
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switch this engine's metrics, and the shared validation metrics, on or off
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        validationEnabled = enabled;
+    }
+
+    @Override
+    public long getCreatedCount() {
+        long total = 0;
+        for (int doctorId : doctorSlots.keys()) {
+            total += getBookingCount(doctorId);
+        }
+        return total;
+    }
+
+    @Override
+    public long getRefusedCount() {
+        long total = 0;
+        for (Rejection reason : Rejection.values()) {
+            total += counters.sum(REFUSALS + reason.ordinal());
+        }
+        return total;
+    }
+
+    public long getRefusedCount(Rejection reason) {
+        return counters.sum(REFUSALS + reason.ordinal());
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return counters.sum(CANCELLED);
+    }
+
+    @Override
+    public long getConfirmedCount() {
+        return counters.sum(CONFIRMED);
+    }
+
+    @Override
+    public long getLookupCount() {
+        return counters.sum(LOOKUPS);
+    }
+
+    @Override
+    public long getValidationRejectedCount() {
+        long total = 0;
+        for (LongAdder rejection : VALIDATION_REJECTIONS) {
+            total += rejection.sum();
+        }
+        return total;
+    }
+
+    public static long getValidationRejectedCount(Rejection reason) {
+        return VALIDATION_REJECTIONS[reason.ordinal()].sum();
+    }
+
+    @Override
+    public long getCreateP50Nanos() {
+        return createLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getCreateP99Nanos() {
+        return createLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getCancelP99Nanos() {
+        return cancelLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getConfirmP99Nanos() {
+        return confirmLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLookupP99Nanos() {
+        return lookupLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getValidationP99Nanos() {
+        return VALIDATION_LATENCY.getValueAtPercentile(99);
+    }
+
+    public LatencyRecorder getCreateLatency() {
+        return createLatency;
+    }
+
+    public LatencyRecorder getCancelLatency() {
+        return cancelLatency;
+    }
+
+    public LatencyRecorder getConfirmLatency() {
+        return confirmLatency;
+    }
+
+    public LatencyRecorder getLookupLatency() {
+        return lookupLatency;
+    }
+
+    public static LatencyRecorder getValidationLatency() {
+        return VALIDATION_LATENCY;
+    }
+
+    /**
+     * Bookings made for a doctor since the last reset
+     */
+    public long getBookingCount(int doctorId) {
+        int slot = doctorSlots.get(doctorId);
+        return (slot >= 0) ? counters.sum(slot) : 0;
+    }
+
+    /**
+     * Bookings per second for a doctor since the last reset
+     */
+    public double getBookingRate(int doctorId) {
+        return getBookingCount(doctorId) / uptimeSeconds();
+    }
+
+    /**
+     * Pull-style text snapshot, one "name{labels} value" sample per line
+     */
+    @Override
+    public String getSnapshot() {
+        StringBuilder text = new StringBuilder(2048);
+        appendSnapshot(text);
+        return text.toString();
+    }
+
+    public void appendSnapshot(StringBuilder text) {
+        sample(text, "booking_uptime_seconds", null, (long) uptimeSeconds());
+        sample(text, "booking_created_total", null, getCreatedCount());
+        for (Rejection reason : Rejection.values()) {
+            long count = counters.sum(REFUSALS + reason.ordinal());
+            if (count > 0) {
+                sample(text, "booking_refused_total", "reason=\"" + label(reason) + "\"", count);
+            }
+        }
+        sample(text, "booking_cancelled_total", null, counters.sum(CANCELLED));
+        sample(text, "booking_cancel_misses_total", null, counters.sum(CANCEL_MISSES));
+        sample(text, "booking_confirmed_total", null, counters.sum(CONFIRMED));
+        sample(text, "booking_lookups_total", null, counters.sum(LOOKUPS));
+        latency(text, "create", createLatency);
+        latency(text, "cancel", cancelLatency);
+        latency(text, "confirm", confirmLatency);
+        latency(text, "lookup", lookupLatency);
+        latency(text, "validation", VALIDATION_LATENCY);
+        for (Rejection reason : Rejection.values()) {
+            long count = VALIDATION_REJECTIONS[reason.ordinal()].sum();
+            if (count > 0) {
+                sample(text, "validation_rejected_total", "reason=\"" + label(reason) + "\"", count);
+            }
+        }
+
+        int[] doctors = doctorSlots.keys();
+        Arrays.sort(doctors);
+        for (int doctorId : doctors) {
+            long count = getBookingCount(doctorId);
+            if (count > 0) {
+                sample(text, "doctor_bookings_total", "doctor=\"" + doctorId + "\"", count);
+            }
+        }
+    }
+
+    /**
+     * Clear this engine's metrics; validation metrics are shared and kept
+     */
+    @Override
+    public void reset() {
+        createLatency.reset();
+        cancelLatency.reset();
+        confirmLatency.reset();
+        lookupLatency.reset();
+        counters.reset();
+        startedNanos = System.nanoTime();
+    }
+
+    /**
+     * Register with the platform MBean server under
+     * oopA1:type=BookingMetrics,name=[name]
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("oopA1:type=BookingMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register booking metrics: " + name, e);
+        }
+    }
+
+    public void unregisterMBean(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister booking metrics: " + objectName, e);
+        }
+    }
+
+    private double uptimeSeconds() {
+        return Math.max(System.nanoTime() - startedNanos, 1) / 1e9;
+    }
+
+    private static void latency(StringBuilder text, String operation, LatencyRecorder recorder) {
+        if (recorder.getCount() == 0) {
+            return;
+        }
+        for (double percentile : SNAPSHOT_PERCENTILES) {
+            sample(text, "booking_latency_nanos", "op=\"" + operation + "\",quantile=\""
+                    + (percentile / 100) + "\"", recorder.getValueAtPercentile(percentile));
+        }
+        sample(text, "booking_latency_nanos_max", "op=\"" + operation + "\"", recorder.getMax());
+        sample(text, "booking_latency_nanos_count", "op=\"" + operation + "\"", recorder.getCount());
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, long value) {
+        text.append(name);
+        if (labels != null) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value).append(ScheduleRenderer.NEW_LINE);
+    }
+
+    private static String label(Rejection reason) {
+        return reason.name().toLowerCase();
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Event counts kept per platform thread in plain longs that only the
+     * owning thread writes, so counting is a thread-local lookup and a store
+     * instead of an atomic add. Readers sum every thread's cell; the cell of a
+     * thread that has ended is folded into shared adders when the next thread
+     * registers. Virtual threads are many and short-lived, so they add to the
+     * shared adders directly. Cells grow as new slots are counted
+     */
+    private static final class Counters {
+        private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final int INITIAL_SLOTS = 64;
+
+        private final ConcurrentHashMap<Integer, LongAdder> shared;
+        private final List<Cell> cells;               // guarded by itself
+        private final ThreadLocal<Cell> local;
+        private long[] resetAt;                       // guarded by cells
+
+        Counters() {
+            this.shared = new ConcurrentHashMap<>();
+            this.cells = new ArrayList<>();
+            this.local = ThreadLocal.withInitial(this::register);
+            this.resetAt = new long[0];
+        }
+
+        void increment(int slot) {
+            if (Thread.currentThread().isVirtual()) {
+                shared.computeIfAbsent(slot, k -> new LongAdder()).increment();
+                return;
+            }
+            Cell cell = local.get();
+            long[] counts = cell.counts;
+            if (slot >= counts.length) {
+                counts = cell.grow(slot);
+            }
+            COUNTS.setOpaque(counts, slot, (long) COUNTS.getOpaque(counts, slot) + 1);
+        }
+
+        long sum(int slot) {
+            synchronized (cells) {
+                return total(slot) - ((slot < resetAt.length) ? resetAt[slot] : 0);
+            }
+        }
+
+        // Counts keep running; reset only moves the point they are read from
+        void reset() {
+            synchronized (cells) {
+                int slots = 0;
+                for (Cell cell : cells) {
+                    slots = Math.max(slots, cell.counts.length);
+                }
+                for (int slot : shared.keySet()) {
+                    slots = Math.max(slots, slot + 1);
+                }
+                long[] now = new long[slots];
+                for (int i = 0; i < slots; i++) {
+                    now[i] = total(i);
+                }
+                resetAt = now;
+            }
+        }
+
+        private long total(int slot) {
+            LongAdder folded = shared.get(slot);
+            long total = (folded != null) ? folded.sum() : 0;
+            for (Cell cell : cells) {
+                long[] counts = cell.counts;
+                if (slot < counts.length) {
+                    total += (long) COUNTS.getOpaque(counts, slot);
+                }
+            }
+            return total;
+        }
+
+        private Cell register() {
+            Cell created = new Cell(Thread.currentThread());
+            synchronized (cells) {
+                for (Iterator<Cell> it = cells.iterator(); it.hasNext(); ) {
+                    Cell cell = it.next();
+                    // A thread's writes are all visible once it is seen to have ended
+                    if (!cell.owner.isAlive()) {
+                        long[] counts = cell.counts;
+                        for (int slot = 0; slot < counts.length; slot++) {
+                            if (counts[slot] != 0) {
+                                shared.computeIfAbsent(slot, k -> new LongAdder()).add(counts[slot]);
+                            }
+                        }
+                        it.remove();
+                    }
+                }
+                cells.add(created);
+            }
+            return created;
+        }
+
+        private static final class Cell {
+            final Thread owner;
+            volatile long[] counts;                   // replaced only by the owner
+
+            Cell(Thread owner) {
+                this.owner = owner;
+                this.counts = new long[INITIAL_SLOTS];
+            }
+
+            long[] grow(int slot) {
+                long[] grown = new long[Math.max(slot + 1, counts.length * 2)];
+                long[] current = counts;
+                for (int i = 0; i < current.length; i++) {
+                    grown[i] = (long) COUNTS.getOpaque(current, i);
+                }
+                counts = grown;
+                return grown;
+            }
+        }
+    }
+
+    /**
+     * Counter slot per doctor ID in an open-addressing table of packed longs,
+     * slot + 1 in the high half and the ID in the low half, so a lookup is a
+     * few array reads with no boxing and each entry is published in one
+     * write. Lookups never lock; adding a doctor locks and, when the table is
+     * half full, publishes a doubled copy
+     */
+    private static final class SlotTable {
+        private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private volatile long[] entries;
+        private int size;                             // guarded by this
+        private int nextSlot;                         // guarded by this
+
+        SlotTable(int firstSlot) {
+            this.entries = new long[64];
+            this.nextSlot = firstSlot;
+        }
+
+        // Slot for the ID, or -1 if it has none yet
+        int get(int id) {
+            return find(entries, id);
+        }
+
+        synchronized int add(int id) {
+            int slot = find(entries, id);
+            if (slot >= 0) {
+                return slot;
+            }
+            slot = nextSlot++;
+            long[] table = entries;
+            if (2 * (size + 1) > table.length) {
+                long[] grown = new long[table.length * 2];
+                for (long entry : table) {
+                    if (entry != 0) {
+                        insert(grown, entry);
+                    }
+                }
+                insert(grown, pack(id, slot));
+                entries = grown;
+            } else {
+                insert(table, pack(id, slot));
+            }
+            size++;
+            return slot;
+        }
+
+        int[] keys() {
+            long[] table = entries;
+            int[] ids = new int[table.length];
+            int count = 0;
+            for (int i = 0; i < table.length; i++) {
+                long entry = (long) ENTRIES.getAcquire(table, i);
+                if (entry != 0) {
+                    ids[count++] = (int) entry;
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        }
+
+        private static int find(long[] table, int id) {
+            int mask = table.length - 1;
+            for (int i = indexOf(id, mask); ; i = (i + 1) & mask) {
+                long entry = (long) ENTRIES.getAcquire(table, i);
+                if (entry == 0) {
+                    return -1;
+                }
+                if ((int) entry == id) {
+                    return (int) (entry >>> 32) - 1;
+                }
+            }
+        }
+
+        private static void insert(long[] table, long entry) {
+            int mask = table.length - 1;
+            int i = indexOf((int) entry, mask);
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            ENTRIES.setRelease(table, i, entry);
+        }
+
+        private static long pack(int id, int slot) {
+            return ((long) (slot + 1) << 32) | (id & 0xFFFFFFFFL);
+        }
+
+        private static int indexOf(int id, int mask) {
+            int hash = id * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
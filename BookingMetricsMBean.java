@@ -0,0 +1,39 @@
+/**
+ * BookingMetricsMBean interface - JMX view of BookingMetrics
+ * Counts cover every operation; latencies are in nanoseconds, from a sample
+ * of one operation in BookingMetrics.SAMPLE_INTERVAL
+ */
+public interface BookingMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getCreatedCount();
+
+    long getRefusedCount();
+
+    long getCancelledCount();
+
+    long getConfirmedCount();
+
+    long getLookupCount();
+
+    long getValidationRejectedCount();
+
+    long getCreateP50Nanos();
+
+    long getCreateP99Nanos();
+
+    long getCancelP99Nanos();
+
+    long getConfirmP99Nanos();
+
+    long getLookupP99Nanos();
+
+    long getValidationP99Nanos();
+
+    String getSnapshot();
+
+    void reset();
+}
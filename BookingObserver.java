@@ -0,0 +1,56 @@
+import java.util.List;
+
+/**
+ * Observer for changes to appointments booked in a BookingEngine
+ * Callbacks run on the booking thread while it holds the doctor's segment
+ * lock, so changes for one doctor arrive in order. Implementations must be
+ * quick and must never block
+ */
+public interface BookingObserver {
+
+    /**
+     * Called after an appointment has been booked
+     */
+    default void appointmentBooked(Appointment appointment) {
+    }
+
+    /**
+     * Called once per segment after a bulk restore from storage, in place of
+     * appointmentBooked for each of them
+     */
+    default void appointmentsRestored(List<Appointment> appointments) {
+        for (Appointment appointment : appointments) {
+            appointmentBooked(appointment);
+        }
+    }
+
+    /**
+     * Called after a booked appointment changed status
+     */
+    default void statusChanged(Appointment appointment, AppointmentStatus oldStatus) {
+    }
+
+    /**
+     * Called after a booked appointment moved to a new time slot
+     */
+    default void timeSlotChanged(Appointment appointment, int oldMinute) {
+    }
+
+    /**
+     * Called after a booked appointment's patient mobile changed
+     */
+    default void patientMobileChanged(Appointment appointment, long oldMobile) {
+    }
+
+    /**
+     * Called after a booked appointment's patient name changed
+     */
+    default void patientNameChanged(Appointment appointment, String oldName) {
+    }
+
+    /**
+     * Called after an appointment has been removed from the engine
+     */
+    default void appointmentRemoved(Appointment appointment) {
+    }
+}
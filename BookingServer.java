@@ -0,0 +1,216 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BookingServer class - HTTP front-end for the booking operations
+ * Exposes create, cancel and lookup over the JDK's built-in HTTP server and
+ * runs every request on its own virtual thread, so tens of thousands of
+ * concurrent clients cost no more than their sockets. Parameters come from
+ * the query string or a form-encoded body; responses are plain text
+ *
+ *   POST   /appointments  patientName, patientMobile, timeSlot, doctorId
+ *   DELETE /appointments  patientMobile
+ *   GET    /appointments  patientMobile, or doctorId with from and to (HH:mm)
+ *   GET    /metrics       BookingMetrics text snapshot
+ */
+public class BookingServer implements Closeable {
+
+    private static final int DEFAULT_BACKLOG = 16 * 1024;
+
+    private final BookingEngine engine;
+    private final ProfessionalRegistry professionals;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Parameterized constructor - binds the address; port 0 picks a free port
+     */
+    public BookingServer(BookingEngine engine, ProfessionalRegistry professionals,
+                         InetSocketAddress address) throws IOException {
+        if (engine == null || professionals == null) {
+            throw new IllegalArgumentException("Engine and registry are required");
+        }
+        this.engine = engine;
+        this.professionals = professionals;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, DEFAULT_BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/appointments", this::handleAppointments);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Port actually bound, useful when started on port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting requests, give in-flight ones a second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handleAppointments(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = parameters(exchange);
+            switch (exchange.getRequestMethod()) {
+                case "POST":
+                    create(exchange, params);
+                    break;
+                case "DELETE":
+                    cancel(exchange, params);
+                    break;
+                case "GET":
+                    lookup(exchange, params);
+                    break;
+                default:
+                    respond(exchange, 405, "Method not allowed");
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, engine.getMetrics().getSnapshot());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Same checks and outcomes as AssignmentOne.createAppointment
+    private void create(HttpExchange exchange, Map<String, String> params) throws IOException {
+        HealthProfessional doctor = professionals.findById(parseInt(params.get("doctorId"), "doctorId"));
+        if (doctor == null) {
+            respond(exchange, 404, "Unknown doctor: " + params.get("doctorId"));
+            return;
+        }
+
+        Appointment appointment = new Appointment(params.get("patientName"), params.get("patientMobile"),
+                params.get("timeSlot"), doctor);
+        if (engine.book(appointment)) {
+            respond(exchange, 201, "Appointment created: " + appointment.getPatientName());
+        } else if (!engine.canAcceptNewPatient(doctor)) {
+            respond(exchange, 409, doctor.getName() + " has no capacity left today");
+        } else {
+            respond(exchange, 409, doctor.getName() + " is already booked at " + appointment.getTimeSlot());
+        }
+    }
+
+    private void cancel(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String mobile = required(params, "patientMobile");
+        Appointment removed = engine.cancelByMobile(mobile);
+        if (removed != null) {
+            respond(exchange, 200, "Appointment cancelled for: " + removed.getPatientMobile());
+        } else {
+            respond(exchange, 404, "No appointment found for: " + AppointmentStore.normalizeMobile(mobile));
+        }
+    }
+
+    private void lookup(HttpExchange exchange, Map<String, String> params) throws IOException {
+        List<Appointment> found;
+        if (params.containsKey("patientMobile")) {
+            found = engine.findByMobile(params.get("patientMobile"));
+        } else {
+            int doctorId = parseInt(params.get("doctorId"), "doctorId");
+            int from = params.containsKey("from") ? parseTime(params.get("from")) : 0;
+            int to = params.containsKey("to") ? parseTime(params.get("to")) : DoctorSchedule.MINUTES_PER_DAY;
+            found = engine.findByDoctorBetween(doctorId, from, to);
+        }
+
+        StringBuilder body = new StringBuilder(64 * (found.size() + 1));
+        for (Appointment appointment : found) {
+            appointment.appendSummary(body);
+            body.append(ScheduleRenderer.NEW_LINE);
+        }
+        respond(exchange, found.isEmpty() ? 404 : 200, body.toString());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, (bytes.length == 0) ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    // Query string first, then a form-encoded body
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        decode(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                decode(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void decode(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.putIfAbsent(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int parseTime(String value) {
+        int minute = TimeSlot.parse(value);
+        if (minute == TimeSlot.INVALID) {
+            throw new IllegalArgumentException("Invalid time format: " + value);
+        }
+        return minute;
+    }
+
+    private static int parseInt(String value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+}
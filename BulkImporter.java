@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * BulkImporter class - loads large batches of bookings from partner systems
+ * Rows are parsed and validated in parallel on all cores, rejects are
+ * collected into an ImportReport, and the accepted appointments are booked
+ * in a single BookingEngine batch.
+ * Row format: patientName,patientMobile,timeSlot,doctorId (no quoting; an
+ * optional header line starting with "patientName" is skipped)
+ */
+public class BulkImporter {
+
+    private static final String HEADER_PREFIX = "patientName";
+
+    private final BookingEngine engine;
+    private final ProfessionalRegistry professionals;
+
+    public BulkImporter(BookingEngine engine, ProfessionalRegistry professionals) {
+        if (engine == null || professionals == null) {
+            throw new IllegalArgumentException("Engine and registry are required");
+        }
+        this.engine = engine;
+        this.professionals = professionals;
+    }
+
+    /**
+     * Import every row of a UTF-8 CSV file
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        return importRows(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Import rows already in memory; line numbers in the report start at 1
+     */
+    public ImportReport importRows(List<String> rows) {
+        long start = System.nanoTime();
+        int first = (!rows.isEmpty() && rows.get(0).startsWith(HEADER_PREFIX)) ? 1 : 0;
+
+        // Parse and validate in parallel - each slot gets an Appointment or a reason
+        Object[] parsed = new Object[rows.size()];
+        IntStream.range(first, rows.size()).parallel()
+                .forEach(i -> parsed[i] = parse(rows.get(i)));
+
+        List<Appointment> accepted = new ArrayList<>(rows.size());
+        List<Integer> acceptedLines = new ArrayList<>(rows.size());
+        List<ImportReport.Rejection> rejections = new ArrayList<>();
+        for (int i = first; i < parsed.length; i++) {
+            if (parsed[i] instanceof Appointment) {
+                accepted.add((Appointment) parsed[i]);
+                acceptedLines.add(i);
+            } else {
+                rejections.add(new ImportReport.Rejection(i + 1, rows.get(i), (String) parsed[i]));
+            }
+        }
+
+        boolean[] booked = engine.bookAll(accepted);
+        int bookedCount = 0;
+        List<ImportReport.Rejection> conflicts = new ArrayList<>();
+        for (int k = 0; k < booked.length; k++) {
+            if (booked[k]) {
+                bookedCount++;
+            } else {
+                int line = acceptedLines.get(k);
+                conflicts.add(new ImportReport.Rejection(line + 1, rows.get(line),
+                        "Time slot taken or doctor at capacity"));
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            rejections.addAll(conflicts);
+            rejections.sort((a, b) -> Long.compare(a.getLineNumber(), b.getLineNumber()));
+        }
+        return new ImportReport(bookedCount, rejections, System.nanoTime() - start);
+    }
+
+    // Returns the Appointment, or the reason the row is rejected
+    private Object parse(String row) {
+        if (row == null || row.isBlank()) {
+            return "Empty row";
+        }
+        String[] fields = row.split(",", -1);
+        if (fields.length != 4) {
+            return "Expected 4 fields but found " + fields.length;
+        }
+
+        HealthProfessional doctor;
+        try {
+            doctor = professionals.findById(Integer.parseInt(fields[3].trim()));
+        } catch (NumberFormatException e) {
+            return "Invalid doctor ID: " + fields[3];
+        }
+        if (doctor == null) {
+            return "Unknown doctor ID: " + fields[3].trim();
+        }
+
+        // Invalid rows are the exception in partner feeds, so the constructor's checks are reused
+        try {
+            return new Appointment(fields[0], fields[1], fields[2], doctor);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ChangeFeed class - change-data-capture stream of a BookingEngine
+ * Every booking change becomes a sequence-numbered ChangeRecord in a
+ * bounded ring that keeps the latest records. Recording never waits for a
+ * subscriber: the booking thread claims a sequence, writes the slot and
+ * returns, overwriting the oldest record when the ring is full. Each
+ * subscription has its own daemon thread that delivers records in order
+ * only as fast as the subscriber requests them, so a slow subscriber delays
+ * nobody else. A subscriber can resume from any sequence the ring still
+ * holds; one that falls further behind than the ring fails with an
+ * IllegalStateException and can resubscribe from a snapshot
+ */
+public final class ChangeFeed implements BookingObserver, Flow.Publisher<ChangeRecord>, Closeable {
+
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final AtomicReferenceArray<ChangeRecord> ring;
+    private final int mask;
+    private final AtomicLong lastSequence;
+    private final AtomicInteger nextDeliveryId;
+    private final LongAdder lagged;
+    private volatile Delivery[] deliveries;
+    private volatile boolean closed;
+
+    /**
+     * Default constructor - keeps the latest 65,536 changes
+     */
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Parameterized constructor - capacity is rounded up to a power of two
+     */
+    public ChangeFeed(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.lastSequence = new AtomicLong();
+        this.nextDeliveryId = new AtomicInteger();
+        this.lagged = new LongAdder();
+        this.deliveries = new Delivery[0];
+    }
+
+    /**
+     * Subscribe to changes recorded from now on
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ChangeRecord> subscriber) {
+        subscribe(subscriber, lastSequence.get() + 1);
+    }
+
+    /**
+     * Subscribe starting at a sequence, e.g. one past the last record a
+     * subscriber processed before it stopped
+     */
+    public void subscribe(Flow.Subscriber<? super ChangeRecord> subscriber, long fromSequence) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber cannot be null");
+        }
+        if (fromSequence < 1) {
+            throw new IllegalArgumentException("Sequences start at 1: " + fromSequence);
+        }
+        Delivery delivery = new Delivery(subscriber, fromSequence);
+        synchronized (this) {
+            Delivery[] updated = Arrays.copyOf(deliveries, deliveries.length + 1);
+            updated[deliveries.length] = delivery;
+            deliveries = updated;
+        }
+        delivery.thread.start();
+    }
+
+    /**
+     * Stop recording; each subscriber completes once it has every earlier record
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Delivery delivery : deliveries) {
+            LockSupport.unpark(delivery.thread);
+        }
+    }
+
+    /**
+     * Sequence of the latest record, 0 before the first
+     */
+    public long getLatestSequence() {
+        return lastSequence.get();
+    }
+
+    /**
+     * Oldest sequence a subscriber can still resume from
+     */
+    public long getOldestSequence() {
+        return Math.max(1, lastSequence.get() - mask);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public int getSubscriberCount() {
+        return deliveries.length;
+    }
+
+    /**
+     * Subscriptions failed for falling further behind than the ring holds
+     */
+    public long getLaggedCount() {
+        return lagged.sum();
+    }
+
+    @Override
+    public void appointmentBooked(Appointment appointment) {
+        record(ChangeRecord.Type.BOOKED, appointment, 0, null);
+    }
+
+    @Override
+    public void statusChanged(Appointment appointment, AppointmentStatus oldStatus) {
+        record(ChangeRecord.Type.STATUS_CHANGED, appointment, oldStatus.code(), null);
+    }
+
+    @Override
+    public void timeSlotChanged(Appointment appointment, int oldMinute) {
+        record(ChangeRecord.Type.TIME_CHANGED, appointment, oldMinute, null);
+    }
+
+    @Override
+    public void patientMobileChanged(Appointment appointment, long oldMobile) {
+        record(ChangeRecord.Type.MOBILE_CHANGED, appointment, oldMobile, null);
+    }
+
+    @Override
+    public void patientNameChanged(Appointment appointment, String oldName) {
+        record(ChangeRecord.Type.NAME_CHANGED, appointment, 0, oldName);
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        record(ChangeRecord.Type.REMOVED, appointment, 0, null);
+    }
+
+    // Called on the booking thread - never blocks
+    private void record(ChangeRecord.Type type, Appointment appointment, long previous, String previousName) {
+        if (closed) {
+            return;
+        }
+        long sequence = lastSequence.incrementAndGet();
+        ChangeRecord record = new ChangeRecord(sequence, type, appointment, previous, previousName);
+        int index = (int) sequence & mask;
+        while (true) {
+            ChangeRecord current = ring.get(index);
+            // A writer a whole ring ahead got here first - this record is already lost
+            if (current != null && current.getSequence() > sequence) break;
+            if (ring.compareAndSet(index, current, record)) break;
+        }
+        for (Delivery delivery : deliveries) {
+            if (delivery.idle) {
+                LockSupport.unpark(delivery.thread);
+            }
+        }
+    }
+
+    private synchronized void remove(Delivery delivery) {
+        for (int i = 0; i < deliveries.length; i++) {
+            if (deliveries[i] == delivery) {
+                Delivery[] updated = new Delivery[deliveries.length - 1];
+                System.arraycopy(deliveries, 0, updated, 0, i);
+                System.arraycopy(deliveries, i + 1, updated, i, updated.length - i);
+                deliveries = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * One subscriber's position in the feed, served by its own thread
+     */
+    private final class Delivery implements Flow.Subscription {
+        private final Flow.Subscriber<? super ChangeRecord> subscriber;
+        private final AtomicLong demand;
+        private final Thread thread;
+        private long next;  // delivery thread only
+        private volatile boolean cancelled;
+        private volatile boolean idle;
+        private volatile long badRequest;  // non-positive request to report, or 1
+
+        Delivery(Flow.Subscriber<? super ChangeRecord> subscriber, long fromSequence) {
+            this.subscriber = subscriber;
+            this.demand = new AtomicLong();
+            this.next = fromSequence;
+            this.badRequest = 1;
+            this.thread = new Thread(this::deliverLoop, "change-feed-" + nextDeliveryId.incrementAndGet());
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = n;
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> (current + added < 0) ? Long.MAX_VALUE : current + added);
+            }
+            // From onNext the delivery thread is already awake; a permit would
+            // leak into the subscriber's own parking
+            if (Thread.currentThread() != thread) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            remove(this);
+            LockSupport.unpark(thread);
+        }
+
+        private void deliverLoop() {
+            try {
+                subscriber.onSubscribe(this);
+                while (!cancelled) {
+                    if (badRequest <= 0) {
+                        fail(new IllegalArgumentException("Request must be positive: " + badRequest));
+                        return;
+                    }
+                    int delivered = deliverBatch();
+                    if (delivered < 0) {
+                        return;
+                    }
+                    if (delivered > 0) {
+                        continue;
+                    }
+                    if (closed && next > lastSequence.get()) {
+                        cancelled = true;
+                        remove(this);
+                        subscriber.onComplete();
+                        return;
+                    }
+                    idle = true;
+                    if (!cancelled && !closed && (demand.get() == 0 || !isAvailable())) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                }
+            } catch (RuntimeException e) {
+                // A subscriber must not throw - treat it as cancelling
+                cancelled = true;
+                remove(this);
+            }
+        }
+
+        // Records delivered, or -1 once the subscription has failed
+        private int deliverBatch() {
+            int delivered = 0;
+            while (delivered < BATCH_SIZE && !cancelled && demand.get() > 0) {
+                ChangeRecord record = ring.get((int) next & mask);
+                if (record == null || record.getSequence() < next) {
+                    if (next <= lastSequence.get()) {
+                        // Claimed but not yet written - the writer is mid-record
+                        Thread.yield();
+                        continue;
+                    }
+                    break;
+                }
+                if (record.getSequence() > next) {
+                    lagged.increment();
+                    fail(new IllegalStateException("Change " + next + " is no longer retained; oldest is "
+                            + getOldestSequence()));
+                    return -1;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                next++;
+                delivered++;
+                subscriber.onNext(record);
+            }
+            return delivered;
+        }
+
+        private boolean isAvailable() {
+            return next <= lastSequence.get();
+        }
+
+        private void fail(Throwable error) {
+            cancelled = true;
+            remove(this);
+            subscriber.onError(error);
+        }
+    }
+}
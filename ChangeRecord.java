@@ -0,0 +1,136 @@
+/**
+ * ChangeRecord class - one change to a booked appointment, as published by
+ * a ChangeFeed
+ * Immutable and holds no reference to the appointment, so a record can sit
+ * in the feed's ring and be read by any subscriber thread. Sequences are
+ * unique, increase by one per record and follow the order of changes to
+ * any one appointment. A doctor change arrives as REMOVED then BOOKED for
+ * the same appointment ID
+ */
+public class ChangeRecord {
+
+    /**
+     * Kind of change
+     */
+    public enum Type {
+        BOOKED, STATUS_CHANGED, TIME_CHANGED, MOBILE_CHANGED, NAME_CHANGED, REMOVED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final long timestampMillis;
+    private final long capturedNanos;
+    private final long appointmentId;
+    private final int doctorId;
+    private final String patientName;
+    private final long mobile;
+    private final short slotMinute;
+    private final byte status;
+
+    // Status code, minute or packed mobile before the change, by type
+    private final long previous;
+    private final String previousName;
+
+    ChangeRecord(long sequence, Type type, Appointment appointment, long previous, String previousName) {
+        this.sequence = sequence;
+        this.type = type;
+        this.timestampMillis = System.currentTimeMillis();
+        this.capturedNanos = System.nanoTime();
+        this.appointmentId = appointment.getId();
+        this.doctorId = appointment.getDoctor().getId();
+        this.patientName = appointment.getPatientName();
+        this.mobile = appointment.getMobileKey();
+        this.slotMinute = (short) appointment.getSlotMinute();
+        this.status = appointment.getAppointmentStatus().code();
+        this.previous = previous;
+        this.previousName = previousName;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * System.nanoTime when the change was captured - for measuring delivery latency
+     */
+    long getCapturedNanos() {
+        return capturedNanos;
+    }
+
+    public long getAppointmentId() {
+        return appointmentId;
+    }
+
+    public int getDoctorId() {
+        return doctorId;
+    }
+
+    /**
+     * Values after the change
+     */
+    public String getPatientName() {
+        return patientName;
+    }
+
+    public String getPatientMobile() {
+        return MobileNumber.unpack(mobile);
+    }
+
+    public String getTimeSlot() {
+        return TimeSlot.format(slotMinute);
+    }
+
+    public AppointmentStatus getStatus() {
+        return AppointmentStatus.fromCode(status);
+    }
+
+    /**
+     * Status before a STATUS_CHANGED record, otherwise null
+     */
+    public AppointmentStatus getPreviousStatus() {
+        return (type == Type.STATUS_CHANGED) ? AppointmentStatus.fromCode((int) previous) : null;
+    }
+
+    /**
+     * Time slot before a TIME_CHANGED record, otherwise null
+     */
+    public String getPreviousTimeSlot() {
+        return (type == Type.TIME_CHANGED) ? TimeSlot.format((int) previous) : null;
+    }
+
+    /**
+     * Mobile before a MOBILE_CHANGED record, otherwise null
+     */
+    public String getPreviousMobile() {
+        return (type == Type.MOBILE_CHANGED) ? MobileNumber.unpack(previous) : null;
+    }
+
+    /**
+     * Name before a NAME_CHANGED record, otherwise null
+     */
+    public String getPreviousName() {
+        return previousName;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(96)
+                .append("ChangeRecord{sequence=").append(sequence)
+                .append(", type=").append(type)
+                .append(", appointmentId=").append(appointmentId)
+                .append(", patient='").append(patientName)
+                .append("', mobile='");
+        MobileNumber.appendTo(out, mobile);
+        return out.append("', time='").append(getTimeSlot())
+                .append("', status=").append(getStatus())
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,580 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * ColumnarAppointmentStore class - off-heap storage for very large schedules
+ * Packs each appointment into direct-memory columns: ID and mobile as longs,
+ * doctor ID as an int, time slot as a short, status as a byte, the patient
+ * name as a reference into a deduplicated name pool, and a link to the
+ * patient's previous row. A row costs 31 bytes outside the heap, and the ID
+ * and mobile indexes are off-heap tables of row numbers, so tens of millions
+ * of rows add almost nothing for the garbage collector to trace.
+ * Rows are read and updated through RowView flyweights with the Appointment
+ * API: lookups return a view fixed on its row, and a Cursor is one view moved
+ * from row to row. Rows never move, so cancelling one out of the store leaves
+ * a tombstone. Not thread-safe - guard it like an AppointmentStore
+ */
+public class ColumnarAppointmentStore implements AppointmentRepository<ColumnarAppointmentStore.RowView> {
+
+    // Rows per chunk - each column of a chunk is one direct buffer
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    private static final int ROW_MASK = CHUNK_ROWS - 1;
+
+    // Index tables stop doubling here, a 1 GB buffer, so rows are capped below it
+    private static final int MAX_TABLE_SLOTS = 1 << 28;
+    private static final int MAX_ROWS = 150_000_000;
+
+    // Set in a row's status byte once the row is cancelled out of the store
+    private static final int REMOVED = 0x40;
+    private static final int STATUS_MASK = REMOVED - 1;
+
+    public static final int BYTES_PER_ROW = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES
+            + Integer.BYTES + Short.BYTES + Byte.BYTES;
+
+    private final IntFunction<HealthProfessional> doctors;
+    private final ArrayList<Chunk> chunks;
+    private final NamePool names;
+    private final RowTable idIndex;
+    private final RowTable mobileIndex;
+    private int rowCount;
+    private int liveCount;
+
+    /**
+     * Create an empty store - doctors resolves a stored doctor ID for the
+     * views, e.g. a registry's findById
+     */
+    public ColumnarAppointmentStore(IntFunction<HealthProfessional> doctors) {
+        if (doctors == null) {
+            throw new IllegalArgumentException("Doctor lookup cannot be null");
+        }
+        this.doctors = doctors;
+        this.chunks = new ArrayList<>();
+        this.names = new NamePool();
+        this.idIndex = new RowTable(false);
+        this.mobileIndex = new RowTable(true);
+        this.rowCount = 0;
+        this.liveCount = 0;
+    }
+
+    /**
+     * Append a validated appointment's fields, keeping its ID, and return its row number
+     */
+    public long add(Appointment appointment) {
+        if (appointment == null || appointment.getDoctor() == null) {
+            throw new IllegalArgumentException("Appointment and doctor are required");
+        }
+        if (findRow(appointment.getId()) >= 0) {
+            throw new IllegalArgumentException("Appointment already stored: " + appointment.getId());
+        }
+        return append(appointment.getId(), appointment.getPatientName(), appointment.getMobileKey(),
+                appointment.getSlotMinute(), appointment.getDoctorId(), appointment.getAppointmentStatus());
+    }
+
+    /**
+     * Append a row without building an Appointment first
+     * Applies the same checks as the Appointment constructor, and the row
+     * gets an ID from the same sequence
+     */
+    public long add(String patientName, String patientMobile, String timeSlot, int doctorId) {
+        if (patientName == null || patientName.trim().length() < 2) {
+            throw new IllegalArgumentException("Invalid patient name: " + patientName);
+        }
+        long mobile = MobileNumber.parse(patientMobile);
+        if (mobile == MobileNumber.INVALID) {
+            throw new IllegalArgumentException("Invalid mobile number: " + patientMobile);
+        }
+        int minute = TimeSlot.parse(timeSlot);
+        if (minute == TimeSlot.INVALID) {
+            throw new IllegalArgumentException("Invalid time format: " + timeSlot);
+        }
+        if (doctors.apply(doctorId) == null) {
+            throw new IllegalArgumentException("Unknown doctor ID: " + doctorId);
+        }
+        return append(Appointment.nextId(), patientName.trim(), mobile, minute, doctorId,
+                AppointmentStatus.SCHEDULED);
+    }
+
+    /**
+     * View of the stored appointment with an ID, or null
+     */
+    @Override
+    public RowView findById(long appointmentId) {
+        int row = findRow(appointmentId);
+        return (row >= 0) ? new RowView(row) : null;
+    }
+
+    /**
+     * Views of all stored appointments for a patient mobile, in booking order
+     */
+    @Override
+    public List<RowView> findByMobile(String patientMobile) {
+        List<RowView> result = new ArrayList<>();
+        long mobile = MobileNumber.parse(patientMobile);
+        if (mobile == MobileNumber.INVALID) {
+            return result;
+        }
+        // The chain runs newest first
+        for (int row = mobileIndex.get(mobile); row >= 0; row = previousAt(row)) {
+            if (!removedAt(row)) {
+                result.add(new RowView(row));
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Cancel the row with an ID out of the store
+     * Returns a view of the removed row, or null if none is stored with that ID
+     */
+    @Override
+    public RowView cancelById(long appointmentId) {
+        int row = findRow(appointmentId);
+        if (row < 0) {
+            return null;
+        }
+        markRemoved(row);
+        return new RowView(row);
+    }
+
+    /**
+     * Cancel the earliest row for a patient mobile out of the store
+     * Returns a view of the removed row, or null if none was found
+     */
+    @Override
+    public RowView cancelByMobile(String patientMobile) {
+        long mobile = MobileNumber.parse(patientMobile);
+        if (mobile == MobileNumber.INVALID) {
+            return null;
+        }
+        int earliest = -1;
+        for (int row = mobileIndex.get(mobile); row >= 0; row = previousAt(row)) {
+            if (!removedAt(row)) {
+                earliest = row;
+            }
+        }
+        if (earliest < 0) {
+            return null;
+        }
+        markRemoved(earliest);
+        return new RowView(earliest);
+    }
+
+    /**
+     * Number of rows not cancelled out of the store
+     */
+    public long size() {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return liveCount == 0;
+    }
+
+    /**
+     * Number of rows ever appended, tombstones included - rows are numbered below this
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getId(long row) {
+        return idAt(checkRow(row));
+    }
+
+    public String getPatientName(long row) {
+        return nameAt(checkRow(row));
+    }
+
+    public long getPackedMobile(long row) {
+        return mobileAt(checkRow(row));
+    }
+
+    public String getPatientMobile(long row) {
+        return MobileNumber.unpack(getPackedMobile(row));
+    }
+
+    public int getSlotMinute(long row) {
+        return slotAt(checkRow(row));
+    }
+
+    public int getDoctorId(long row) {
+        return doctorIdAt(checkRow(row));
+    }
+
+    public AppointmentStatus getStatus(long row) {
+        return statusAt(checkRow(row));
+    }
+
+    /**
+     * Check whether a row has been cancelled out of the store
+     */
+    public boolean isRemoved(long row) {
+        return removedAt(checkRow(row));
+    }
+
+    /**
+     * Move a row to a new status if the transition is legal
+     */
+    public boolean transitionTo(long row, AppointmentStatus target) {
+        int checked = checkRow(row);
+        ByteBuffer column = chunks.get(checked >>> CHUNK_BITS).statuses;
+        int stored = column.get(checked & ROW_MASK);
+        if (!AppointmentStatus.fromCode(stored & STATUS_MASK).canTransitionTo(target)) {
+            return false;
+        }
+        column.put(checked & ROW_MASK, (byte) ((stored & REMOVED) | target.code()));
+        return true;
+    }
+
+    /**
+     * Number of stored rows with a status - a sequential scan of one byte
+     * column, which skips tombstones as their byte never matches
+     */
+    public long countByStatus(AppointmentStatus status) {
+        byte code = status.code();
+        long count = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            ByteBuffer column = chunks.get(c).statuses;
+            int rows = rowsIn(c);
+            for (int i = 0; i < rows; i++) {
+                if (column.get(i) == code) count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reusable flyweight positioned on one row at a time
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Bytes of direct memory reserved by the columns and index tables
+     */
+    public long getOffHeapBytes() {
+        return (long) chunks.size() * CHUNK_ROWS * BYTES_PER_ROW + idIndex.bytes() + mobileIndex.bytes();
+    }
+
+    public int getDistinctNameCount() {
+        return names.size();
+    }
+
+    private long append(long id, String patientName, long packedMobile, int slotMinute, int doctorId,
+                        AppointmentStatus status) {
+        if (rowCount == MAX_ROWS) {
+            throw new IllegalStateException("Columnar store is full at " + MAX_ROWS + " rows");
+        }
+        int row = rowCount;
+        int offset = row & ROW_MASK;
+        if (offset == 0) {
+            chunks.add(new Chunk());
+        }
+        Chunk chunk = chunks.get(chunks.size() - 1);
+        chunk.ids.putLong(offset * Long.BYTES, id);
+        chunk.mobiles.putLong(offset * Long.BYTES, packedMobile);
+        chunk.doctorIds.putInt(offset * Integer.BYTES, doctorId);
+        chunk.names.putInt(offset * Integer.BYTES, names.intern(patientName));
+        chunk.previous.putInt(offset * Integer.BYTES, mobileIndex.get(packedMobile) + 1);
+        chunk.slots.putShort(offset * Short.BYTES, (short) slotMinute);
+        chunk.statuses.put(offset, status.code());
+        rowCount++;
+        liveCount++;
+
+        // The row's columns are written first, as the tables read keys back from them
+        idIndex.put(id, row);
+        mobileIndex.put(packedMobile, row);
+        return row;
+    }
+
+    // Stored row with an ID, or -1 if there is none or it was cancelled out
+    private int findRow(long appointmentId) {
+        int row = idIndex.get(appointmentId);
+        return (row >= 0 && !removedAt(row)) ? row : -1;
+    }
+
+    private void markRemoved(int row) {
+        ByteBuffer column = chunks.get(row >>> CHUNK_BITS).statuses;
+        column.put(row & ROW_MASK, (byte) (column.get(row & ROW_MASK) | REMOVED));
+        liveCount--;
+    }
+
+    private int checkRow(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        return (int) row;
+    }
+
+    // Unchecked column reads for rows known to exist
+
+    private long idAt(int row) {
+        return chunks.get(row >>> CHUNK_BITS).ids.getLong((row & ROW_MASK) * Long.BYTES);
+    }
+
+    private long mobileAt(int row) {
+        return chunks.get(row >>> CHUNK_BITS).mobiles.getLong((row & ROW_MASK) * Long.BYTES);
+    }
+
+    private int doctorIdAt(int row) {
+        return chunks.get(row >>> CHUNK_BITS).doctorIds.getInt((row & ROW_MASK) * Integer.BYTES);
+    }
+
+    private String nameAt(int row) {
+        return names.get(chunks.get(row >>> CHUNK_BITS).names.getInt((row & ROW_MASK) * Integer.BYTES));
+    }
+
+    // Previous row for the same mobile, or -1
+    private int previousAt(int row) {
+        return chunks.get(row >>> CHUNK_BITS).previous.getInt((row & ROW_MASK) * Integer.BYTES) - 1;
+    }
+
+    private int slotAt(int row) {
+        return chunks.get(row >>> CHUNK_BITS).slots.getShort((row & ROW_MASK) * Short.BYTES);
+    }
+
+    private AppointmentStatus statusAt(int row) {
+        return AppointmentStatus.fromCode(chunks.get(row >>> CHUNK_BITS).statuses.get(row & ROW_MASK) & STATUS_MASK);
+    }
+
+    private boolean removedAt(int row) {
+        return (chunks.get(row >>> CHUNK_BITS).statuses.get(row & ROW_MASK) & REMOVED) != 0;
+    }
+
+    private int rowsIn(int chunkIndex) {
+        return (chunkIndex < chunks.size() - 1) ? CHUNK_ROWS : rowCount - (chunkIndex << CHUNK_BITS);
+    }
+
+    /**
+     * Flyweight view of one row with the Appointment API - reads and status
+     * changes go straight to the columns, so no Appointment is built and the
+     * row keeps its ID. A view returned by a lookup stays on its row
+     */
+    public class RowView implements AppointmentView {
+        int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        /**
+         * False once the row has been cancelled out of the store
+         */
+        public boolean isStored() {
+            return !removedAt(row);
+        }
+
+        @Override
+        public long getId() {
+            return idAt(row);
+        }
+
+        @Override
+        public String getPatientName() {
+            return nameAt(row);
+        }
+
+        @Override
+        public String getPatientMobile() {
+            return MobileNumber.unpack(mobileAt(row));
+        }
+
+        @Override
+        public long getMobileKey() {
+            return mobileAt(row);
+        }
+
+        @Override
+        public int getSlotMinute() {
+            return slotAt(row);
+        }
+
+        @Override
+        public HealthProfessional getDoctor() {
+            return doctors.apply(doctorIdAt(row));
+        }
+
+        @Override
+        public int getDoctorId() {
+            return doctorIdAt(row);
+        }
+
+        @Override
+        public AppointmentStatus getAppointmentStatus() {
+            return statusAt(row);
+        }
+
+        @Override
+        public boolean transitionTo(AppointmentStatus target) {
+            return ColumnarAppointmentStore.this.transitionTo(row, target);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(96)
+                    .append("Appointment{id=").append(getId())
+                    .append(", patient='").append(getPatientName())
+                    .append("', mobile='");
+            MobileNumber.appendTo(out, mobileAt(row));
+            return out.append("', time='").append(getTimeSlot())
+                    .append("', doctor=").append(getDoctor().getName())
+                    .append('}').toString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof RowView)) return false;
+            RowView that = (RowView) obj;
+            return store() == that.store() && row == that.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(getId());
+        }
+
+        private ColumnarAppointmentStore store() {
+            return ColumnarAppointmentStore.this;
+        }
+    }
+
+    /**
+     * Reusable view - move it with moveTo, read it with the Appointment API
+     */
+    public class Cursor extends RowView {
+
+        Cursor() {
+            super(-1);
+        }
+
+        public Cursor moveTo(long row) {
+            this.row = checkRow(row);
+            return this;
+        }
+    }
+
+    // One block of CHUNK_ROWS rows, one direct buffer per column
+    private static class Chunk {
+        final ByteBuffer ids = column(Long.BYTES);
+        final ByteBuffer mobiles = column(Long.BYTES);
+        final ByteBuffer doctorIds = column(Integer.BYTES);
+        final ByteBuffer names = column(Integer.BYTES);
+        final ByteBuffer previous = column(Integer.BYTES);  // row + 1, 0 for none
+        final ByteBuffer slots = column(Short.BYTES);
+        final ByteBuffer statuses = column(Byte.BYTES);
+
+        private static ByteBuffer column(int width) {
+            return ByteBuffer.allocateDirect(CHUNK_ROWS * width).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    // Open-addressing table with linear probing from a key to a row. Keys are
+    // not stored: a slot holds row + 1, 0 when empty, and the key is read back
+    // from that row's column, so a slot is four bytes of direct memory
+    private final class RowTable {
+        private final boolean byMobile;
+        private ByteBuffer slots;
+        private int mask;
+        private int count;
+
+        RowTable(boolean byMobile) {
+            this.byMobile = byMobile;
+            allocate(1 << 10);
+        }
+
+        // Row stored under a key, or -1
+        int get(long key) {
+            for (int slot = home(key); ; slot = (slot + 1) & mask) {
+                int entry = slots.getInt(slot * Integer.BYTES);
+                if (entry == 0) return -1;
+                if (keyOf(entry - 1) == key) return entry - 1;
+            }
+        }
+
+        // Store a row under its key, replacing the row stored there before
+        void put(long key, int row) {
+            int slot = home(key);
+            for (int entry; (entry = slots.getInt(slot * Integer.BYTES)) != 0; slot = (slot + 1) & mask) {
+                if (keyOf(entry - 1) == key) {
+                    slots.putInt(slot * Integer.BYTES, row + 1);
+                    return;
+                }
+            }
+            slots.putInt(slot * Integer.BYTES, row + 1);
+            count++;
+            if (count > (mask + 1) / 4 * 3 && mask + 1 < MAX_TABLE_SLOTS) {
+                grow();
+            }
+        }
+
+        long bytes() {
+            return (long) (mask + 1) * Integer.BYTES;
+        }
+
+        private long keyOf(int row) {
+            return byMobile ? mobileAt(row) : idAt(row);
+        }
+
+        private int home(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+
+        private void grow() {
+            ByteBuffer old = slots;
+            int oldSlots = mask + 1;
+            allocate(oldSlots * 2);
+            for (int i = 0; i < oldSlots; i++) {
+                int entry = old.getInt(i * Integer.BYTES);
+                if (entry == 0) continue;
+                int slot = home(keyOf(entry - 1));
+                while (slots.getInt(slot * Integer.BYTES) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots.putInt(slot * Integer.BYTES, entry);
+            }
+        }
+
+        private void allocate(int capacity) {
+            slots = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+            mask = capacity - 1;
+        }
+    }
+
+    // Each distinct name is stored once and referenced by index
+    private static class NamePool {
+        private final HashMap<String, Integer> indexes = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        int intern(String name) {
+            Integer index = indexes.get(name);
+            if (index == null) {
+                index = values.size();
+                values.add(name);
+                indexes.put(name, index);
+            }
+            return index;
+        }
+
+        String get(int index) {
+            return values.get(index);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
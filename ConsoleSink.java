@@ -0,0 +1,41 @@
+import java.io.PrintStream;
+
+/**
+ * ConsoleSink class - prints each event's message as one line
+ * A drained batch is written with a single call, so the stream lock is taken
+ * once per batch instead of once per event
+ */
+public class ConsoleSink implements EventSink {
+
+    private final PrintStream output;
+    private final StringBuilder buffer;
+
+    /**
+     * Default constructor - prints to System.out
+     */
+    public ConsoleSink() {
+        this(System.out);
+    }
+
+    public ConsoleSink(PrintStream output) {
+        if (output == null) {
+            throw new IllegalArgumentException("Output cannot be null");
+        }
+        this.output = output;
+        this.buffer = new StringBuilder(4096);
+    }
+
+    @Override
+    public void accept(BookingEvent event) {
+        buffer.append(event.getMessage()).append(ScheduleRenderer.NEW_LINE);
+    }
+
+    @Override
+    public void flush() {
+        if (buffer.length() > 0) {
+            output.print(buffer);
+            buffer.setLength(0);
+        }
+        output.flush();
+    }
+}
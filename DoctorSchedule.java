@@ -0,0 +1,168 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * DoctorSchedule class - one doctor's bookings for the day
+ * Tracks occupied HH:mm slots in a bitmap and the number of booked patients
+ * in an atomic counter, so capacity checks and free-slot queries never scan
+ * appointments and never allocate
+ */
+public class DoctorSchedule {
+
+    public static final int MINUTES_PER_DAY = TimeSlot.MINUTES_PER_DAY;
+    public static final int NO_FREE_SLOT = -1;
+
+    private static final int WORDS = (MINUTES_PER_DAY + 63) / 64;
+
+    // Bit n is set when the slot starting at minute n of the day is taken
+    private final AtomicLongArray occupied;
+    private final AtomicInteger bookedCount;
+
+    /**
+     * Default constructor - creates an empty day
+     */
+    public DoctorSchedule() {
+        this.occupied = new AtomicLongArray(WORDS);
+        this.bookedCount = new AtomicInteger();
+    }
+
+    /**
+     * Reserve a slot if it is free and the doctor is below capacity
+     * Returns false when the slot is taken or the day is full
+     */
+    public boolean tryReserve(int minute, int capacity) {
+        checkMinute(minute);
+
+        // Claim capacity first, then the slot, giving capacity back if the slot is taken
+        int count;
+        do {
+            count = bookedCount.get();
+            if (count >= capacity) {
+                return false;
+            }
+        } while (!bookedCount.compareAndSet(count, count + 1));
+
+        if (!setBit(minute)) {
+            bookedCount.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release a reserved slot and its capacity
+     * Returns false if the slot was not reserved
+     */
+    public boolean release(int minute) {
+        checkMinute(minute);
+        if (!clearBit(minute)) {
+            return false;
+        }
+        bookedCount.decrementAndGet();
+        return true;
+    }
+
+    public boolean isOccupied(int minute) {
+        checkMinute(minute);
+        return (occupied.get(minute >>> 6) & (1L << minute)) != 0;
+    }
+
+    public int getBookedCount() {
+        return bookedCount.get();
+    }
+
+    /**
+     * First free slot at or after the given minute, or NO_FREE_SLOT
+     */
+    public int nextFreeSlot(int fromMinute) {
+        checkMinute(fromMinute);
+        int word = fromMinute >>> 6;
+        long free = ~occupied.get(word) & (-1L << fromMinute);
+
+        while (true) {
+            if (free != 0) {
+                int minute = (word << 6) + Long.numberOfTrailingZeros(free);
+                return (minute < MINUTES_PER_DAY) ? minute : NO_FREE_SLOT;
+            }
+            if (++word == WORDS) {
+                return NO_FREE_SLOT;
+            }
+            free = ~occupied.get(word);
+        }
+    }
+
+    /**
+     * First occupied slot at or after the given minute, or -1 if the rest of
+     * the day is free. fromMinute may be MINUTES_PER_DAY, the end of the day
+     */
+    public int nextOccupiedSlot(int fromMinute) {
+        if (fromMinute == MINUTES_PER_DAY) {
+            return -1;
+        }
+        checkMinute(fromMinute);
+        int word = fromMinute >>> 6;
+        long taken = occupied.get(word) & (-1L << fromMinute);
+
+        while (true) {
+            if (taken != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(taken);
+            }
+            if (++word == WORDS) {
+                return -1;
+            }
+            taken = occupied.get(word);
+        }
+    }
+
+    /**
+     * First minute at or after fromMinute that starts length free minutes
+     * ending within the day, or NO_FREE_SLOT. Skips whole free and occupied
+     * runs a word at a time rather than testing minute by minute
+     */
+    public int firstFreeRun(int fromMinute, int length) {
+        if (length <= 0 || length > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Run length out of range: " + length);
+        }
+        int start = nextFreeSlot(fromMinute);
+        while (start != NO_FREE_SLOT && start + length <= MINUTES_PER_DAY) {
+            int taken = nextOccupiedSlot(start);
+            if (taken < 0 || taken >= start + length) {
+                return start;
+            }
+            start = (taken + 1 < MINUTES_PER_DAY) ? nextFreeSlot(taken + 1) : NO_FREE_SLOT;
+        }
+        return NO_FREE_SLOT;
+    }
+
+    private boolean setBit(int minute) {
+        int word = minute >>> 6;
+        long mask = 1L << minute;
+        long current;
+        do {
+            current = occupied.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!occupied.compareAndSet(word, current, current | mask));
+        return true;
+    }
+
+    private boolean clearBit(int minute) {
+        int word = minute >>> 6;
+        long mask = 1L << minute;
+        long current;
+        do {
+            current = occupied.get(word);
+            if ((current & mask) == 0) {
+                return false;
+            }
+        } while (!occupied.compareAndSet(word, current, current & ~mask));
+        return true;
+    }
+
+    private static void checkMinute(int minute) {
+        if (minute < 0 || minute >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Minute of day out of range: " + minute);
+        }
+    }
+}
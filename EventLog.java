@@ -0,0 +1,257 @@
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventLog class - asynchronous delivery of booking events to sinks
+ * Publishers claim a slot in a bounded lock-free ring buffer and return
+ * immediately; one daemon thread drains the ring in batches and hands each
+ * event to every sink. When the ring is full the event is dropped and
+ * counted, so a slow sink can never block a booking thread. Closing seals
+ * the ring against new events first, then delivers everything already in it
+ */
+public final class EventLog implements Closeable {
+
+    private static final int DEFAULT_CAPACITY = 16 * 1024;
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    // Set in tail once the log is closed - no position can be claimed after it
+    private static final long SEALED = Long.MIN_VALUE;
+
+    private static volatile EventLog defaultLog;
+
+    // Slot i holds the event for position p when sequences[i] == p + 1
+    private final AtomicReferenceArray<BookingEvent> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head;  // consumer thread only
+
+    private final List<EventSink> sinks;
+    private final LongAdder dropped;
+    private final LongAdder sinkFailures;
+    private final Thread consumer;
+    private volatile long delivered;
+    private volatile boolean consumerIdle;
+    private volatile boolean running;
+
+    /**
+     * Default constructor - default capacity and no sinks
+     */
+    public EventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Parameterized constructor - capacity is rounded up to a power of two
+     */
+    public EventLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.sinks = new CopyOnWriteArrayList<>();
+        this.dropped = new LongAdder();
+        this.sinkFailures = new LongAdder();
+        this.running = true;
+
+        this.consumer = new Thread(this::drainLoop, "event-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Shared log used by model classes that have no log of their own
+     * Created on first use with no sinks, so library code never prints;
+     * an application adds a ConsoleSink to see the messages on stdout
+     */
+    public static EventLog getDefault() {
+        EventLog log = defaultLog;
+        if (log == null) {
+            synchronized (EventLog.class) {
+                log = defaultLog;
+                if (log == null) {
+                    log = new EventLog();
+                    Runtime.getRuntime().addShutdownHook(new Thread(log::close, "event-log-shutdown"));
+                    defaultLog = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Replace the shared log, e.g. with one that has sinks of its own
+     */
+    public static void setDefault(EventLog log) {
+        if (log == null) {
+            throw new IllegalArgumentException("Event log cannot be null");
+        }
+        defaultLog = log;
+    }
+
+    public void addSink(EventSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        sinks.add(sink);
+    }
+
+    public void removeSink(EventSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Queue an event without blocking
+     * Returns false if the ring is full or the log is closed; the event is dropped
+     */
+    public boolean publish(BookingEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("Event cannot be null");
+        }
+        long position = tail.get();
+        while (true) {
+            if ((position & SEALED) != 0) {
+                dropped.increment();
+                return false;
+            }
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, event);
+                    sequences.lazySet(index, position + 1);
+                    if (consumerIdle) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // The consumer has not freed this slot yet - the ring is full
+                dropped.increment();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Wait until every event published so far has reached the sinks
+     * For callers that must order their own output after the events -
+     * never call this on a latency-sensitive path
+     */
+    public void flush() {
+        long target = tail.get() & ~SEALED;
+        while (delivered < target && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Stop accepting events, deliver every one already published, then stop
+     * the consumer thread. Sealing the tail first means a publisher racing
+     * with close either gets its event delivered or sees it dropped
+     */
+    @Override
+    public void close() {
+        long position = tail.get();
+        while ((position & SEALED) == 0 && !tail.compareAndSet(position, position | SEALED)) {
+            position = tail.get();
+        }
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getSinkFailureCount() {
+        return sinkFailures.sum();
+    }
+
+    public long getPublishedCount() {
+        return tail.get() & ~SEALED;
+    }
+
+    private void drainLoop() {
+        while (true) {
+            int drained = drainBatch();
+            if (drained > 0) {
+                continue;
+            }
+            // Once stopped, the tail is sealed - wait for slots claimed before that to fill
+            if (!running && head == (tail.get() & ~SEALED)) {
+                return;
+            }
+            consumerIdle = true;
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            consumerIdle = false;
+        }
+    }
+
+    private int drainBatch() {
+        int drained = 0;
+        while (drained < BATCH_SIZE) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            BookingEvent event = slots.get(index);
+            slots.lazySet(index, null);
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+
+            for (EventSink sink : sinks) {
+                try {
+                    sink.accept(event);
+                } catch (RuntimeException e) {
+                    sinkFailures.increment();
+                }
+            }
+        }
+        if (drained > 0) {
+            for (EventSink sink : sinks) {
+                try {
+                    sink.flush();
+                } catch (RuntimeException e) {
+                    sinkFailures.increment();
+                }
+            }
+            delivered = head;
+        }
+        return drained;
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * EventSink interface - destination for events drained from an EventLog
+ * Called only from the log's consumer thread, so implementations need no
+ * locking and may block on I/O without slowing booking threads
+ */
+public interface EventSink {
+
+    void accept(BookingEvent event);
+
+    /**
+     * Called after each drained batch - write out anything buffered
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * FreeSlot class - an open time a doctor could be booked at
+ * Returned by BookingEngine free-slot searches
+ */
+public class FreeSlot {
+
+    private final HealthProfessional doctor;
+    private final int minute;
+
+    public FreeSlot(HealthProfessional doctor, int minute) {
+        if (doctor == null) {
+            throw new IllegalArgumentException("Doctor cannot be null");
+        }
+        this.doctor = doctor;
+        this.minute = minute;
+    }
+
+    public HealthProfessional getDoctor() {
+        return doctor;
+    }
+
+    public int getMinute() {
+        return minute;
+    }
+
+    /**
+     * Start of the free slot in HH:mm format
+     */
+    public String getTimeSlot() {
+        return TimeSlot.format(minute);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(48)
+                .append("FreeSlot{doctor=").append(doctor.getName())
+                .append(", time='").append(getTimeSlot())
+                .append("'}").toString();
+    }
+}
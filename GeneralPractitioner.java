@@ -43,12 +43,16 @@ public class GeneralPractitioner extends HealthProfessional {
      * Print detailed information including type and all attributes
      */
     public void printHealthProfessionalDetails() {
-        System.out.println("The health professional details are:");
-        System.out.println("Type: " + getProfessionalType());
-        super.printDetails();
-        System.out.println("Can Prescribe Medication: " + canPrescribeMedication);
-        System.out.println("Max Patients Per Day: " + maxPatientsPerDay);
-        System.out.println("------------------------");
+        StringBuilder details = new StringBuilder(256);
+        appendHealthProfessionalDetails(details);
+        System.out.print(details);
+    }
+
+    @Override
+    protected void appendSpecificDetails(StringBuilder out) {
+        String nl = ScheduleRenderer.NEW_LINE;
+        out.append("Can Prescribe Medication: ").append(canPrescribeMedication).append(nl);
+        out.append("Max Patients Per Day: ").append(maxPatientsPerDay).append(nl);
     }
 
     /**
@@ -88,9 +92,11 @@ public class GeneralPractitioner extends HealthProfessional {
 
     @Override
     public String toString() {
-        return String.format(
-                "GeneralPractitioner{id=%d, name='%s', canPrescribeMedication=%s, maxPatientsPerDay=%d}",
-                getId(), getName(), canPrescribeMedication, maxPatientsPerDay
-        );
+        return new StringBuilder(96)
+                .append("GeneralPractitioner{id=").append(getId())
+                .append(", name='").append(getName())
+                .append("', canPrescribeMedication=").append(canPrescribeMedication)
+                .append(", maxPatientsPerDay=").append(maxPatientsPerDay)
+                .append('}').toString();
     }
 }
@@ -37,9 +37,37 @@ public class HealthProfessional {
      * Print all details to console
      */
     public void printDetails() {
-        System.out.println("ID: " + this.id);
-        System.out.println("Name: " + this.name);
-        System.out.println("Department: " + this.department);
+        StringBuilder details = new StringBuilder(128);
+        appendDetails(details);
+        System.out.print(details);
+    }
+
+    /**
+     * Append ID, name and department to a reusable builder - no allocation
+     */
+    public void appendDetails(StringBuilder out) {
+        String nl = ScheduleRenderer.NEW_LINE;
+        out.append("ID: ").append(this.id).append(nl);
+        out.append("Name: ").append(this.name).append(nl);
+        out.append("Department: ").append(this.department).append(nl);
+    }
+
+    /**
+     * Append the full detail block, including type and subclass attributes
+     */
+    public void appendHealthProfessionalDetails(StringBuilder out) {
+        String nl = ScheduleRenderer.NEW_LINE;
+        out.append("The health professional details are:").append(nl);
+        out.append("Type: ").append(getProfessionalType()).append(nl);
+        appendDetails(out);
+        appendSpecificDetails(out);
+        out.append("------------------------").append(nl);
+    }
+
+    /**
+     * Hook for subclasses to append their own attributes
+     */
+    protected void appendSpecificDetails(StringBuilder out) {
     }
 
     /**
@@ -56,7 +84,7 @@ public class HealthProfessional {
 
     public void setId(int id) {
         if (id < 0) {
-            System.out.println("Warning: ID cannot be negative");
+            EventLog.getDefault().publish(BookingEvent.warning("Warning: ID cannot be negative"));
             return;
         }
         this.id = id;
@@ -82,8 +110,11 @@ public class HealthProfessional {
 
     @Override
     public String toString() {
-        return String.format("HealthProfessional{id=%d, name='%s', department='%s'}",
-                id, name, department);
+        return new StringBuilder(64)
+                .append("HealthProfessional{id=").append(id)
+                .append(", name='").append(name)
+                .append("', department='").append(department)
+                .append("'}").toString();
     }
 
     @Override
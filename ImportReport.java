@@ -0,0 +1,84 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImportReport class - outcome of a bulk appointment import
+ * Lists every rejected row with its line number and reason, instead of
+ * reporting problems on the console
+ */
+public class ImportReport {
+
+    private final int acceptedCount;
+    private final List<Rejection> rejections;
+    private final long elapsedNanos;
+
+    public ImportReport(int acceptedCount, List<Rejection> rejections, long elapsedNanos) {
+        this.acceptedCount = acceptedCount;
+        this.rejections = Collections.unmodifiableList(rejections);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public int getRejectedCount() {
+        return rejections.size();
+    }
+
+    /**
+     * Rejected rows in input order
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(64)
+                .append("ImportReport{accepted=").append(acceptedCount)
+                .append(", rejected=").append(rejections.size())
+                .append(", elapsedMillis=").append(getElapsedMillis())
+                .append('}').toString();
+    }
+
+    /**
+     * One rejected input row
+     */
+    public static class Rejection {
+
+        private final long lineNumber;
+        private final String row;
+        private final String reason;
+
+        public Rejection(long lineNumber, String row, String reason) {
+            this.lineNumber = lineNumber;
+            this.row = row;
+            this.reason = reason;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getRow() {
+            return row;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(64)
+                    .append("line ").append(lineNumber)
+                    .append(": ").append(reason)
+                    .append(" [").append(row).append(']').toString();
+        }
+    }
+}
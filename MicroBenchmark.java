@@ -0,0 +1,248 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MicroBenchmark class - warmed-up, repeatable measurement of one hot path
+ * Runs warmup and measurement iterations of an operation and reports
+ * throughput, latency percentiles, allocation per operation and GC
+ * activity. Results serialize to JSON so runs can be diffed. Operations are
+ * timed in groups with one pair of clock reads per group, so the cost of
+ * System.nanoTime does not swamp operations that take a few nanoseconds;
+ * percentiles are of the mean operation time within each group. For
+ * forked, fully isolated runs use the JMH benchmarks under jmh/
+ */
+public class MicroBenchmark {
+
+    /**
+     * One operation under test; the return value is consumed so the JIT
+     * cannot remove the work
+     */
+    @FunctionalInterface
+    public interface Operation {
+        long run(int invocation);
+    }
+
+    private static final double[] PERCENTILES = {0.50, 0.90, 0.99, 0.999};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+
+    // Operations timed together per pair of nanoTime calls
+    private static final int GROUP_SIZE = 32;
+
+    private static volatile long sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final int operationsPerIteration;
+    private final List<Result> results = new ArrayList<>();
+
+    public MicroBenchmark(int warmupIterations, int measurementIterations, int operationsPerIteration) {
+        if (warmupIterations < 0 || measurementIterations < 1 || operationsPerIteration < 1) {
+            throw new IllegalArgumentException("Invalid iteration settings");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.operationsPerIteration = operationsPerIteration;
+    }
+
+    /**
+     * Measure an operation; params describe the data size it ran at
+     */
+    public Result measure(String name, Map<String, Object> params, Operation operation) {
+        int invocation = 0;
+        long consumed = 0;
+        for (int w = 0; w < warmupIterations; w++) {
+            for (int i = 0; i < operationsPerIteration; i++) {
+                consumed += operation.run(invocation++);
+            }
+        }
+
+        int total = measurementIterations * operationsPerIteration;
+        int groupsPerIteration = (operationsPerIteration + GROUP_SIZE - 1) / GROUP_SIZE;
+        long[] latencies = new long[measurementIterations * groupsPerIteration];
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long allocatedBefore = allocatedBytes();
+        long elapsed = 0;
+        int sample = 0;
+        for (int m = 0; m < measurementIterations; m++) {
+            for (int done = 0; done < operationsPerIteration; done += GROUP_SIZE) {
+                int group = Math.min(GROUP_SIZE, operationsPerIteration - done);
+                long start = System.nanoTime();
+                for (int i = 0; i < group; i++) {
+                    consumed += operation.run(invocation++);
+                }
+                long nanos = System.nanoTime() - start;
+                latencies[sample++] = nanos / group;
+                elapsed += nanos;
+            }
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        sink += consumed;
+
+        Arrays.sort(latencies);
+        long[] percentiles = new long[PERCENTILES.length];
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            percentiles[p] = latencies[Math.min(sample - 1, (int) (PERCENTILES[p] * sample))];
+        }
+        Result result = new Result(name, params, total, elapsed, percentiles, latencies[sample - 1],
+                allocated < 0 ? -1 : (double) allocated / total,
+                gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+        results.add(result);
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Every result so far as a JSON document
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256 * (results.size() + 1));
+        json.append("{\"javaVersion\":");
+        appendString(json, System.getProperty("java.version"));
+        json.append(",\"processors\":").append(Runtime.getRuntime().availableProcessors())
+                .append(",\"warmupIterations\":").append(warmupIterations)
+                .append(",\"measurementIterations\":").append(measurementIterations)
+                .append(",\"operationsPerIteration\":").append(operationsPerIteration)
+                .append(",\"timingGroupSize\":").append(GROUP_SIZE)
+                .append(",\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(ScheduleRenderer.NEW_LINE);
+            results.get(i).appendJson(json);
+        }
+        return json.append(ScheduleRenderer.NEW_LINE).append("]}").append(ScheduleRenderer.NEW_LINE).toString();
+    }
+
+    // Bytes allocated by this thread, or -1 when the JVM cannot tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Measurements for one operation at one set of parameters
+     */
+    public static class Result {
+
+        private final String name;
+        private final Map<String, Object> params;
+        private final int operations;
+        private final long elapsedNanos;
+        private final long[] percentileNanos;
+        private final long maxNanos;
+        private final double allocatedBytesPerOp;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Result(String name, Map<String, Object> params, int operations, long elapsedNanos,
+               long[] percentileNanos, long maxNanos, double allocatedBytesPerOp,
+               long gcCount, long gcMillis) {
+            this.name = name;
+            this.params = new LinkedHashMap<>(params);
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.percentileNanos = percentileNanos;
+            this.maxNanos = maxNanos;
+            this.allocatedBytesPerOp = allocatedBytesPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getOpsPerSecond() {
+            return operations / (Math.max(elapsedNanos, 1) / 1e9);
+        }
+
+        public long getPercentileNanos(int index) {
+            return percentileNanos[index];
+        }
+
+        public double getAllocatedBytesPerOp() {
+            return allocatedBytesPerOp;
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("{\"benchmark\":");
+            appendString(json, name);
+            json.append(",\"params\":{");
+            boolean first = true;
+            for (Map.Entry<String, Object> param : params.entrySet()) {
+                if (!first) json.append(',');
+                first = false;
+                appendString(json, param.getKey());
+                json.append(':');
+                if (param.getValue() instanceof Number) {
+                    json.append(param.getValue());
+                } else {
+                    appendString(json, String.valueOf(param.getValue()));
+                }
+            }
+            json.append("},\"operations\":").append(operations)
+                    .append(",\"opsPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getOpsPerSecond()))
+                    .append(",\"latencyNanos\":{");
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                appendString(json, PERCENTILE_LABELS[p]);
+                json.append(':').append(percentileNanos[p]).append(',');
+            }
+            json.append("\"max\":").append(maxNanos)
+                    .append("},\"allocatedBytesPerOp\":").append(String.format(Locale.ROOT, "%.1f", allocatedBytesPerOp))
+                    .append(",\"gcCount\":").append(gcCount)
+                    .append(",\"gcMillis\":").append(gcMillis)
+                    .append('}');
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %-32s %,14.0f ops/s  p50=%,d ns  p99=%,d ns  alloc=%,.0f B/op",
+                    name, params, getOpsPerSecond(), percentileNanos[0], percentileNanos[2],
+                    allocatedBytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * MobileNumber class - compact handling of Australian mobile numbers
+ * A validated mobile is ten digits, so it can be stored as a long instead of
+ * a String wherever appointments are packed into fixed-width records.
+ * parse validates and packs in a single pass with no regex and no allocation;
+ * its result is the key every mobile lookup uses
+ */
+public final class MobileNumber {
+
+    public static final int DIGITS = 10;
+
+    // Returned by parse for anything that is not an 04 mobile
+    public static final long INVALID = -1;
+
+    private MobileNumber() {
+    }
+
+    /**
+     * Validate and pack a mobile in one pass, or return INVALID
+     * Accepts exactly what the old trim, strip-spaces, match ^04[0-9]{8}$
+     * check did: surrounding whitespace and inner spaces are ignored, any
+     * other character rejects the number
+     */
+    public static long parse(CharSequence mobile) {
+        if (mobile == null) {
+            return INVALID;
+        }
+        // String.trim bounds - anything at or below a space at either end
+        int start = 0;
+        int end = mobile.length();
+        while (start < end && mobile.charAt(start) <= ' ') start++;
+        while (end > start && mobile.charAt(end - 1) <= ' ') end--;
+
+        long value = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = mobile.charAt(i);
+            if (c == ' ') continue;
+            if (c < '0' || c > '9' || digits == DIGITS) return INVALID;
+            if (digits == 0 && c != '0') return INVALID;
+            if (digits == 1 && c != '4') return INVALID;
+            value = value * 10 + (c - '0');
+            digits++;
+        }
+        return (digits == DIGITS) ? value : INVALID;
+    }
+
+    public static boolean isValid(CharSequence mobile) {
+        return parse(mobile) != INVALID;
+    }
+
+    /**
+     * Whether a long is a packed mobile parse could have returned - for
+     * values read back from storage
+     */
+    public static boolean isValidPacked(long value) {
+        return value >= 400_000_000L && value <= 499_999_999L;
+    }
+
+    /**
+     * Pack a validated, normalized mobile into a long
+     */
+    public static long pack(String mobile) {
+        long value = 0;
+        for (int i = 0; i < mobile.length(); i++) {
+            value = value * 10 + (mobile.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Ten-digit string for a packed mobile, keeping the leading zero
+     */
+    public static String unpack(long value) {
+        char[] digits = new char[DIGITS];
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Append the ten digits of a packed mobile to a builder - no allocation
+     */
+    public static void appendTo(StringBuilder out, long value) {
+        int at = out.length();
+        out.setLength(at + DIGITS);
+        for (int i = at + DIGITS - 1; i >= at; i--) {
+            out.setCharAt(i, (char) ('0' + value % 10));
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * PatientNameIndex class - prefix and typo-tolerant search over patient names
+ * Names are case-folded and split into words. A sorted map holds the folded
+ * name from each word onwards ("mary ann smith", "ann smith", "smith"), so a
+ * prefix of any word is one range scan that stops at the result limit. For
+ * typos every distinct word is also filed under each of its one-letter
+ * deletions, so a misspelled word finds its candidates with a handful of
+ * hash lookups however many appointments there are. Entries are appointment
+ * IDs; a BookingEngine keeps its index current as an observer, and an
+ * appointment leaves the index once it is cancelled even though the engine
+ * still lists it
+ */
+public class PatientNameIndex implements BookingObserver {
+
+    // A typo is only forgiven when one of the two words is at least this long
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int LOCKS = 64;
+
+    private final ConcurrentSkipListMap<String, Postings> prefixes;
+    private final ConcurrentHashMap<String, Set<String>> namesByWord;
+    private final ConcurrentHashMap<String, Set<String>> wordsByDeletion;  // words are kept once seen
+    private final Object[] locks;
+
+    /**
+     * Default constructor - creates an empty index
+     */
+    public PatientNameIndex() {
+        this.prefixes = new ConcurrentSkipListMap<>();
+        this.namesByWord = new ConcurrentHashMap<>();
+        this.wordsByDeletion = new ConcurrentHashMap<>();
+        this.locks = new Object[LOCKS];
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Lower-case a name and collapse its whitespace - the form the index stores
+     */
+    public static String fold(String name) {
+        if (name == null) return "";
+        StringBuilder folded = new StringBuilder(name.length());
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = folded.length() > 0;
+            } else {
+                if (space) folded.append(' ');
+                folded.append(c);
+                space = false;
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Index an appointment under its patient name
+     */
+    public void add(long appointmentId, String patientName) {
+        String name = fold(patientName);
+        if (name.isEmpty()) return;
+        synchronized (lockFor(name)) {
+            for (int start = 0; start >= 0; start = nextWord(name, start)) {
+                String key = name.substring(start);
+                Postings postings = prefixes.computeIfAbsent(key, k -> new Postings());
+                while (!postings.add(appointmentId)) {
+                    // Emptied by a concurrent remove - replace it
+                    prefixes.remove(key, postings);
+                    postings = prefixes.computeIfAbsent(key, k -> new Postings());
+                }
+            }
+            for (String word : name.split(" ")) {
+                Set<String> names = namesByWord.get(word);
+                if (names == null) {
+                    names = ConcurrentHashMap.newKeySet();
+                    Set<String> existing = namesByWord.putIfAbsent(word, names);
+                    if (existing != null) {
+                        names = existing;
+                    } else if (word.length() >= MIN_FUZZY_LENGTH) {
+                        // A new word - file it under its deletions once
+                        for (int i = 0; i < word.length(); i++) {
+                            wordsByDeletion.computeIfAbsent(deleteAt(word, i), k -> ConcurrentHashMap.newKeySet())
+                                    .add(word);
+                        }
+                    }
+                }
+                names.add(name);
+            }
+        }
+    }
+
+    /**
+     * Drop an appointment indexed under the given patient name
+     */
+    public void remove(long appointmentId, String patientName) {
+        String name = fold(patientName);
+        if (name.isEmpty()) return;
+        synchronized (lockFor(name)) {
+            for (int start = 0; start >= 0; start = nextWord(name, start)) {
+                String key = name.substring(start);
+                Postings postings = prefixes.get(key);
+                if (postings == null || !postings.remove(appointmentId)) {
+                    continue;
+                }
+                prefixes.remove(key, postings);
+                if (start == 0) {
+                    // Last booking under this full name - fuzzy search stops offering it
+                    for (String word : name.split(" ")) {
+                        Set<String> names = namesByWord.get(word);
+                        if (names != null) names.remove(name);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * IDs of appointments with a word of the patient name starting with
+     * the prefix, at most limit of them
+     */
+    public long[] findByPrefix(String prefix, int limit) {
+        String key = fold(prefix);
+        if (key.isEmpty() || limit <= 0) return new long[0];
+        LinkedHashSet<Long> found = new LinkedHashSet<>();
+        for (Map.Entry<String, Postings> entry
+                : prefixes.subMap(key, true, key + Character.MAX_VALUE, false).entrySet()) {
+            if (entry.getValue().collect(found, limit)) break;
+        }
+        return toArray(found);
+    }
+
+    /**
+     * IDs of appointments whose patient name has, for every word of the
+     * query, a word at most one edit (insert, delete, substitute or swap of
+     * neighbours) away from it, at most limit of them
+     */
+    public long[] findSimilar(String query, int limit) {
+        String[] words = fold(query).split(" ");
+        if (words[0].isEmpty() || limit <= 0) return new long[0];
+
+        // Names holding a word similar to each query word; start from the fewest
+        List<List<Set<String>>> matches = new ArrayList<>(words.length);
+        int fewest = 0;
+        int fewestCount = Integer.MAX_VALUE;
+        for (String word : words) {
+            List<Set<String>> sets = new ArrayList<>();
+            int count = 0;
+            for (String similar : similarWords(word)) {
+                Set<String> names = namesByWord.get(similar);
+                if (names != null && !names.isEmpty()) {
+                    sets.add(names);
+                    count += names.size();
+                }
+            }
+            if (count == 0) return new long[0];
+            if (count < fewestCount) {
+                fewest = matches.size();
+                fewestCount = count;
+            }
+            matches.add(sets);
+        }
+
+        LinkedHashSet<Long> found = new LinkedHashSet<>();
+        for (Set<String> names : matches.get(fewest)) {
+            for (String name : names) {
+                if (containsAll(matches, name)) {
+                    Postings postings = prefixes.get(name);
+                    if (postings != null && postings.collect(found, limit)) {
+                        return toArray(found);
+                    }
+                }
+            }
+        }
+        return toArray(found);
+    }
+
+    @Override
+    public void appointmentBooked(Appointment appointment) {
+        if (appointment.isValid()) {
+            add(appointment.getId(), appointment.getPatientName());
+        }
+    }
+
+    @Override
+    public void statusChanged(Appointment appointment, AppointmentStatus oldStatus) {
+        // Cancelling is final, so the entry never has to come back
+        if (oldStatus.isActive() && !appointment.isValid()) {
+            remove(appointment.getId(), appointment.getPatientName());
+        }
+    }
+
+    @Override
+    public void patientNameChanged(Appointment appointment, String oldName) {
+        remove(appointment.getId(), oldName);
+        if (appointment.isValid()) {
+            add(appointment.getId(), appointment.getPatientName());
+        }
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        remove(appointment.getId(), appointment.getPatientName());
+    }
+
+    // Indexed words within one edit of a query word
+    private Set<String> similarWords(String word) {
+        Set<String> similar = new LinkedHashSet<>();
+        if (namesByWord.containsKey(word)) {
+            similar.add(word);
+        }
+        if (word.length() < MIN_FUZZY_LENGTH - 1) {
+            return similar;
+        }
+        // A deletion from the query reaches inserts; the query itself reaches
+        // deletions; a shared deletion covers substitutions and swaps
+        addWithinOneEdit(similar, wordsByDeletion.get(word), word);
+        for (int i = 0; i < word.length(); i++) {
+            String deleted = deleteAt(word, i);
+            if (word.length() >= MIN_FUZZY_LENGTH && namesByWord.containsKey(deleted)) {
+                similar.add(deleted);
+            }
+            addWithinOneEdit(similar, wordsByDeletion.get(deleted), word);
+        }
+        return similar;
+    }
+
+    private static void addWithinOneEdit(Set<String> similar, Set<String> candidates, String word) {
+        if (candidates == null) return;
+        for (String candidate : candidates) {
+            if (withinOneEdit(word, candidate)) {
+                similar.add(candidate);
+            }
+        }
+    }
+
+    private static boolean containsAll(List<List<Set<String>>> matches, String name) {
+        for (List<Set<String>> sets : matches) {
+            boolean contained = false;
+            for (Set<String> names : sets) {
+                if (names.contains(name)) {
+                    contained = true;
+                    break;
+                }
+            }
+            if (!contained) return false;
+        }
+        return true;
+    }
+
+    // Optimal string alignment distance <= 1, without building a matrix
+    static boolean withinOneEdit(String a, String b) {
+        int la = a.length();
+        int lb = b.length();
+        if (Math.abs(la - lb) > 1) return false;
+        int i = 0;
+        while (i < la && i < lb && a.charAt(i) == b.charAt(i)) i++;
+        if (i == la && i == lb) return true;
+        if (la == lb) {
+            // One substitution, or two neighbours swapped
+            if (a.regionMatches(i + 1, b, i + 1, la - i - 1)) return true;
+            return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.regionMatches(i + 2, b, i + 2, la - i - 2);
+        }
+        return (la > lb) ? a.regionMatches(i + 1, b, i, lb - i) : b.regionMatches(i + 1, a, i, la - i);
+    }
+
+    // Every change to one full name happens under the same lock
+    private Object lockFor(String name) {
+        return locks[name.hashCode() & (LOCKS - 1)];
+    }
+
+    private static int nextWord(String name, int start) {
+        int space = name.indexOf(' ', start);
+        return (space < 0) ? -1 : space + 1;
+    }
+
+    private static String deleteAt(String word, int index) {
+        return new StringBuilder(word.length() - 1)
+                .append(word, 0, index).append(word, index + 1, word.length()).toString();
+    }
+
+    private static long[] toArray(Set<Long> ids) {
+        long[] result = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Growable list of appointment IDs for one key
+     */
+    private static final class Postings {
+        private long[] ids = new long[2];
+        private int size;
+        private boolean retired;  // emptied and due to leave the map
+
+        // Returns false if retired - the caller must use a fresh Postings
+        synchronized boolean add(long id) {
+            if (retired) return false;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+            return true;
+        }
+
+        // Returns true if this removed the last ID, retiring the Postings
+        synchronized boolean remove(long id) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    retired = (size == 0);
+                    return retired;
+                }
+            }
+            return false;
+        }
+
+        // Add IDs until the set reaches limit; returns true once it has
+        synchronized boolean collect(Set<Long> found, int limit) {
+            for (int i = 0; i < size; i++) {
+                found.add(ids[i]);
+                if (found.size() >= limit) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,2363 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Performance benchmarks for the appointment system
+ * Run with: java PerformanceBenchmark [scenario] [max size] [results file]
+ * The "micro" scenario writes JSON results (default benchmark-results.json)
+ * The "server" scenario takes its concurrent client count from -Dclients
+ * The "columnar" scenario runs at 10M and 50M rows when max size allows,
+ * e.g. java -Xmx3g -XX:MaxDirectMemorySize=3g PerformanceBenchmark columnar 50000000
+ * The "journal" scenario times recovery best with the heap sized for the schedule,
+ * e.g. java -Xms2g -Xmx3g PerformanceBenchmark journal 1000000
+ */
+public class PerformanceBenchmark {
+
+    private static final int DEFAULT_MAX_SIZE = 1_000_000;
+    private static final int SAMPLE_OPERATIONS = 10_000;
+    private static final String DEFAULT_RESULTS_FILE = "benchmark-results.json";
+
+    /**
+     * Main method - runs one scenario, or all of them when none is given
+     */
+    public static void main(String[] args) {
+        String scenario = (args.length > 0) ? args[0] : "all";
+        int maxSize = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_MAX_SIZE;
+        Path resultsFile = Path.of((args.length > 2) ? args[2] : DEFAULT_RESULTS_FILE);
+
+        System.out.println("=== Appointment System Benchmarks ===");
+
+        if (scenario.equals("all") || scenario.equals("cancel")) {
+            benchmarkCancel(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("concurrent")) {
+            benchmarkConcurrentBooking(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("timeslot")) {
+            benchmarkTimeSlot(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("journal")) {
+            benchmarkJournal(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("render")) {
+            benchmarkRendering(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("referral")) {
+            benchmarkReferral();
+        }
+        if (scenario.equals("all") || scenario.equals("import")) {
+            benchmarkImport(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("metrics")) {
+            benchmarkMetricsOverhead(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("events")) {
+            benchmarkEventLog(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("range")) {
+            benchmarkRangeQueries(maxSize);
+        }
+        if (scenario.equals("server")) {
+            benchmarkServer(maxSize, Integer.getInteger("clients", 10_000));
+        }
+        if (scenario.equals("all") || scenario.equals("patients")) {
+            benchmarkPatientIndex(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("mobile")) {
+            benchmarkMobileParsing(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("snapshot")) {
+            benchmarkScheduleSnapshot(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("aggregates")) {
+            benchmarkAggregates(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("waitlist")) {
+            benchmarkWaitlist(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("views")) {
+            benchmarkScheduleViews(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("names")) {
+            benchmarkNameSearch(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("batch")) {
+            benchmarkBatchScheduling(maxSize);
+        }
+        if (scenario.equals("all") || scenario.equals("changes")) {
+            benchmarkChangeFeed(maxSize);
+        }
+        if (scenario.equals("columnar")) {
+            benchmarkColumnarStorage(maxSize);
+        }
+        if (scenario.equals("micro")) {
+            benchmarkHotPaths(maxSize, resultsFile);
+        }
+
+        System.out.println("=== Benchmarks Completed ===");
+    }
+
+    /**
+     * Cancel latency as the store grows - should stay flat with the mobile index
+     */
+    private static void benchmarkCancel(int maxSize) {
+        System.out.println("\n// Cancel latency by store size");
+        GeneralPractitioner gp = new GeneralPractitioner(101, "Dr. Smith",
+                "General Medicine", true, 25);
+
+        for (int size = 1_000; size <= maxSize; size *= 10) {
+            AppointmentStore store = new AppointmentStore();
+            for (int i = 0; i < size; i++) {
+                store.add(new Appointment("Patient " + i, mobileFor(i), timeFor(i), gp));
+            }
+
+            Random random = new Random(42);
+            int operations = Math.min(SAMPLE_OPERATIONS, size);
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                store.cancelByMobile(mobileFor(random.nextInt(size)));
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("size=%,d  cancels=%,d  avg=%.1f ns/op%n",
+                    size, operations, (double) elapsed / operations);
+        }
+    }
+
+    /**
+     * Concurrent booking stress test - checks for lost updates and double bookings
+     * and reports throughput as the number of booking threads grows
+     */
+    private static void benchmarkConcurrentBooking(int maxSize) {
+        System.out.println("\n// Concurrent booking throughput by thread count");
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        int doctorsPerThread = 50;
+        int slotsPerDoctor = 24 * 60;
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            BookingEngine engine = new BookingEngine();
+            int perThread = Math.min(maxSize / threads, doctorsPerThread * slotsPerDoctor);
+            List<HealthProfessional> sharedDoctors = new ArrayList<>();
+            for (int d = 0; d < doctorsPerThread; d++) {
+                sharedDoctors.add(new Specialist(1_000_000 + d, "Dr. Shared " + d,
+                        "Cardiology", "Heart Surgery", 10));
+            }
+
+            AtomicInteger contestedWins = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int threadIndex = t;
+                Thread worker = new Thread(() -> {
+                    List<HealthProfessional> ownDoctors = new ArrayList<>();
+                    for (int d = 0; d < doctorsPerThread; d++) {
+                        ownDoctors.add(new Specialist(threadIndex * doctorsPerThread + d,
+                                "Dr. Own " + d, "Cardiology", "Heart Surgery", 10));
+                    }
+                    awaitQuietly(start);
+
+                    for (int i = 0; i < perThread; i++) {
+                        HealthProfessional doctor = ownDoctors.get(i % doctorsPerThread);
+                        engine.book(new Appointment("Patient " + i, mobileFor(threadIndex * perThread + i),
+                                timeFor(i / doctorsPerThread), doctor));
+                    }
+                    // Every thread races for the same shared doctor slots
+                    for (int i = 0; i < doctorsPerThread * 10; i++) {
+                        HealthProfessional doctor = sharedDoctors.get(i % doctorsPerThread);
+                        if (engine.book(new Appointment("Racer " + threadIndex, mobileFor(i),
+                                timeFor(i / doctorsPerThread), doctor))) {
+                            contestedWins.incrementAndGet();
+                        }
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                joinQuietly(worker);
+            }
+            long elapsed = System.nanoTime() - begin;
+
+            int expected = threads * perThread + doctorsPerThread * 10;
+            boolean consistent = engine.size() == expected && contestedWins.get() == doctorsPerThread * 10;
+            System.out.printf("threads=%d  bookings=%,d  throughput=%,.0f ops/s  %s%n",
+                    threads, expected, expected / (elapsed / 1e9),
+                    consistent ? "OK" : "INCONSISTENT (size=" + engine.size() + ")");
+        }
+    }
+
+    /**
+     * Time slot parsing - the previous regex check against TimeSlot.parse,
+     * plus Appointment construction cost and retained heap per appointment,
+     * compared with the previous all-String layout
+     */
+    private static void benchmarkTimeSlot(int maxSize) {
+        System.out.println("\n// Time slot parsing and appointment footprint");
+        Pattern regex = Pattern.compile("^([01]?[0-9]|2[0-3]):[0-5][0-9]$");
+        String[] times = new String[TimeSlot.MINUTES_PER_DAY];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = timeFor(i);
+        }
+
+        int operations = Math.max(maxSize, 1_000_000);
+        int matches = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            if (regex.matcher(times[i % times.length].trim()).matches()) matches++;
+        }
+        long regexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            if (TimeSlot.parse(times[i % times.length]) != TimeSlot.INVALID) matches++;
+        }
+        long parserNanos = System.nanoTime() - start;
+        System.out.printf("regex=%.1f ns/op  parser=%.1f ns/op  (matched %,d)%n",
+                (double) regexNanos / operations, (double) parserNanos / operations, matches);
+
+        GeneralPractitioner gp = new GeneralPractitioner(101, "Dr. Smith",
+                "General Medicine", true, 25);
+        int count = Math.min(maxSize, 1_000_000);
+        String[] names = new String[count];
+        String[] mobiles = new String[count];
+        String[] slots = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "Patient " + i;
+            mobiles[i] = mobileFor(i);
+            slots[i] = timeFor(i);
+        }
+
+        // Construction from the same prepared inputs; each layout runs twice and the second pass is timed
+        long legacyNanos = 0;
+        long packedNanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            LegacyAppointment[] legacy = new LegacyAppointment[count];
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                legacy[i] = new LegacyAppointment(names[i], mobiles[i], slots[i], gp);
+            }
+            legacyNanos = System.nanoTime() - start;
+            legacy = null;
+
+            Appointment[] packed = new Appointment[count];
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                packed[i] = new Appointment(names[i], mobiles[i], slots[i], gp);
+            }
+            packedNanos = System.nanoTime() - start;
+            packed = null;
+        }
+        names = null;
+        mobiles = null;
+        slots = null;
+
+        // Every input string is created inside the measured window, so whatever a
+        // layout keeps is counted and whatever it parses and drops is not
+        long before = usedHeap();
+        LegacyAppointment[] legacy = new LegacyAppointment[count];
+        for (int i = 0; i < count; i++) {
+            legacy[i] = new LegacyAppointment("Patient " + i, mobileFor(i), timeFor(i), gp);
+        }
+        long legacyRetained = usedHeap() - before;
+        int legacyBuilt = legacy.length;
+        legacy = null;
+
+        before = usedHeap();
+        Appointment[] packed = new Appointment[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = new Appointment("Patient " + i, mobileFor(i), timeFor(i), gp);
+        }
+        long packedRetained = usedHeap() - before;
+        int packedBuilt = packed.length;
+        packed = null;
+
+        System.out.printf("string layout: construct=%.1f ns/op  retained=%.1f bytes/appointment (%,d built)%n",
+                (double) legacyNanos / count, (double) legacyRetained / count, legacyBuilt);
+        System.out.printf("packed layout: construct=%.1f ns/op  retained=%.1f bytes/appointment (%,d built)%n",
+                (double) packedNanos / count, (double) packedRetained / count, packedBuilt);
+        System.out.printf("change: construct %+.0f%%  retained %+.0f%%  (both include the name string and array slot)%n",
+                100.0 * (packedNanos - legacyNanos) / legacyNanos,
+                100.0 * (packedRetained - legacyRetained) / legacyRetained);
+    }
+
+    /**
+     * Journal append cost and recovery time, plus crash checks against temp
+     * files: a truncated tail record and a torn write must both be dropped
+     */
+    private static void benchmarkJournal(int maxSize) {
+        System.out.println("\n// Appointment journal append and recovery");
+        int doctorCount = 1_000;
+        HealthProfessional[] doctors = new HealthProfessional[doctorCount];
+        for (int d = 0; d < doctorCount; d++) {
+            doctors[d] = new Specialist(d, "Dr. " + d, "Cardiology", "Heart Surgery", 10);
+        }
+        IntFunction<HealthProfessional> lookup = id -> (id >= 0 && id < doctorCount) ? doctors[id] : null;
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("appointment-journal");
+            int bookings = Math.min(maxSize, doctorCount * TimeSlot.MINUTES_PER_DAY);
+
+            BookingEngine engine = new BookingEngine();
+            AppointmentJournal journal = AppointmentJournal.open(directory, engine, lookup);
+            long start = System.nanoTime();
+            for (int i = 0; i < bookings; i++) {
+                Appointment appointment = new Appointment("Patient " + i, mobileFor(i),
+                        timeFor(i / doctorCount), doctors[i % doctorCount]);
+                engine.book(appointment);
+                if (i % 3 == 0) appointment.confirm();
+                if (i % 7 == 0) appointment.transitionTo(AppointmentStatus.CANCELLED);
+                if (i % 11 == 0) appointment.setPatientMobile(mobileFor(bookings + i));
+                if (i % 13 == 0) appointment.setPatientName("Renamed " + i);
+            }
+            long writeNanos = System.nanoTime() - start;
+            long events = (journal.getJournalSize() / AppointmentJournal.RECORD_SIZE) - 1;
+            int expectedSize = engine.size();
+            long[] expected = fingerprints(engine.snapshot());
+            journal.close();
+
+            // Let the old engine go before recovering, as after a restart
+            journal = null;
+            engine = null;
+            System.gc();
+
+            // Reading and folding the journal alone - no doctor resolves, so nothing is restored
+            start = System.nanoTime();
+            AppointmentJournal.open(directory, new BookingEngine(), id -> null).close();
+            long replayNanos = System.nanoTime() - start;
+            System.gc();
+
+            // The first full recovery in this JVM also pays for compiling the
+            // restore code, so it is reported apart from the timed one below
+            start = System.nanoTime();
+            AppointmentJournal.open(directory, new BookingEngine(), lookup).close();
+            long firstNanos = System.nanoTime() - start;
+            System.gc();
+
+            // On few cores the JIT and the collector share the CPU with recovery,
+            // so also time the recovering thread alone
+            java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+            long gcBefore = gcMillis();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            start = System.nanoTime();
+            engine = new BookingEngine();
+            journal = AppointmentJournal.open(directory, engine, lookup);
+            long recoverNanos = System.nanoTime() - start;
+            long recoverCpu = threads.getCurrentThreadCpuTime() - cpuStart;
+            long recoverGc = gcMillis() - gcBefore;
+            boolean consistent = sameBookings(expected, engine.snapshot())
+                    && ScheduleAggregates.of(engine).getDoctorTallies().equals(
+                            engine.getAggregates().getDoctorTallies());
+            System.out.printf("events=%,d  append+book=%.1f ns/event  recovery=%,d ms (%.0f ns/event)  %s%n",
+                    events, (double) writeNanos / events, recoverNanos / 1_000_000,
+                    (double) recoverNanos / events, consistent ? "OK" : "INCONSISTENT");
+            System.out.printf("recovering thread cpu=%,d ms  gc=%,d ms  first recovery (cold JIT)=%,d ms%n",
+                    recoverCpu / 1_000_000, recoverGc, firstNanos / 1_000_000);
+            System.out.printf("replay only=%,d ms (%.0f ns/event)  engine restore=%,d ms%n",
+                    replayNanos / 1_000_000, (double) replayNanos / events,
+                    Math.max(0, recoverNanos - replayNanos) / 1_000_000);
+
+            // Remove one more booking, then cut that last record short
+            engine.cancelByMobile(mobileFor(1));
+            journal.close();
+            Path file = directory.resolve(AppointmentJournal.JOURNAL_FILE);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - AppointmentJournal.RECORD_SIZE / 2);
+            }
+            engine = null;
+            engine = new BookingEngine();
+            journal = AppointmentJournal.open(directory, engine, lookup);
+            System.out.printf("truncated tail: size=%,d  dropped=%,d bytes  %s%n",
+                    engine.size(), journal.getDiscardedBytes(),
+                    engine.size() == expectedSize ? "OK" : "INCONSISTENT");
+
+            // Same again, but scribble over the middle of the last record
+            engine.cancelByMobile(mobileFor(1));
+            journal.close();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}),
+                        channel.size() - AppointmentJournal.RECORD_SIZE / 2);
+            }
+            engine = null;
+            engine = new BookingEngine();
+            journal = AppointmentJournal.open(directory, engine, lookup);
+            System.out.printf("torn write:     size=%,d  dropped=%,d bytes  %s%n",
+                    engine.size(), journal.getDiscardedBytes(),
+                    engine.size() == expectedSize ? "OK" : "INCONSISTENT");
+
+            // A snapshot lets recovery skip the journal written before it
+            journal.snapshot();
+            journal.close();
+            engine = null;
+            start = System.nanoTime();
+            engine = new BookingEngine();
+            journal = AppointmentJournal.open(directory, engine, lookup);
+            System.out.printf("snapshot recovery=%,d ms  size=%,d  %s%n",
+                    (System.nanoTime() - start) / 1_000_000, engine.size(),
+                    sameBookings(expected, engine.snapshot()) ? "OK" : "INCONSISTENT");
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    // One hash per booking over all of its fields, in booking order. Keeping
+    // these instead of copies of the appointments leaves no second schedule
+    // in the heap while recovery is timed, as after a real restart
+    private static long[] fingerprints(List<Appointment> appointments) {
+        long[] fingerprints = new long[appointments.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            Appointment appointment = appointments.get(i);
+            long hash = appointment.getPatientName().hashCode();
+            hash = (hash ^ appointment.getMobileKey()) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ appointment.getSlotMinute()) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ appointment.getDoctorId()) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ appointment.getBookingSequence()) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ appointment.getAppointmentStatus().code()) * 0x9E3779B97F4A7C15L;
+            fingerprints[i] = hash;
+        }
+        return fingerprints;
+    }
+
+    // Same bookings in the same order, field by field
+    private static boolean sameBookings(long[] expected, List<Appointment> actual) {
+        return Arrays.equals(expected, fingerprints(actual));
+    }
+
+    /**
+     * Schedule dump throughput - the previous println/String.format output
+     * against ScheduleRenderer, both writing to a discarding stream
+     */
+    private static void benchmarkRendering(int maxSize) {
+        System.out.println("\n// Schedule rendering throughput");
+        GeneralPractitioner gp = new GeneralPractitioner(101, "Dr. Smith",
+                "General Medicine", true, 25);
+        int count = Math.min(maxSize, 1_000_000);
+        Appointment[] rows = new Appointment[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Appointment("Patient " + i, mobileFor(i), timeFor(i), gp);
+        }
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (Appointment row : rows) {
+                // Same calls the detail and summary paths used to make
+                sink.println("=== Appointment Details ===");
+                sink.println("Patient: " + row.getPatientName());
+                sink.println("Mobile: " + row.getPatientMobile());
+                sink.println("Time: " + row.getTimeSlot());
+                sink.println("Doctor: " + row.getDoctor().getName());
+                sink.println("Doctor ID: " + row.getDoctor().getId());
+                sink.println("Doctor Type: " + row.getDoctor().getProfessionalType());
+                sink.println("Status: " + row.getStatus());
+                sink.println("===========================");
+                sink.println(String.format("%s - %s with %s",
+                        row.getTimeSlot(), row.getPatientName(), row.getDoctor().getName()));
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ScheduleRenderer renderer = new ScheduleRenderer(sink);
+            for (Appointment row : rows) {
+                renderer.renderDetails(row);
+                renderer.renderSummary(row);
+            }
+            renderer.flush();
+            long rendererNanos = System.nanoTime() - start;
+
+            System.out.printf("rows=%,d  println+format=%,.0f rows/s  renderer=%,.0f rows/s%n",
+                    count, count / (legacyNanos / 1e9), count / (rendererNanos / 1e9));
+        }
+    }
+
+    /**
+     * Referral routing across 10k specialists - a loop over acceptReferral
+     * against ReferralIndex, checking both return the same specialists
+     */
+    private static void benchmarkReferral() {
+        System.out.println("\n// Referral routing at 10k specialists");
+        Random random = new Random(7);
+        String[] vocabulary = new String[2_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = "term" + Integer.toString(i, 36);
+        }
+
+        List<Specialist> specialists = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String specialty = vocabulary[random.nextInt(vocabulary.length)]
+                    + (random.nextBoolean() ? " " + vocabulary[random.nextInt(vocabulary.length)] : "");
+            specialists.add(new Specialist(i, "Dr. " + i, "Dept " + (i % 50),
+                    specialty.toUpperCase(), random.nextInt(30)));
+        }
+        String[] conditions = new String[1_000];
+        for (int i = 0; i < conditions.length; i++) {
+            StringBuilder condition = new StringBuilder("Patient presents with");
+            for (int w = 0; w < 12; w++) {
+                condition.append(' ').append(vocabulary[random.nextInt(vocabulary.length)]);
+            }
+            conditions[i] = condition.toString();
+        }
+
+        long start = System.nanoTime();
+        ReferralIndex index = new ReferralIndex(specialists);
+        long buildNanos = System.nanoTime() - start;
+
+        for (int round = 0; round < 3; round++) {
+            int naiveMatches = 0;
+            start = System.nanoTime();
+            for (String condition : conditions) {
+                for (Specialist specialist : specialists) {
+                    if (specialist.acceptReferral(condition)) naiveMatches++;
+                }
+            }
+            long naiveNanos = System.nanoTime() - start;
+
+            int indexMatches = 0;
+            start = System.nanoTime();
+            for (String condition : conditions) {
+                indexMatches += index.findSpecialists(condition).size();
+            }
+            long indexNanos = System.nanoTime() - start;
+
+            System.out.printf("build=%,d ms  naive=%,.0f us/referral  index=%,.1f us/referral  %s%n",
+                    buildNanos / 1_000_000, naiveNanos / 1e3 / conditions.length,
+                    indexNanos / 1e3 / conditions.length,
+                    naiveMatches == indexMatches ? "OK (" + indexMatches + " matches)" : "MISMATCH");
+        }
+    }
+
+    /**
+     * Bulk import throughput - CSV rows with a share of bad mobiles, unknown
+     * doctors and slot clashes, checking every row is either booked or reported
+     */
+    private static void benchmarkImport(int maxSize) {
+        System.out.println("\n// Bulk import throughput");
+        int count = Math.min(maxSize, 1_000_000);
+        int doctorCount = count / DoctorSchedule.MINUTES_PER_DAY + 1;
+        List<String> rows = new ArrayList<>(count + 1);
+        rows.add("patientName,patientMobile,timeSlot,doctorId");
+        int expectedRejects = 0;
+        for (int i = 0; i < count; i++) {
+            int doctorId = 1_000 + i / DoctorSchedule.MINUTES_PER_DAY;
+            String mobile = mobileFor(i);
+            String time = timeFor(i);
+            if (i % 100 == 99) {
+                mobile = "12345";
+                expectedRejects++;
+            } else if (i % 250 == 1) {
+                doctorId = -1;
+                expectedRejects++;
+            } else if (i % 500 == 3) {
+                time = timeFor(i - 1);  // clashes with the previous row's slot
+                expectedRejects++;
+            }
+            rows.add("Patient " + i + "," + mobile + "," + time + "," + doctorId);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            ProfessionalRegistry registry = new ProfessionalRegistry();
+            for (int d = 0; d < doctorCount; d++) {
+                registry.register(new Specialist(1_000 + d, "Dr. " + d, "Dept " + (d % 20), "Cardiology", 10));
+            }
+            BookingEngine engine = new BookingEngine();
+            ImportReport report = new BulkImporter(engine, registry).importRows(rows);
+
+            boolean consistent = report.getAcceptedCount() == engine.size()
+                    && report.getAcceptedCount() + report.getRejectedCount() == count
+                    && report.getRejectedCount() == expectedRejects;
+            System.out.printf("rows=%,d  accepted=%,d  rejected=%,d  %,d ms  %,.0f rows/s  %s%n",
+                    count, report.getAcceptedCount(), report.getRejectedCount(),
+                    report.getElapsedMillis(), count / (report.getElapsedMillis() / 1e3 + 1e-9),
+                    consistent ? "OK" : "MISMATCH");
+        }
+    }
+
+    /**
+     * Hot path suite at parameterized sizes - appointment construction,
+     * cancellation, referral routing, professional lookup and rendering,
+     * with latency percentiles and allocation per operation written as JSON.
+     * Not part of "all"; use -Xmx large enough for the chosen max size
+     */
+    private static void benchmarkHotPaths(int maxSize, Path resultsFile) {
+        System.out.println("\n// Hot path suite (results in " + resultsFile + ")");
+        MicroBenchmark bench = new MicroBenchmark(5, 5, 2_000);
+        measure(bench, BenchmarkTargets.APPOINTMENT_CONSTRUCT, null, 0);
+        measure(bench, BenchmarkTargets.RENDER_DETAILS, null, 0);
+
+        for (int size = 1_000; size <= Math.min(maxSize, 10_000_000); size *= 10) {
+            measure(bench, BenchmarkTargets.CANCEL_AND_REBOOK, "appointments", size);
+            measure(bench, BenchmarkTargets.FIND_BY_MOBILE, "appointments", size);
+        }
+        for (int professionals = 10; professionals <= 100_000; professionals *= 100) {
+            measure(bench, BenchmarkTargets.REGISTRY_FIND_BY_ID, "professionals", professionals);
+            measure(bench, BenchmarkTargets.REFERRAL_INDEX, "professionals", professionals);
+            if (professionals <= 1_000) {
+                measure(bench, BenchmarkTargets.REFERRAL_SCAN, "professionals", professionals);
+            }
+        }
+
+        try {
+            Files.writeString(resultsFile, bench.toJson());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + resultsFile, e);
+        }
+    }
+
+    // One target at one size; sizeName is null for targets without data
+    private static void measure(MicroBenchmark bench, String target, String sizeName, int size) {
+        Map<String, Object> params = (sizeName != null) ? Map.of(sizeName, size) : Map.of();
+        System.out.println(bench.measure(target, params, BenchmarkTargets.create(target, size)::applyAsLong));
+    }
+
+    /**
+     * Booking metrics overhead - validated construction, booking, confirming,
+     * looking up and cancelling on two engines, one with metrics on and one
+     * with them off. The engines take turns in blocks of operations so heap
+     * growth and compilation land on both alike, and collection pauses are
+     * taken out of each block's time; rounds repeat this to show how stable
+     * the figure is
+     */
+    private static void benchmarkMetricsOverhead(int maxSize) {
+        System.out.println("\n// Booking metrics overhead");
+        int count = Math.min(maxSize, 200_000);
+        int warmupRounds = 2;
+        int rounds = warmupRounds + 21;
+        Specialist[] doctors = new Specialist[count / DoctorSchedule.MINUTES_PER_DAY + 1];
+        for (int d = 0; d < doctors.length; d++) {
+            doctors[d] = new Specialist(1_000 + d, "Dr. " + d, "Cardiology", "Heart Surgery", 10);
+        }
+        String[] names = new String[count];
+        String[] mobiles = new String[count];
+        String[] times = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "Patient " + i;
+            mobiles[i] = mobileFor(i);
+            times[i] = timeFor(i);
+        }
+
+        double[] overheads = new double[rounds - warmupRounds];
+        long[] total = new long[2];
+        boolean gated = true;
+        BookingMetrics metrics = null;
+        for (int round = 0; round < rounds; round++) {
+            // Index 0 runs with metrics off, index 1 with them on
+            BookingEngine[] engines = {new BookingEngine(), new BookingEngine()};
+            Appointment[][] rows = new Appointment[2][count];
+            long[] nanos = new long[2];
+            long[] validated = new long[2];
+            usedHeap();
+
+            for (int phase = 0; phase < 4; phase++) {
+                for (int from = 0; from < count; from += METRICS_BLOCK) {
+                    int to = Math.min(count, from + METRICS_BLOCK);
+                    for (int turn = 0; turn < 2; turn++) {
+                        int mode = turn ^ ((from / METRICS_BLOCK) & 1);
+                        engines[mode].getMetrics().setEnabled(mode == 1);
+                        long before = BookingMetrics.getValidationLatency().getCount();
+                        long gcBefore = gcMillis();
+                        long start = System.nanoTime();
+                        runMetricsPhase(phase, engines[mode], rows[mode], from, to,
+                                names, mobiles, times, doctors);
+                        long elapsed = System.nanoTime() - start;
+                        nanos[mode] += Math.max(0, elapsed - (gcMillis() - gcBefore) * 1_000_000);
+                        validated[mode] += BookingMetrics.getValidationLatency().getCount() - before;
+                    }
+                }
+            }
+            // Only a sample of validations is timed, and none with metrics off
+            gated &= validated[0] == 0 && validated[1] > 0 && validated[1] < count;
+            metrics = engines[1].getMetrics();
+
+            if (round >= warmupRounds) {
+                overheads[round - warmupRounds] = 100.0 * (nanos[1] - nanos[0]) / nanos[0];
+                total[0] += nanos[0];
+                total[1] += nanos[1];
+            }
+        }
+        metrics.setEnabled(true);
+
+        int measured = overheads.length;
+        java.util.Arrays.sort(overheads);
+        System.out.printf("ops=%,d  disabled=%,d ms  enabled=%,d ms  overhead=%+.1f%% median of %d rounds"
+                        + "  spread=[%+.1f%%, %+.1f%%]%n",
+                count * 5, total[0] / measured / 1_000_000, total[1] / measured / 1_000_000,
+                overheads[measured / 2], measured, overheads[0], overheads[measured - 1]);
+
+        boolean consistent = gated && metrics.getCreatedCount() == count && metrics.getConfirmedCount() == count
+                && metrics.getLookupCount() == count && metrics.getCancelledCount() == count
+                && metrics.getBookingCount(doctors[0].getId()) == Math.min(count, DoctorSchedule.MINUTES_PER_DAY);
+        System.out.printf("create p50=%,d ns p99=%,d ns  cancel p99=%,d ns  lookup p99=%,d ns"
+                        + "  validation p99=%,d ns  %s%n",
+                metrics.getCreateP50Nanos(), metrics.getCreateP99Nanos(), metrics.getCancelP99Nanos(),
+                metrics.getLookupP99Nanos(), metrics.getValidationP99Nanos(), consistent ? "OK" : "MISMATCH");
+    }
+
+    // Operations each engine runs before the other takes its turn
+    private static final int METRICS_BLOCK = 1_000;
+
+    // Collection time so far across all collectors, in milliseconds
+    private static long gcMillis() {
+        long total = 0;
+        for (java.lang.management.GarbageCollectorMXBean collector
+                : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    // One block of one phase: construct and book, confirm, look up, then cancel
+    private static void runMetricsPhase(int phase, BookingEngine engine, Appointment[] rows, int from, int to,
+                                        String[] names, String[] mobiles, String[] times, Specialist[] doctors) {
+        for (int i = from; i < to; i++) {
+            switch (phase) {
+                case 0:
+                    rows[i] = new Appointment(names[i], mobiles[i], times[i],
+                            doctors[i / DoctorSchedule.MINUTES_PER_DAY]);
+                    engine.book(rows[i]);
+                    break;
+                case 1:
+                    rows[i].confirm();
+                    break;
+                case 2:
+                    engine.findByMobile(mobiles[i]);
+                    break;
+                default:
+                    engine.cancelByMobile(mobiles[i]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Outcome reporting from booking threads - synchronous println to a file
+     * against publishing to an EventLog whose console sink writes the same file
+     */
+    private static void benchmarkEventLog(int maxSize) {
+        System.out.println("\n// Event log publish latency");
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int perThread = Math.min(maxSize, 200_000) / threads;
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("events-bench");
+            for (int round = 0; round < 3; round++) {
+                try (PrintStream direct = new PrintStream(Files.newOutputStream(directory.resolve("direct.log")));
+                     PrintStream sinkFile = new PrintStream(Files.newOutputStream(directory.resolve("sink.log")))) {
+                    LatencyRecorder printLatency = new LatencyRecorder();
+                    runPublishers(threads, perThread, printLatency,
+                            i -> direct.println("Appointment created: Patient " + i));
+
+                    EventLog log = new EventLog();
+                    log.addSink(new ConsoleSink(sinkFile));
+                    LatencyRecorder publishLatency = new LatencyRecorder();
+                    String mobile = mobileFor(0);
+                    runPublishers(threads, perThread, publishLatency,
+                            i -> log.publish(BookingEvent.created(mobile, "Patient " + i)));
+                    log.close();
+
+                    long delivered = log.getPublishedCount();
+                    boolean consistent = delivered + log.getDroppedCount() == (long) threads * perThread;
+                    System.out.printf("threads=%d  println p50=%,d ns p99=%,d ns  publish p50=%,d ns p99=%,d ns"
+                                    + "  delivered=%,d dropped=%,d  %s%n",
+                            threads, printLatency.getValueAtPercentile(50), printLatency.getValueAtPercentile(99),
+                            publishLatency.getValueAtPercentile(50), publishLatency.getValueAtPercentile(99),
+                            delivered, log.getDroppedCount(), consistent ? "OK" : "MISMATCH");
+                }
+            }
+            int lost = 0;
+            for (int attempt = 0; attempt < 50; attempt++) {
+                if (!closeDeliversEverything(threads * 4)) lost++;
+            }
+            System.out.println("close while publishing: " + ((lost == 0) ? "OK" : "LOST EVENTS in " + lost + " of 50"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    // Close a log while publishers are still running - every event it accepted
+    // must reach the sink, and every other one must be counted as dropped
+    private static boolean closeDeliversEverything(int threads) {
+        int attempts = 20_000;
+        EventLog log = new EventLog(1024);
+        long[] received = new long[1];
+        log.addSink(event -> received[0]++);
+        BookingEvent event = BookingEvent.warning("close race");
+        Thread[] publishers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            publishers[t] = new Thread(() -> {
+                for (int i = 0; i < attempts; i++) {
+                    log.publish(event);
+                }
+            });
+            publishers[t].start();
+        }
+        LockSupport.parkNanos(1_000_000);
+        log.close();
+        for (Thread publisher : publishers) {
+            joinQuietly(publisher);
+        }
+        // close joined the consumer thread, so its count is visible here
+        return received[0] == log.getPublishedCount()
+                && log.getPublishedCount() + log.getDroppedCount() == (long) threads * attempts;
+    }
+
+    private static void runPublishers(int threads, int perThread, LatencyRecorder latency,
+                                      java.util.function.IntConsumer operation) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < perThread; i++) {
+                    long begin = System.nanoTime();
+                    operation.accept(i);
+                    latency.recordSince(begin);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            joinQuietly(worker);
+        }
+    }
+
+    /**
+     * Time-range, conflict and first-fit free-slot queries at 100k doctors,
+     * each checked against a brute-force scan of the booked appointments
+     */
+    private static void benchmarkRangeQueries(int maxSize) {
+        System.out.println("\n// Range and free-slot queries at 100k doctors");
+        int doctorCount = 100_000;
+        int departments = 100;
+        int bookings = Math.min(maxSize, 500_000);
+        Random random = new Random(5);
+
+        List<List<HealthProfessional>> byDepartment = new ArrayList<>();
+        for (int d = 0; d < departments; d++) {
+            byDepartment.add(new ArrayList<>());
+        }
+        HealthProfessional[] doctors = new HealthProfessional[doctorCount];
+        for (int d = 0; d < doctorCount; d++) {
+            doctors[d] = (d % 4 == 0)
+                    ? new GeneralPractitioner(d, "Dr. " + d, "Dept " + (d % departments), true, 8)
+                    : new Specialist(d, "Dr. " + d, "Dept " + (d % departments), "Cardiology", 10);
+            byDepartment.get(d % departments).add(doctors[d]);
+        }
+
+        // Bookings cluster in working hours so free runs are not trivially at 00:00
+        BookingEngine engine = new BookingEngine();
+        for (int i = 0; i < bookings; i++) {
+            HealthProfessional doctor = doctors[random.nextInt(doctorCount)];
+            int minute = 8 * 60 + random.nextInt(10 * 60);
+            Appointment appointment = new Appointment("Patient " + i, mobileFor(i),
+                    TimeSlot.format(minute), doctor);
+            if (!engine.book(appointment)) {
+                continue;
+            }
+            int change = random.nextInt(20);
+            if (change < 2) {
+                appointment.transitionTo(AppointmentStatus.CANCELLED);
+            } else if (change == 2) {
+                appointment.setTimeSlot(TimeSlot.format(random.nextInt(DoctorSchedule.MINUTES_PER_DAY)));
+            }
+        }
+
+        // Brute-force oracle: every active appointment by doctor and minute
+        java.util.HashMap<Long, Appointment> oracle = new java.util.HashMap<>();
+        for (Appointment appointment : engine) {
+            if (appointment.isValid()) {
+                oracle.put(((long) appointment.getDoctorId() << 11) | appointment.getSlotMinute(), appointment);
+            }
+        }
+
+        int queries = 20_000;
+        int mismatches = 0;
+        long rangeNanos = 0;
+        long scanNanos = 0;
+        List<Appointment> all = engine.snapshot();
+        for (int q = 0; q < queries; q++) {
+            int doctorId = random.nextInt(doctorCount);
+            int from = random.nextInt(DoctorSchedule.MINUTES_PER_DAY);
+            int to = from + random.nextInt(DoctorSchedule.MINUTES_PER_DAY - from + 1);
+
+            long start = System.nanoTime();
+            List<Appointment> found = engine.findByDoctorBetween(doctorId, from, to);
+            rangeNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Appointment> expected = new ArrayList<>();
+            if (q < 200) {
+                // The full-list scan the range index replaces, timed on a sample
+                for (Appointment appointment : all) {
+                    if (appointment.getDoctorId() == doctorId && appointment.isValid()
+                            && appointment.getSlotMinute() >= from && appointment.getSlotMinute() < to) {
+                        expected.add(appointment);
+                    }
+                }
+                expected.sort(java.util.Comparator.comparingInt(Appointment::getSlotMinute));
+                scanNanos += System.nanoTime() - start;
+            } else {
+                for (int minute = from; minute < to; minute++) {
+                    Appointment appointment = oracle.get(((long) doctorId << 11) | minute);
+                    if (appointment != null) expected.add(appointment);
+                }
+            }
+            if (!found.equals(expected)) mismatches++;
+
+            int minute = random.nextInt(DoctorSchedule.MINUTES_PER_DAY);
+            if (engine.findConflict(doctorId, minute) != oracle.get(((long) doctorId << 11) | minute)) {
+                mismatches++;
+            }
+        }
+
+        long freeNanos = 0;
+        int freeQueries = 2_000;
+        for (int q = 0; q < freeQueries; q++) {
+            List<HealthProfessional> department = byDepartment.get(random.nextInt(departments));
+            int from = 8 * 60 + random.nextInt(9 * 60);
+            int length = 15 + random.nextInt(60);
+
+            long start = System.nanoTime();
+            FreeSlot slot = engine.findFirstFreeSlot(department, from, length);
+            freeNanos += System.nanoTime() - start;
+
+            // Oracle: try every start minute for every doctor, minute by minute
+            HealthProfessional bestDoctor = null;
+            int bestMinute = -1;
+            for (int m = from; m + length <= DoctorSchedule.MINUTES_PER_DAY && bestDoctor == null; m++) {
+                for (HealthProfessional doctor : department) {
+                    if (!engine.canAcceptNewPatient(doctor)) continue;
+                    boolean free = true;
+                    for (int k = m; k < m + length && free; k++) {
+                        free = !oracle.containsKey(((long) doctor.getId() << 11) | k);
+                    }
+                    if (free) {
+                        bestDoctor = doctor;
+                        bestMinute = m;
+                        break;
+                    }
+                }
+            }
+            boolean same = (slot == null) ? bestDoctor == null
+                    : slot.getDoctor() == bestDoctor && slot.getMinute() == bestMinute;
+            if (!same) mismatches++;
+        }
+
+        System.out.printf("doctors=%,d  bookings=%,d  range=%,.0f ns/query  full scan=%,.0f us/query"
+                        + "  first-fit=%,.1f us/department  %s%n",
+                doctorCount, engine.size(), (double) rangeNanos / queries, scanNanos / 1e3 / 200,
+                freeNanos / 1e3 / freeQueries, mismatches == 0 ? "OK" : mismatches + " MISMATCHES");
+    }
+
+    /**
+     * BookingServer under load - concurrent virtual-thread clients each
+     * create, look up and cancel a booking over HTTP on localhost.
+     * Not part of "all"; every client holds two sockets, so raise the open
+     * file limit for 10k+ clients
+     */
+    private static void benchmarkServer(int maxSize, int clients) {
+        System.out.println("\n// Booking server load at " + clients + " concurrent clients");
+        ProfessionalRegistry registry = new ProfessionalRegistry();
+        for (int d = 0; d < 200; d++) {
+            registry.register(new Specialist(1_000 + d, "Dr. " + d, "Cardiology", "Heart Surgery", 10));
+        }
+        BookingEngine engine = new BookingEngine();
+        int rounds = Math.max(1, Math.min(maxSize, 100_000) / (clients * 3));
+
+        try (BookingServer server = new BookingServer(engine, registry, new InetSocketAddress("127.0.0.1", 0));
+             java.util.concurrent.ExecutorService clientThreads =
+                     java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort() + "/appointments";
+            HttpClient http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(clientThreads)
+                    .connectTimeout(java.time.Duration.ofSeconds(30))
+                    .build();
+
+            LatencyRecorder latency = new LatencyRecorder();
+            AtomicInteger failures = new AtomicInteger();
+            AtomicInteger created = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(clients);
+            for (int c = 0; c < clients; c++) {
+                final int client = c;
+                clientThreads.execute(() -> {
+                    awaitQuietly(start);
+                    for (int r = 0; r < rounds; r++) {
+                        int row = client * rounds + r;
+                        String mobile = mobileFor(row);
+                        String form = "patientName=Patient+" + row + "&patientMobile=" + mobile
+                                + "&timeSlot=" + timeFor(row / 200) + "&doctorId=" + (1_000 + row % 200);
+                        int status = send(http, latency, HttpRequest.newBuilder(URI.create(base))
+                                .header("Content-Type", "application/x-www-form-urlencoded")
+                                .POST(HttpRequest.BodyPublishers.ofString(form)).build());
+                        if (status == 201) created.incrementAndGet();
+                        else if (status != 409) failures.incrementAndGet();
+
+                        URI byMobile = URI.create(base + "?patientMobile=" + mobile);
+                        status = send(http, latency, HttpRequest.newBuilder(byMobile).GET().build());
+                        if (status != 200 && status != 404) failures.incrementAndGet();
+                        status = send(http, latency, HttpRequest.newBuilder(byMobile).DELETE().build());
+                        if (status != 200 && status != 404) failures.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            awaitQuietly(done);
+            long elapsed = System.nanoTime() - begin;
+
+            long requests = latency.getCount();
+            boolean consistent = failures.get() == 0 && engine.isEmpty()
+                    && created.get() == engine.getMetrics().getCreatedCount();
+            System.out.printf("clients=%,d  requests=%,d  %,.0f req/s  p50=%,.2f ms  p99=%,.2f ms"
+                            + "  max=%,.1f ms  failures=%d  %s%n",
+                    clients, requests, requests / (elapsed / 1e9),
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                    latency.getMax() / 1e6, failures.get(), consistent ? "OK" : "INCONSISTENT");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Status code of one timed request, or -1 if it failed outright
+    private static int send(HttpClient http, LatencyRecorder latency, HttpRequest request) {
+        long start = System.nanoTime();
+        try {
+            int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            latency.recordSince(start);
+            return status;
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Patients holding several bookings with different doctors - per-patient
+     * lookup and cancel cost, plus identity checks: every appointment is a
+     * distinct hash key and mobile changes move bookings between patients
+     */
+    private static void benchmarkPatientIndex(int maxSize) {
+        System.out.println("\n// Patient index with multiple bookings per patient");
+        int perPatient = 4;
+        int patients = Math.min(maxSize, 400_000) / perPatient;
+        Specialist[] doctors = new Specialist[patients * perPatient / DoctorSchedule.MINUTES_PER_DAY + 1];
+        for (int d = 0; d < doctors.length; d++) {
+            doctors[d] = new Specialist(1_000 + d, "Dr. " + d, "Cardiology", "Heart Surgery", 10);
+        }
+
+        BookingEngine engine = new BookingEngine();
+        List<Appointment> batch = new ArrayList<>(patients * perPatient);
+        for (int i = 0; i < patients * perPatient; i++) {
+            // Consecutive rows go to different doctors, so a patient spans several segments
+            batch.add(new Appointment("Patient " + i % patients, mobileFor(i % patients), timeFor(i),
+                    doctors[i / DoctorSchedule.MINUTES_PER_DAY]));
+        }
+        engine.bookAll(batch);
+        boolean consistent = new java.util.HashSet<>(batch).size() == batch.size();
+
+        Random random = new Random(3);
+        int operations = Math.min(SAMPLE_OPERATIONS, patients);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            consistent &= engine.findByMobile(mobileFor(random.nextInt(patients))).size() == perPatient;
+        }
+        long lookupNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Appointment appointment = batch.get(i * perPatient);
+            consistent &= engine.cancelById(appointment.getId()) == appointment;
+        }
+        long cancelNanos = System.nanoTime() - start;
+
+        // Moving a booking to another patient updates both patients' lookups
+        Appointment moved = batch.get(batch.size() - 1);
+        String from = moved.getPatientMobile();
+        String to = mobileFor(patients + 1);
+        moved.setPatientMobile(to);
+        consistent &= engine.findByMobile(to).equals(List.of(moved))
+                && !engine.findByMobile(from).contains(moved)
+                && engine.cancelAllByMobile(to).equals(List.of(moved));
+
+        System.out.printf("patients=%,d  bookings/patient=%d  lookup=%,.0f ns/op  cancelById=%,.0f ns/op  %s%n",
+                patients, perPatient, (double) lookupNanos / operations, (double) cancelNanos / operations,
+                consistent ? "OK" : "MISMATCH");
+    }
+
+    /**
+     * Mobile validation - the previous trim, strip-spaces and regex check
+     * against MobileNumber.parse, after checking the two agree on random
+     * inputs built from digits, whitespace and near-miss characters
+     */
+    private static void benchmarkMobileParsing(int maxSize) {
+        System.out.println("\n// Mobile number validation");
+        Pattern regex = Pattern.compile("^04[0-9]{8}$");
+        char[] alphabet = {'0', '4', '0', '4', '1', '5', '9', ' ', ' ', '\t', '\n', '\u0000', '\u00a0',
+                '/', ':', '+', '-', 'a', '\u0664'};
+        Random random = new Random(11);
+        int samples = Math.max(maxSize, 1_000_000);
+        int accepted = 0;
+        int mismatches = 0;
+        StringBuilder candidate = new StringBuilder(20);
+        for (int i = 0; i < samples; i++) {
+            // Start from a valid number half the time, then mutate it, so both outcomes are common
+            candidate.setLength(0);
+            if (random.nextBoolean()) {
+                candidate.append(mobileFor(random.nextInt(100_000_000)));
+                for (int edits = random.nextInt(3); edits > 0; edits--) {
+                    int at = random.nextInt(candidate.length() + 1);
+                    char c = alphabet[random.nextInt(alphabet.length)];
+                    if (random.nextBoolean() && at < candidate.length()) {
+                        candidate.setCharAt(at, c);
+                    } else {
+                        candidate.insert(at, c);
+                    }
+                }
+            } else {
+                for (int length = random.nextInt(16); length > 0; length--) {
+                    candidate.append(alphabet[random.nextInt(alphabet.length)]);
+                }
+            }
+            String mobile = candidate.toString();
+            String clean = mobile.trim().replace(" ", "");
+            boolean expected = regex.matcher(clean).matches();
+            long parsed = MobileNumber.parse(mobile);
+            if (expected != (parsed != MobileNumber.INVALID) || (expected && parsed != Long.parseLong(clean))) {
+                mismatches++;
+            }
+            if (expected) accepted++;
+        }
+        System.out.printf("equivalence: %,d inputs (%,d valid)  %s%n", samples, accepted,
+                mismatches == 0 ? "OK" : mismatches + " MISMATCHES");
+
+        String[] mobiles = new String[4096];
+        for (int i = 0; i < mobiles.length; i++) {
+            String mobile = mobileFor(random.nextInt(100_000_000));
+            mobiles[i] = (i % 4 == 0) ? " " + mobile.substring(0, 4) + " " + mobile.substring(4) : mobile;
+        }
+        int operations = Math.max(maxSize, 1_000_000);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            String clean = mobiles[i & (mobiles.length - 1)].trim().replace(" ", "");
+            if (regex.matcher(clean).matches()) checksum += clean.length();
+        }
+        long regexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            checksum += MobileNumber.parse(mobiles[i & (mobiles.length - 1)]);
+        }
+        long parserNanos = System.nanoTime() - start;
+        System.out.printf("regex=%.1f ns/op  parser=%.1f ns/op  (checksum %d)%n",
+                (double) regexNanos / operations, (double) parserNanos / operations, checksum);
+    }
+
+    /**
+     * Binary schedule export and import against a text dump of the same
+     * schedule, plus round-trip checks: the reloaded schedule matches the
+     * original field by field and re-exports to identical bytes, and a
+     * corrupted or truncated file is rejected
+     */
+    private static void benchmarkScheduleSnapshot(int maxSize) {
+        System.out.println("\n// Schedule snapshot export and import");
+        int doctorCount = 1_000;
+        ProfessionalRegistry registry = new ProfessionalRegistry();
+        HealthProfessional[] doctors = new HealthProfessional[doctorCount];
+        for (int d = 0; d < doctorCount; d++) {
+            doctors[d] = registry.register((d % 3 == 0)
+                    ? new GeneralPractitioner(d, "Dr. " + d, "General Medicine", d % 2 == 0, 1_000)
+                    : (d % 3 == 1) ? new Specialist(d, "Dr. " + d, "Cardiology", "Heart Surgery", d % 20)
+                    : new HealthProfessional(d, "Dr. " + d, "Radiology"));
+        }
+
+        int bookings = Math.min(maxSize, doctorCount * TimeSlot.MINUTES_PER_DAY);
+        BookingEngine engine = new BookingEngine();
+        for (int i = 0; i < bookings; i++) {
+            // Names repeat across patients, as they do in real schedules
+            Appointment appointment = new Appointment("Patient " + i % 50_000, mobileFor(i),
+                    timeFor(i / doctorCount), doctors[i % doctorCount]);
+            engine.book(appointment);
+            if (i % 3 == 0) appointment.confirm();
+            if (i % 7 == 0) appointment.transitionTo(AppointmentStatus.CANCELLED);
+        }
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("schedule-snapshot");
+            Path text = directory.resolve("schedule.txt");
+            Path binary = directory.resolve("schedule.bin");
+
+            long start = System.nanoTime();
+            try (java.io.Writer writer = Files.newBufferedWriter(text)) {
+                ScheduleRenderer renderer = new ScheduleRenderer(writer);
+                for (HealthProfessional doctor : registry.getAll()) {
+                    renderer.renderProfessional(doctor);
+                }
+                for (Appointment appointment : engine) {
+                    renderer.renderDetails(appointment);
+                }
+                renderer.flush();
+            }
+            long textNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long bytes = ScheduleSnapshot.export(registry, engine, binary);
+            long exportNanos = System.nanoTime() - start;
+
+            ProfessionalRegistry loadedRegistry = new ProfessionalRegistry();
+            BookingEngine loaded = new BookingEngine();
+            start = System.nanoTime();
+            ScheduleSnapshot.Result result = ScheduleSnapshot.load(binary, loadedRegistry, loaded);
+            long importNanos = System.nanoTime() - start;
+
+            long textBytes = Files.size(text);
+            System.out.printf("appointments=%,d  text=%,d bytes (%.1f B/row, %,.0f MB/s)"
+                            + "  binary=%,d bytes (%.1f B/row)%n",
+                    engine.size(), textBytes, (double) textBytes / engine.size(), textBytes / (textNanos / 1e3),
+                    bytes, (double) bytes / engine.size());
+            System.out.printf("binary export=%,.0f MB/s (%,.0f rows/s)  import=%,.0f MB/s (%,.0f rows/s)%n",
+                    bytes / (exportNanos / 1e3), engine.size() / (exportNanos / 1e9),
+                    bytes / (importNanos / 1e3), engine.size() / (importNanos / 1e9));
+
+            boolean consistent = result.getAppointments() == engine.size() && result.getSkipped() == 0
+                    && loadedRegistry.size() == registry.size();
+            for (HealthProfessional doctor : registry.getAll()) {
+                consistent &= doctor.toString().equals(loadedRegistry.findById(doctor.getId()).toString())
+                        && doctor.getDepartment().equals(loadedRegistry.findById(doctor.getId()).getDepartment());
+            }
+            List<Appointment> expected = engine.snapshot();
+            List<Appointment> actual = loaded.snapshot();
+            consistent &= expected.size() == actual.size();
+            for (int i = 0; consistent && i < expected.size(); i++) {
+                Appointment a = expected.get(i);
+                Appointment b = actual.get(i);
+                consistent = a.getPatientName().equals(b.getPatientName())
+                        && a.getMobileKey() == b.getMobileKey() && a.getSlotMinute() == b.getSlotMinute()
+                        && a.getDoctorId() == b.getDoctorId() && a.getBookingSequence() == b.getBookingSequence()
+                        && a.getAppointmentStatus() == b.getAppointmentStatus();
+            }
+            Path again = directory.resolve("again.bin");
+            ScheduleSnapshot.export(loadedRegistry, loaded, again);
+            consistent &= Files.mismatch(binary, again) == -1;
+            System.out.println("round trip: " + (consistent ? "OK" : "MISMATCH"));
+
+            // A doctor missing from the registry could not be resolved on load, so export refuses
+            BookingEngine stray = new BookingEngine();
+            stray.book(new Appointment("Patient Stray", mobileFor(1), "09:00",
+                    new Specialist(doctorCount, "Dr. Stray", "Cardiology", "Heart Surgery", 5)));
+            boolean strayRejected = false;
+            try {
+                ScheduleSnapshot.export(registry, stray, again);
+            } catch (IllegalArgumentException e) {
+                strayRejected = Files.mismatch(binary, again) == -1;
+            }
+            System.out.println("unregistered doctor: " + (strayRejected ? "rejected OK" : "ACCEPTED"));
+
+            // A flipped byte fails the checksum; a cut file fails before the trailer
+            try (FileChannel channel = FileChannel.open(again, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer one = ByteBuffer.allocate(1);
+                channel.read(one, bytes / 2);
+                one.put(0, (byte) (one.get(0) ^ 0x01)).rewind();
+                channel.write(one, bytes / 2);
+            }
+            boolean corruptRejected = rejectsSnapshot(again);
+            try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.WRITE)) {
+                channel.truncate(bytes - 3);
+            }
+            boolean truncatedRejected = rejectsSnapshot(binary);
+
+            // Every one of these must fail cleanly, wherever the damage lands
+            Path damaged = directory.resolve("damaged.bin");
+            Random random = new Random(19);
+            int sweep = 200;
+            int sweepRejected = 0;
+            for (int i = 0; i < sweep; i++) {
+                byte[] content = Files.readAllBytes(again);
+                int at = (i < 16) ? i : random.nextInt(content.length);
+                content[at] = (byte) (content[at] ^ (1 << random.nextInt(8)));
+                Files.write(damaged, content);
+                if (rejectsSnapshot(damaged)) {
+                    sweepRejected++;
+                }
+            }
+            System.out.printf("corrupt byte: %s  truncated: %s  flip sweep: %d/%d %s%n",
+                    corruptRejected ? "rejected OK" : "ACCEPTED", truncatedRejected ? "rejected OK" : "ACCEPTED",
+                    sweepRejected, sweep, (sweepRejected == sweep) ? "rejected OK" : "MISMATCH");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    // Rejected with IOException and nothing applied
+    private static boolean rejectsSnapshot(Path file) {
+        ProfessionalRegistry registry = new ProfessionalRegistry();
+        BookingEngine engine = new BookingEngine();
+        try {
+            ScheduleSnapshot.load(file, registry, engine);
+            return false;
+        } catch (IOException e) {
+            return registry.size() == 0 && engine.size() == 0;
+        }
+    }
+
+    /**
+     * Incremental aggregates under random concurrent bookings, status changes,
+     * reschedules, doctor moves and removals - compared afterwards with a full
+     * recomputation, while a reader checks every tally it sees is sane
+     */
+    private static void benchmarkAggregates(int maxSize) {
+        System.out.println("\n// Incremental schedule aggregates");
+        int doctorCount = 300;
+        HealthProfessional[] doctors = new HealthProfessional[doctorCount];
+        String[] departments = {"General Medicine", "Cardiology", "Neurology", "Radiology"};
+        for (int d = 0; d < doctorCount; d++) {
+            doctors[d] = (d % 2 == 0)
+                    ? new GeneralPractitioner(d, "Dr. " + d, departments[d % 4], true, 200)
+                    : new Specialist(d, "Dr. " + d, departments[d % 4], "Heart Surgery", 10);
+        }
+
+        BookingEngine engine = new BookingEngine();
+        ScheduleAggregates aggregates = engine.getAggregates();
+        int threads = 4;
+        int perThread = Math.min(maxSize, 400_000) / threads;
+        AtomicInteger insane = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                for (String department : departments) {
+                    ScheduleAggregates.Tally tally = aggregates.getDepartment(department);
+                    if (tally.getScheduled() < 0 || tally.getConfirmed() < 0 || tally.getCancelled() < 0) {
+                        insane.incrementAndGet();
+                    }
+                }
+                Thread.yield();
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        Thread[] writers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            writers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                List<Appointment> mine = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    int op = random.nextInt(10);
+                    if (op < 5 || mine.isEmpty()) {
+                        Appointment appointment = new Appointment("Patient " + i, mobileFor(seed * perThread + i),
+                                timeFor(random.nextInt(TimeSlot.MINUTES_PER_DAY)),
+                                doctors[random.nextInt(doctorCount)]);
+                        if (engine.book(appointment)) mine.add(appointment);
+                        continue;
+                    }
+                    Appointment appointment = mine.get(random.nextInt(mine.size()));
+                    switch (op) {
+                        case 5:
+                            appointment.confirm();
+                            break;
+                        case 6:
+                            appointment.transitionTo(AppointmentStatus.CANCELLED);
+                            break;
+                        case 7:
+                            appointment.setTimeSlot(timeFor(random.nextInt(TimeSlot.MINUTES_PER_DAY)));
+                            break;
+                        case 8:
+                            appointment.setDoctor(doctors[random.nextInt(doctorCount)]);
+                            break;
+                        default:
+                            engine.cancel(appointment);
+                            mine.remove(appointment);
+                    }
+                }
+            }, "aggregates-" + t);
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            joinQuietly(writer);
+        }
+        long elapsed = System.nanoTime() - start;
+        reader.interrupt();
+        joinQuietly(reader);
+
+        start = System.nanoTime();
+        ScheduleAggregates recomputed = ScheduleAggregates.of(engine.snapshot());
+        long scanNanos = System.nanoTime() - start;
+
+        int reads = 1_000_000;
+        long sum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            sum += aggregates.getDepartment(departments[i & 3]).getActive();
+        }
+        long readNanos = System.nanoTime() - start;
+
+        boolean consistent = insane.get() == 0
+                && aggregates.getDoctorTallies().equals(recomputed.getDoctorTallies())
+                && aggregates.getDepartmentTallies().equals(recomputed.getDepartmentTallies())
+                && aggregates.getTypeTallies().equals(recomputed.getTypeTallies());
+        for (HealthProfessional doctor : doctors) {
+            if (doctor instanceof GeneralPractitioner) {
+                consistent &= aggregates.getDoctor(doctor.getId()).getActive() == engine.getBookedCount(doctor.getId());
+            }
+        }
+        consistent &= lateChangesIgnored();
+        System.out.printf("operations=%,d  appointments=%,d  %,.0f ops/s  read=%.1f ns  full scan=%,d us  %s%n",
+                threads * perThread, engine.size(), threads * perThread / (elapsed / 1e9),
+                (double) readNanos / reads, scanNanos / 1_000, consistent ? "OK" : "MISMATCH");
+        ScheduleAggregates.Tally specialists = aggregates.getType("Specialist");
+        System.out.printf("GP utilization (Dr. 0)=%.2f  Specialist cancellation rate=%.3f  (checksum %d)%n",
+                aggregates.getUtilization((GeneralPractitioner) doctors[0]),
+                specialists.getCancellationRate(), sum);
+    }
+
+    /**
+     * A change request that reaches the engine after the appointment was
+     * removed - as when it loses the race for the segment lock - must leave
+     * the counts and observers alone
+     */
+    private static boolean lateChangesIgnored() {
+        Specialist doctor = new Specialist(1, "Dr. Late", "Cardiology", "Heart Surgery", 10);
+        BookingEngine engine = new BookingEngine();
+        ChangeFeed feed = engine.getChangeFeed();
+        Appointment appointment = new Appointment("Late Change", mobileFor(1), "09:00", doctor);
+        engine.book(appointment);
+        engine.cancel(appointment);
+        long sequence = feed.getLatestSequence();
+
+        boolean applied = engine.statusChangeRequested(appointment, AppointmentStatus.CONFIRMED);
+        engine.timeSlotChangeRequested(appointment, TimeSlot.parse("10:00"));
+        FreeSlot free = engine.findFirstFreeSlot(List.of(doctor), TimeSlot.parse("10:00"), 1);
+        return !applied
+                && appointment.getAppointmentStatus() == AppointmentStatus.SCHEDULED
+                && appointment.getTimeSlot().equals("09:00")
+                && free != null && free.getMinute() == TimeSlot.parse("10:00")
+                && engine.countByStatus(AppointmentStatus.SCHEDULED) == 0
+                && engine.countByStatus(AppointmentStatus.CONFIRMED) == 0
+                && engine.getAggregates().getDoctor(doctor.getId()).getConfirmed() == 0
+                && feed.getLatestSequence() == sequence;
+    }
+
+    /**
+     * Cancellation latency with 100k patients waiting, against the same churn
+     * with an empty waitlist. Checks promotion order on a small case, and
+     * that promotions never push a GP past maxPatientsPerDay
+     */
+    private static void benchmarkWaitlist(int maxSize) {
+        System.out.println("\n// Waitlist promotion on cancellation");
+
+        // Higher urgency wins, then earlier requests; windows must cover the slot
+        GeneralPractitioner solo = new GeneralPractitioner(1, "Dr. Solo", "General Medicine", true, 2);
+        BookingEngine small = new BookingEngine();
+        Waitlist queue = small.getWaitlist();
+        Appointment first = new Appointment("Patient A", mobileFor(1), "09:00", solo);
+        Appointment second = new Appointment("Patient B", mobileFor(2), "10:00", solo);
+        small.book(first);
+        small.book(second);
+        Waitlist.Entry early = queue.add("Early Low", mobileFor(3), 1, solo, 0, DoctorSchedule.MINUTES_PER_DAY);
+        Waitlist.Entry urgent = queue.add("Late Urgent", mobileFor(4), 5, solo, 9 * 60, 9 * 60 + 30);
+        Waitlist.Entry department = queue.addForDepartment("Department Urgent", mobileFor(5), 3,
+                "General Medicine", 10 * 60, 11 * 60);
+        first.transitionTo(AppointmentStatus.CANCELLED);
+        small.cancel(second);
+        boolean ordered = urgent.isPromoted() && urgent.getAppointment().getSlotMinute() == 9 * 60
+                && department.isPromoted() && department.getAppointment().getSlotMinute() == 10 * 60
+                && !early.isPromoted() && queue.size() == 1 && small.getBookedCount(solo.getId()) == 2;
+        System.out.println("promotion order: " + (ordered ? "OK" : "WRONG"));
+
+        // A refused patient stays queued and the slot goes to the next; windows end exclusively
+        Waitlist direct = new Waitlist();
+        Waitlist.Entry refused = direct.add("Refused First", mobileFor(6), 9, solo, 0, DoctorSchedule.MINUTES_PER_DAY);
+        Waitlist.Entry edge = direct.add("Edge Window", mobileFor(7), 5, solo, 9 * 60 + 30, 10 * 60 + 10);
+        Waitlist.Entry next = direct.add("Next In Line", mobileFor(8), 1, solo, 0, DoctorSchedule.MINUTES_PER_DAY);
+        Predicate<Appointment> refuseFirst = appointment -> !appointment.getPatientName().equals("Refused First");
+        Appointment taken = direct.promote(solo, 10 * 60 + 10, refuseFirst);
+        boolean skipped = taken != null && next.isPromoted() && !refused.isPromoted() && !edge.isPromoted()
+                && direct.promote(solo, 10 * 60 + 9, refuseFirst) == edge.getAppointment()
+                && direct.withdraw(refused) && !direct.withdraw(refused) && !direct.withdraw(next)
+                && direct.isEmpty() && direct.sizeForDoctor(solo.getId()) == 0;
+        System.out.println("refused candidate skipped: " + (skipped ? "OK" : "WRONG"));
+
+        // Moving a booking to another doctor frees the old doctor's slot for the waitlist
+        Specialist leaving = new Specialist(2, "Dr. Leaving", "Cardiology", "Heart Surgery", 10);
+        Specialist joining = new Specialist(3, "Dr. Joining", "Cardiology", "Heart Surgery", 10);
+        BookingEngine moves = new BookingEngine();
+        Appointment moved = new Appointment("Patient C", mobileFor(9), "11:00", leaving);
+        moves.book(moved);
+        Waitlist.Entry waitingForSlot = moves.getWaitlist().add("Waiting For Slot", mobileFor(10), 1,
+                leaving, 11 * 60, 11 * 60 + 1);
+        moved.setDoctor(joining);
+        boolean moveRefilled = moved.getDoctor() == joining && waitingForSlot.isPromoted()
+                && waitingForSlot.getAppointment().getDoctor() == leaving
+                && moves.getBookedCount(leaving.getId()) == 1 && moves.getBookedCount(joining.getId()) == 1;
+        System.out.println("doctor change refills slot: " + (moveRefilled ? "OK" : "WRONG"));
+
+        int doctorCount = 200;
+        int booked = 600;
+        HealthProfessional[] doctors = new HealthProfessional[doctorCount];
+        String[] departments = {"General Medicine", "Cardiology", "Neurology", "Radiology"};
+        for (int d = 0; d < doctorCount; d++) {
+            doctors[d] = (d % 2 == 0)
+                    ? new GeneralPractitioner(d, "Dr. " + d, departments[d % 4], true, booked)
+                    : new Specialist(d, "Dr. " + d, departments[d % 4], "Heart Surgery", 10);
+        }
+        int cancels = Math.min(maxSize, 50_000);
+        int waiting = 100_000;
+
+        for (int round = 0; round < 2; round++) {
+            boolean withWaitlist = round == 1;
+            BookingEngine engine = new BookingEngine();
+            for (int d = 0; d < doctorCount; d++) {
+                for (int minute = 0; minute < booked; minute++) {
+                    engine.book(new Appointment("Patient " + minute, mobileFor(d * booked + minute),
+                            TimeSlot.format(minute), doctors[d]));
+                }
+            }
+            Random random = new Random(21);
+            if (withWaitlist) {
+                Waitlist waitlist = engine.getWaitlist();
+                for (int i = 0; i < waiting; i++) {
+                    int from = random.nextInt(booked);
+                    int to = Math.min(DoctorSchedule.MINUTES_PER_DAY, from + 60 + random.nextInt(booked));
+                    if (i % 2 == 0) {
+                        waitlist.add("Waiting " + i, mobileFor(10_000_000 + i), random.nextInt(5),
+                                doctors[random.nextInt(doctorCount)], from, to);
+                    } else {
+                        waitlist.addForDepartment("Waiting " + i, mobileFor(10_000_000 + i), random.nextInt(5),
+                                departments[random.nextInt(departments.length)], from, to);
+                    }
+                }
+            }
+
+            LatencyRecorder latency = new LatencyRecorder();
+            int refilled = 0;
+            for (int i = 0; i < cancels; i++) {
+                HealthProfessional doctor = doctors[random.nextInt(doctorCount)];
+                int minute = random.nextInt(booked);
+                Appointment victim = engine.findConflict(doctor.getId(), minute);
+                if (victim == null) continue;
+                long start = System.nanoTime();
+                if (i % 2 == 0) {
+                    victim.transitionTo(AppointmentStatus.CANCELLED);
+                } else {
+                    engine.cancel(victim);
+                }
+                latency.recordSince(start);
+                if (engine.findConflict(doctor.getId(), minute) != null) refilled++;
+            }
+
+            boolean consistent = refilled == engine.getWaitlist().getPromotedCount()
+                    && engine.getWaitlist().size() + refilled == (withWaitlist ? waiting : 0);
+            for (HealthProfessional doctor : doctors) {
+                if (doctor instanceof GeneralPractitioner) {
+                    consistent &= engine.getBookedCount(doctor.getId()) <= booked;
+                }
+            }
+            System.out.printf("waiting=%,d  cancels=%,d  refilled=%,d  p50=%,d ns  p99=%,d ns  p99.9=%,d ns  %s%n",
+                    withWaitlist ? waiting : 0, latency.getCount(), refilled,
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), consistent ? "OK" : "INCONSISTENT");
+        }
+    }
+
+    /**
+     * Read-heavy traffic: 1, 2 and 4 reader threads against one writer that
+     * books and cancels at a steady pace and publishes every 100 writes. Readers
+     * use the lock-free published view or the engine's locking lookup, and
+     * check every view they read has no double-booked slot and never goes
+     * back a version
+     */
+    private static void benchmarkScheduleViews(int maxSize) {
+        System.out.println("\n// Copy-on-write schedule views under mixed traffic");
+        int doctorCount = 1_000;
+        HealthProfessional[] doctors = new HealthProfessional[doctorCount];
+        for (int d = 0; d < doctorCount; d++) {
+            doctors[d] = new Specialist(d, "Dr. " + d, "Cardiology", "Heart Surgery", 10);
+        }
+        BookingEngine engine = new BookingEngine();
+        int initial = Math.min(maxSize, 100_000);
+        List<Appointment> batch = new ArrayList<>(initial);
+        for (int i = 0; i < initial; i++) {
+            batch.add(new Appointment("Patient " + i, mobileFor(i), timeFor(i / doctorCount),
+                    doctors[i % doctorCount]));
+        }
+        engine.bookAll(batch);
+        SchedulePublisher publisher = engine.getSchedulePublisher();
+        int readsPerThread = 200_000;
+
+        for (boolean lockFree : new boolean[] {false, true}) {
+            for (int readers = 1; readers <= 4; readers *= 2) {
+                AtomicInteger violations = new AtomicInteger();
+                AtomicInteger writes = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(readers);
+                Thread writer = new Thread(() -> {
+                    Random random = new Random(5);
+                    while (done.getCount() > 0) {
+                        Appointment appointment = new Appointment("Walk-in", mobileFor(random.nextInt(1_000_000)),
+                                timeFor(random.nextInt(TimeSlot.MINUTES_PER_DAY)),
+                                doctors[random.nextInt(doctorCount)]);
+                        if (engine.book(appointment) && random.nextBoolean()) {
+                            engine.cancel(appointment);
+                        }
+                        if (writes.incrementAndGet() % 100 == 0) {
+                            publisher.publish();
+                        }
+                        // Keep writes to a small share of the traffic
+                        java.util.concurrent.locks.LockSupport.parkNanos(100_000);
+                    }
+                }, "views-writer");
+                writer.start();
+
+                long start = System.nanoTime();
+                for (int r = 0; r < readers; r++) {
+                    int seed = r;
+                    new Thread(() -> {
+                        Random random = new Random(seed);
+                        long lastVersion = 0;
+                        long rows = 0;
+                        for (int i = 0; i < readsPerThread; i++) {
+                            int doctorId = random.nextInt(doctorCount);
+                            if (lockFree) {
+                                ScheduleView view = publisher.getView();
+                                if (view.getVersion() < lastVersion) violations.incrementAndGet();
+                                lastVersion = view.getVersion();
+                                List<ScheduleView.Row> schedule = view.getDoctor(doctorId);
+                                rows += schedule.size();
+                                if ((i & 63) == 0) {
+                                    java.util.BitSet held = new java.util.BitSet(TimeSlot.MINUTES_PER_DAY);
+                                    for (ScheduleView.Row row : schedule) {
+                                        if (row.getStatus().isActive()) {
+                                            if (held.get(row.getSlotMinute())) violations.incrementAndGet();
+                                            held.set(row.getSlotMinute());
+                                        }
+                                    }
+                                }
+                            } else {
+                                rows += engine.findByDoctor(doctorId).size();
+                            }
+                        }
+                        if (rows == 0) violations.incrementAndGet();
+                        done.countDown();
+                    }, "views-reader-" + r).start();
+                }
+                awaitQuietly(done);
+                long elapsed = System.nanoTime() - start;
+                joinQuietly(writer);
+
+                System.out.printf("%-9s readers=%d  reads=%,.0f/s  writes=%,.0f/s  version=%,d  %s%n",
+                        lockFree ? "view" : "locking", readers, readers * readsPerThread / (elapsed / 1e9),
+                        writes.get() / (elapsed / 1e9), publisher.getView().getVersion(),
+                        violations.get() == 0 ? "OK" : violations.get() + " VIOLATIONS");
+            }
+        }
+
+        // Each bookAll spans doctors in different stripes; every view must hold all of it or none
+        int batches = 300;
+        int width = 20;
+        HealthProfessional[] spreadDoctors = new HealthProfessional[width];
+        for (int d = 0; d < width; d++) {
+            spreadDoctors[d] = new Specialist(doctorCount + d, "Dr. " + (doctorCount + d),
+                    "Cardiology", "Heart Surgery", 10);
+        }
+        Thread batcher = new Thread(() -> {
+            for (int k = 0; k < batches; k++) {
+                List<Appointment> spread = new ArrayList<>(width);
+                for (int d = 0; d < width; d++) {
+                    spread.add(new Appointment("Batch " + k, mobileFor(k), TimeSlot.format(1_000 + k),
+                            spreadDoctors[d]));
+                }
+                engine.bookAll(spread);
+            }
+        }, "views-batcher");
+        batcher.start();
+        int views = 0;
+        int torn = 0;
+        while (batcher.isAlive() || views == 0) {
+            ScheduleView view = publisher.publish();
+            int[] seen = new int[batches];
+            for (int d = 0; d < width; d++) {
+                for (ScheduleView.Row row : view.getDoctor(spreadDoctors[d].getId())) {
+                    if (row.getSlotMinute() >= 1_000 && row.getSlotMinute() < 1_000 + batches) {
+                        seen[row.getSlotMinute() - 1_000]++;
+                    }
+                }
+            }
+            for (int count : seen) {
+                if (count != 0 && count != width) torn++;
+            }
+            views++;
+        }
+        joinQuietly(batcher);
+        System.out.printf("batches=%d x %d doctors  views checked=%,d  %s%n", batches, width, views,
+                torn == 0 ? "no partial batch OK" : torn + " PARTIAL BATCHES");
+    }
+
+    /**
+     * Patient name search - prefix and one-typo lookups in PatientNameIndex
+     * against a linear scan of the names, checked for the same results. The
+     * index is filled directly with appointment IDs rather than through a
+     * BookingEngine, so 10M rows fit in a few GB of heap and the latencies are
+     * the index's own; a small engine checks the rename, cancel and remove paths
+     */
+    private static void benchmarkNameSearch(int maxSize) {
+        System.out.println("\n// Patient name prefix and fuzzy search");
+        String[] firstNames = syntheticNames(new String[] {"al", "be", "ca", "do", "el", "fi", "ga", "ha", "jo", "ki"},
+                new String[] {"ra", "li", "na", "ro", "ne", "sa", "ti", "mo", "ve", "da"});
+        String[] lastNames = syntheticNames(new String[] {"mor", "bal", "kes", "tan", "wil", "har", "pen", "cro", "dun", "fel"},
+                new String[] {"gan", "ton", "ley", "son", "der", "mon", "ett", "ick", "ard", "ish"});
+        int distinct = Math.min(maxSize, firstNames.length * lastNames.length);
+        String[] names = new String[distinct];
+        for (int n = 0; n < distinct; n++) {
+            names[n] = firstNames[n % firstNames.length] + " " + lastNames[n / firstNames.length];
+        }
+
+        // Appointment i belongs to patient i % distinct
+        PatientNameIndex index = new PatientNameIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < maxSize; i++) {
+            index.add(i, names[i % distinct]);
+        }
+        long buildNanos = System.nanoTime() - start;
+        String[] folded = new String[distinct];
+        for (int n = 0; n < distinct; n++) {
+            folded[n] = PatientNameIndex.fold(names[n]);
+        }
+
+        Random random = new Random(11);
+        boolean consistent = true;
+        int limit = 20;
+        LatencyRecorder prefixLatency = new LatencyRecorder();
+        for (int q = 0; q < SAMPLE_OPERATIONS; q++) {
+            String name = folded[random.nextInt(distinct)];
+            String prefix = name.substring(name.indexOf(' ') + 1, name.indexOf(' ') + 2 + random.nextInt(5));
+            long queryStart = System.nanoTime();
+            long[] ids = index.findByPrefix(prefix, limit);
+            prefixLatency.recordSince(queryStart);
+            consistent &= ids.length == limit;
+        }
+
+        // The scan stops at the limit too, so this is its best case
+        int scans = 20;
+        LatencyRecorder scanLatency = new LatencyRecorder();
+        for (int q = 0; q < scans; q++) {
+            String name = folded[random.nextInt(distinct)];
+            String prefix = name.substring(name.indexOf(' ') + 1, name.length() - 1);
+            long queryStart = System.nanoTime();
+            List<Long> scanned = scanPrefix(folded, maxSize, prefix, limit);
+            scanLatency.recordSince(queryStart);
+
+            // Same full result either way
+            long[] all = index.findByPrefix(prefix, Integer.MAX_VALUE);
+            List<Long> allScanned = scanPrefix(folded, maxSize, prefix, Integer.MAX_VALUE);
+            java.util.Arrays.sort(all);
+            consistent &= scanned.size() == Math.min(limit, allScanned.size())
+                    && java.util.Arrays.equals(all, allScanned.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        // One typo in the surname - swap, substitute, drop or add a letter
+        LatencyRecorder fuzzyLatency = new LatencyRecorder();
+        int fuzzyChecks = 0;
+        for (int q = 0; q < 2_000; q++) {
+            int patient = random.nextInt(distinct);
+            String query = withTypo(names[patient], random);
+            long queryStart = System.nanoTime();
+            long[] ids = index.findSimilar(query, limit);
+            fuzzyLatency.recordSince(queryStart);
+            consistent &= ids.length > 0;
+
+            if (q % 100 == 0) {
+                // Every match is within one edit per word, and the patient is among them
+                long[] all = index.findSimilar(query, Integer.MAX_VALUE);
+                String[] words = PatientNameIndex.fold(query).split(" ");
+                java.util.Set<Long> expected = new java.util.HashSet<>();
+                for (int n = 0; n < distinct; n++) {
+                    String[] nameWords = folded[n].split(" ");
+                    if (similar(words[0], nameWords) && similar(words[1], nameWords)) {
+                        for (long id = n; id < maxSize; id += distinct) {
+                            expected.add(id);
+                        }
+                    }
+                }
+                java.util.Set<Long> found = new java.util.HashSet<>();
+                for (long id : all) {
+                    found.add(id);
+                }
+                consistent &= found.equals(expected) && found.contains((long) patient);
+                fuzzyChecks++;
+            }
+        }
+
+        // Removing and renaming through the engine keeps lookups exact
+        Specialist doctor = new Specialist(1, "Dr. Search", "Cardiology", "Heart Surgery", 10);
+        BookingEngine engine = new BookingEngine();
+        Appointment renamed = new Appointment("Ada Lovelace", mobileFor(1), "09:00", doctor);
+        Appointment removed = new Appointment("Ada Byron", mobileFor(2), "09:15", doctor);
+        Appointment cancelled = new Appointment("Ada King", mobileFor(3), "09:30", doctor);
+        engine.book(renamed);
+        engine.book(removed);
+        engine.book(cancelled);
+        consistent &= engine.findByNamePrefix("ADA", limit).size() == 3;
+        renamed.setPatientName("Grace Hopper");
+        engine.cancelById(removed.getId());
+        // Cancelled in place - still listed by the engine, but no longer found by name
+        cancelled.cancel();
+        cancelled.setPatientName("Ada Kingsley");
+        consistent &= engine.findById(cancelled.getId()) == cancelled
+                && engine.findByNamePrefix("ada", limit).isEmpty()
+                && engine.findByNameSimilar("ada kingsly", limit).isEmpty()
+                && engine.findByNamePrefix("hop", limit).equals(List.of(renamed))
+                && engine.findByNameSimilar("grace hoper", limit).equals(List.of(renamed));
+
+        System.out.printf("appointments=%,d (index filled directly)  names=%,d  build=%,d ms%n",
+                maxSize, distinct, buildNanos / 1_000_000);
+        System.out.printf("prefix p50=%,d ns p99=%,d ns  scan p50=%,.1f ms p99=%,.1f ms"
+                        + "  fuzzy p50=%,d ns p99=%,d ns (%d checked)  %s%n",
+                prefixLatency.getValueAtPercentile(50), prefixLatency.getValueAtPercentile(99),
+                scanLatency.getValueAtPercentile(50) / 1e6, scanLatency.getValueAtPercentile(99) / 1e6,
+                fuzzyLatency.getValueAtPercentile(50), fuzzyLatency.getValueAtPercentile(99), fuzzyChecks,
+                consistent ? "OK" : "MISMATCH");
+    }
+
+    // Every combination of three syllables, capitalised
+    private static String[] syntheticNames(String[] first, String[] rest) {
+        String[] names = new String[first.length * rest.length * rest.length];
+        int n = 0;
+        for (String a : first) {
+            for (String b : rest) {
+                for (String c : rest) {
+                    names[n++] = Character.toUpperCase(a.charAt(0)) + a.substring(1) + b + c;
+                }
+            }
+        }
+        return names;
+    }
+
+    // IDs, in order, of appointments with a name word starting with the prefix
+    private static List<Long> scanPrefix(String[] folded, int appointments, String prefix, int limit) {
+        List<Long> found = new ArrayList<>();
+        for (int i = 0; i < appointments && found.size() < limit; i++) {
+            String name = folded[i % folded.length];
+            if (name.startsWith(prefix) || name.startsWith(prefix, name.indexOf(' ') + 1)) {
+                found.add((long) i);
+            }
+        }
+        return found;
+    }
+
+    private static String withTypo(String name, Random random) {
+        int space = name.indexOf(' ');
+        StringBuilder typo = new StringBuilder(name);
+        int at = space + 2 + random.nextInt(name.length() - space - 3);
+        switch (random.nextInt(4)) {
+            case 0:
+                typo.setCharAt(at, name.charAt(at + 1));
+                typo.setCharAt(at + 1, name.charAt(at));
+                break;
+            case 1:
+                typo.setCharAt(at, (char) ('a' + random.nextInt(26)));
+                break;
+            case 2:
+                typo.deleteCharAt(at);
+                break;
+            default:
+                typo.insert(at, (char) ('a' + random.nextInt(26)));
+                break;
+        }
+        return typo.toString();
+    }
+
+    private static boolean similar(String word, String[] nameWords) {
+        for (String nameWord : nameWords) {
+            if (PatientNameIndex.withinOneEdit(word, nameWord)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Batch placement of pending requests over 5k professionals - greedy
+     * first-fit in arrival order against BatchScheduler, each checked for
+     * double bookings, GP limits, windows and eligibility, then booked
+     */
+    private static void benchmarkBatchScheduling(int maxSize) {
+        System.out.println("\n// Batch scheduling across GPs and Specialists");
+        int gpCount = 4_000;
+        int specialties = 50;
+        List<HealthProfessional> professionals = new ArrayList<>(gpCount + specialties * 20);
+        for (int d = 0; d < gpCount; d++) {
+            professionals.add(new GeneralPractitioner(d, "Dr. GP " + d, "General Practice", d % 5 < 2, 18));
+        }
+        String[] specialtyNames = new String[specialties];
+        for (int s = 0; s < specialties; s++) {
+            // Same length and no shared prefix beyond "spec", so no specialty contains another
+            specialtyNames[s] = "Spec" + (char) ('a' + s / 26) + (char) ('a' + s % 26);
+            for (int k = 0; k < 20; k++) {
+                professionals.add(new Specialist(gpCount + s * 20 + k, "Dr. " + specialtyNames[s] + " " + k,
+                        "Specialist Care", specialtyNames[s], k));
+            }
+        }
+
+        int clinicOpen = 8 * 60;
+        int clinicClose = 18 * 60;
+        int requestCount = Math.min(maxSize, 100_000);
+        Random random = new Random(13);
+        List<BatchScheduler.Request> requests = new ArrayList<>(requestCount);
+        for (int i = 0; i < requestCount; i++) {
+            int from = clinicOpen;
+            int to = clinicClose;
+            if (random.nextBoolean()) {
+                from = clinicOpen + 60 * random.nextInt(10);
+                to = from + 60;
+            }
+            if (random.nextInt(100) < 65) {
+                requests.add(BatchScheduler.Request.forGp("Patient " + i, mobileFor(i), from, to,
+                        random.nextInt(100) < 45));
+            } else {
+                // Popular specialties first, so some are oversubscribed
+                double skew = random.nextDouble();
+                String specialty = specialtyNames[(int) (specialties * skew * skew)];
+                requests.add(BatchScheduler.Request.forReferral("Patient " + i, mobileFor(i),
+                        "Referral for " + specialty.toLowerCase() + " review", from, to));
+            }
+        }
+
+        BookingEngine engine = new BookingEngine();
+        BatchScheduler scheduler = new BatchScheduler(engine, professionals);
+        scheduler.scheduleGreedy(requests);  // warm-up
+        scheduler.schedule(requests);
+        BatchScheduler.Plan greedy = scheduler.scheduleGreedy(requests);
+        BatchScheduler.Plan planned = scheduler.schedule(requests);
+        boolean consistent = isFeasible(greedy, requests) && isFeasible(planned, requests)
+                && planned.getAssignedCount() >= greedy.getAssignedCount();
+
+        boolean[] booked = scheduler.book(planned);
+        int bookedCount = 0;
+        for (boolean b : booked) {
+            if (b) bookedCount++;
+        }
+        consistent &= bookedCount == planned.getAssignedCount() && engine.size() == bookedCount;
+
+        System.out.printf("requests=%,d  professionals=%,d%n", requestCount, professionals.size());
+        for (BatchScheduler.Plan plan : new BatchScheduler.Plan[] {greedy, planned}) {
+            System.out.printf("%-8s placed=%,d  fill=%.1f%%  utilization=%.1f%%  time=%,d ms%n",
+                    plan == greedy ? "greedy" : "batch", plan.getAssignedCount(), plan.getFillRate() * 100,
+                    plan.getUtilization() * 100, plan.getElapsedNanos() / 1_000_000);
+        }
+        System.out.printf("extra placed=%,d  booked=%,d  %s%n",
+                planned.getAssignedCount() - greedy.getAssignedCount(), bookedCount,
+                consistent ? "OK" : "MISMATCH");
+    }
+
+    // No professional double-booked or over their limit, every placement in window and eligible
+    private static boolean isFeasible(BatchScheduler.Plan plan, List<BatchScheduler.Request> requests) {
+        java.util.Set<Long> taken = new java.util.HashSet<>();
+        java.util.Map<Integer, Integer> perDoctor = new java.util.HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            Appointment appointment = plan.getAppointment(i);
+            if (appointment == null) continue;
+            BatchScheduler.Request request = requests.get(i);
+            HealthProfessional doctor = appointment.getDoctor();
+            int minute = appointment.getSlotMinute();
+            if (!taken.add(((long) doctor.getId() << 16) | minute)
+                    || minute < request.getFromMinute() || minute >= request.getToMinute()) {
+                return false;
+            }
+            int count = perDoctor.merge(doctor.getId(), 1, Integer::sum);
+            if (request.getCondition() != null) {
+                if (!(doctor instanceof Specialist) || !((Specialist) doctor).acceptReferral(request.getCondition())) {
+                    return false;
+                }
+            } else if (!(doctor instanceof GeneralPractitioner)
+                    || count > ((GeneralPractitioner) doctor).getMaxPatientsPerDay()
+                    || (request.needsPrescription() && !((GeneralPractitioner) doctor).canPrescribeMedication())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Change feed cost on the booking path - the same book, confirm, move
+     * and cancel mix with no feed, with one subscriber taking everything and
+     * with a slow subscriber added, then a resume from an earlier sequence.
+     * The fast subscriber checks it sees every sequence exactly once, in order
+     */
+    private static void benchmarkChangeFeed(int maxSize) {
+        System.out.println("\n// Change-data-capture feed");
+        int operations = Math.min(maxSize, 200_000);
+        Specialist[] doctors = new Specialist[operations / DoctorSchedule.MINUTES_PER_DAY + 1];
+        for (int d = 0; d < doctors.length; d++) {
+            doctors[d] = new Specialist(d, "Dr. " + d, "Cardiology", "Heart Surgery", 10);
+        }
+        boolean consistent = true;
+
+        for (String mode : new String[] {"warm-up", "none", "fast", "fast+slow"}) {
+            BookingEngine engine = new BookingEngine();
+            ChangeFeed feed = null;
+            FeedSubscriber fast = new FeedSubscriber(Long.MAX_VALUE, 0);
+            FeedSubscriber slow = new FeedSubscriber(1, 1_000_000);
+            if (mode.equals("fast") || mode.equals("fast+slow")) {
+                // Retain the whole run so the fast subscriber can never be overrun
+                feed = new ChangeFeed(4 * operations);
+                engine.addObserver(feed);
+                feed.subscribe(fast);
+                if (mode.equals("fast+slow")) {
+                    feed.subscribe(slow);
+                }
+            }
+
+            // On few cores subscribers share the CPU, so also time the booking thread alone
+            java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                Appointment appointment = new Appointment("Patient " + i, mobileFor(i),
+                        timeFor(i % DoctorSchedule.MINUTES_PER_DAY), doctors[i / DoctorSchedule.MINUTES_PER_DAY]);
+                engine.book(appointment);
+                appointment.confirm();
+                if (i % 4 == 0) {
+                    engine.cancel(appointment);
+                } else if (i % 4 == 1) {
+                    appointment.setPatientMobile(mobileFor(operations + i));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+
+            String detail = "";
+            if (feed != null) {
+                long recorded = feed.getLatestSequence();
+                feed.close();
+                awaitQuietly(fast.done);
+                consistent &= fast.received == recorded && fast.outOfOrder == 0 && fast.error == null;
+                if (mode.equals("fast+slow")) {
+                    slow.subscription.cancel();
+                    consistent &= slow.received < recorded;
+                }
+                detail = String.format("  records=%,d  delivery p50=%,d ns p99=%,d ns  slow got=%,d",
+                        recorded, fast.latency.getValueAtPercentile(50), fast.latency.getValueAtPercentile(99),
+                        slow.received);
+
+                if (mode.equals("fast")) {
+                    // Resume a subscriber from 1,000 records back, on a closed feed
+                    FeedSubscriber resumed = new FeedSubscriber(100, 0);
+                    feed.subscribe(resumed, recorded - 999);
+                    awaitQuietly(resumed.done);
+                    consistent &= resumed.received == 1_000 && resumed.outOfOrder == 0 && resumed.error == null;
+
+                    // Resuming before the oldest retained record fails cleanly
+                    ChangeFeed small = new ChangeFeed(16);
+                    engine.addObserver(small);
+                    Specialist late = new Specialist(doctors.length, "Dr. Late", "Cardiology", "Heart Surgery", 10);
+                    for (int i = 0; i < 20; i++) {
+                        engine.book(new Appointment("Late " + i, mobileFor(i), timeFor(i), late));
+                    }
+                    FeedSubscriber tooOld = new FeedSubscriber(Long.MAX_VALUE, 0);
+                    small.subscribe(tooOld, 1);
+                    awaitQuietly(tooOld.done);
+                    consistent &= tooOld.error instanceof IllegalStateException && small.getLaggedCount() == 1;
+                }
+            }
+            if (!mode.equals("warm-up")) {
+                System.out.printf("%-9s %,.0f ns/op  booking thread cpu=%,.0f ns/op%s%n",
+                        mode, (double) elapsed / operations, (double) cpu / operations, detail);
+            }
+        }
+        System.out.println(consistent ? "OK" : "MISMATCH");
+    }
+
+    /**
+     * Heap, off-heap and full-GC cost of the object model against the
+     * columnar store at 10M and 50M rows. Names repeat across patients, as
+     * they do in real schedules. The object model is skipped at sizes that
+     * would not fit in the heap
+     */
+    private static void benchmarkColumnarStorage(int maxSize) {
+        System.out.println("\n// Object model vs off-heap columnar storage");
+        String[] names = new String[50_000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Patient " + i;
+        }
+        GeneralPractitioner gp = new GeneralPractitioner(101, "Dr. Smith", "General Medicine", true, 25);
+        IntFunction<HealthProfessional> doctors = id -> gp;
+
+        for (int size = 10_000_000; size <= maxSize; size *= 5) {
+            long baseline = usedHeap();
+            long start = System.nanoTime();
+            ColumnarAppointmentStore columns = new ColumnarAppointmentStore(doctors);
+            for (int i = 0; i < size; i++) {
+                columns.add(names[i % names.length], MobileNumber.unpack(400_000_000L + i),
+                        TimeSlot.format(i % DoctorSchedule.MINUTES_PER_DAY), 101);
+            }
+            long buildNanos = System.nanoTime() - start;
+            long heap = usedHeap() - baseline;
+            long gcNanos = timeFullGc();
+
+            ColumnarAppointmentStore.Cursor cursor = columns.cursor();
+            boolean consistent = columns.size() == size
+                    && cursor.moveTo(size - 1).getPatientMobile().equals(MobileNumber.unpack(400_000_000L + size - 1))
+                    && columns.countByStatus(AppointmentStatus.SCHEDULED) == size
+                    && columnarLookupsAgree(columns, gp, names);
+            System.out.printf("columnar  rows=%,d  build=%,d ms  heap=%,d MB  off-heap=%,d MB  full GC=%,d ms  %s%n",
+                    size, buildNanos / 1_000_000, heap >> 20, columns.getOffHeapBytes() >> 20,
+                    gcNanos / 1_000_000, consistent ? "OK" : "MISMATCH");
+            columns = null;
+            cursor = null;
+
+            // Roughly 120 bytes per Appointment with its mobile string, plus the list slot
+            if ((long) size * 120 > Runtime.getRuntime().maxMemory() - usedHeap()) {
+                System.out.printf("objects   rows=%,d  skipped - needs about %,d MB of heap%n",
+                        size, (long) size * 120 >> 20);
+                continue;
+            }
+            baseline = usedHeap();
+            start = System.nanoTime();
+            List<Appointment> objects = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                objects.add(new Appointment(names[i % names.length], MobileNumber.unpack(400_000_000L + i),
+                        TimeSlot.format(i % DoctorSchedule.MINUTES_PER_DAY), gp));
+            }
+            buildNanos = System.nanoTime() - start;
+            heap = usedHeap() - baseline;
+            gcNanos = timeFullGc();
+            System.out.printf("objects   rows=%,d  build=%,d ms  heap=%,d MB  off-heap=0 MB  full GC=%,d ms  (%d kept)%n",
+                    size, buildNanos / 1_000_000, heap >> 20, gcNanos / 1_000_000, objects.size());
+            objects = null;
+        }
+    }
+
+    /**
+     * Lookups, cancellation and the Appointment API on a store filled by the
+     * columnar scenario - row 7 is confirmed and cancelled along the way
+     */
+    private static boolean columnarLookupsAgree(ColumnarAppointmentStore columns,
+                                                HealthProfessional doctor, String[] names) {
+        ColumnarAppointmentStore.RowView seventh = columns.findById(columns.getId(7));
+        Appointment expected = new Appointment(names[7], MobileNumber.unpack(400_000_000L + 7),
+                TimeSlot.format(7), doctor);
+        boolean same = seventh != null
+                && seventh.getId() == columns.getId(7)
+                && seventh.equals(columns.findById(seventh.getId()))
+                && seventh.getAppointmentSummary().equals(expected.getAppointmentSummary())
+                && seventh.confirm()
+                && columns.countByStatus(AppointmentStatus.CONFIRMED) == 1;
+
+        // A second booking for the same patient, then cancel both in booking order
+        String mobile = MobileNumber.unpack(400_000_000L + 7);
+        Appointment rebooked = new Appointment(names[7], mobile, "23:59", doctor);
+        long row = columns.add(rebooked);
+        List<ColumnarAppointmentStore.RowView> bookings = columns.findByMobile(mobile);
+        same = same && bookings.size() == 2
+                && bookings.get(0).getRow() == 7 && bookings.get(1).getId() == rebooked.getId()
+                && columns.cancelByMobile(mobile).getRow() == 7
+                && !seventh.isStored()
+                && columns.findById(seventh.getId()) == null
+                && columns.cancelById(rebooked.getId()).getRow() == row
+                && columns.findByMobile(mobile).isEmpty()
+                && columns.cancelByMobile(mobile) == null;
+        return same && columns.countByStatus(AppointmentStatus.CONFIRMED) == 0
+                && columns.size() == columns.getRowCount() - 2;
+    }
+
+    // Wall time of one full collection with everything currently live
+    private static long timeFullGc() {
+        long start = System.nanoTime();
+        System.gc();
+        return System.nanoTime() - start;
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) return;
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.out.println("Warning: could not delete " + directory);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Unique Australian mobile number for a benchmark row
+    static String mobileFor(int i) {
+        return String.format("04%08d", i);
+    }
+
+    // Spread rows across the day's valid HH:mm slots
+    static String timeFor(int i) {
+        int minuteOfDay = i % (24 * 60);
+        return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    /**
+     * LegacyAppointment class - the previous Appointment layout, three Strings
+     * validated by regex plus a String status, kept as the footprint baseline
+     */
+    private static final class LegacyAppointment {
+
+        private static final Pattern MOBILE_PATTERN = Pattern.compile("^04[0-9]{8}$");
+        private static final Pattern TIME_PATTERN = Pattern.compile("^([01]?[0-9]|2[0-3]):[0-5][0-9]$");
+
+        private final String patientName;
+        private final String patientMobile;
+        private final String timeSlot;
+        private final HealthProfessional doctor;
+        private final String status;
+
+        LegacyAppointment(String patientName, String patientMobile,
+                          String timeSlot, HealthProfessional doctor) {
+            if (patientName == null || patientName.trim().length() < 2) {
+                throw new IllegalArgumentException("Invalid patient name: " + patientName);
+            }
+            if (patientMobile == null
+                    || !MOBILE_PATTERN.matcher(patientMobile.trim().replace(" ", "")).matches()) {
+                throw new IllegalArgumentException("Invalid mobile number: " + patientMobile);
+            }
+            if (timeSlot == null || !TIME_PATTERN.matcher(timeSlot.trim()).matches()) {
+                throw new IllegalArgumentException("Invalid time format: " + timeSlot);
+            }
+            if (doctor == null) {
+                throw new IllegalArgumentException("Doctor cannot be null");
+            }
+            this.patientName = patientName.trim();
+            this.patientMobile = patientMobile.trim().replace(" ", "");
+            this.timeSlot = timeSlot;
+            this.doctor = doctor;
+            this.status = "SCHEDULED";
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("LegacyAppointment{patient='").append(patientName)
+              .append("', mobile='").append(patientMobile)
+              .append("', time='").append(timeSlot)
+              .append("', doctor=").append(doctor.getId())
+              .append(", status=").append(status).append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Subscriber requesting batchSize records at a time, optionally slowly,
+     * that checks records arrive in unbroken sequence order
+     */
+    private static final class FeedSubscriber implements java.util.concurrent.Flow.Subscriber<ChangeRecord> {
+        final LatencyRecorder latency = new LatencyRecorder();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long batchSize;
+        final long parkNanos;
+        java.util.concurrent.Flow.Subscription subscription;
+        volatile long received;
+        long outOfOrder;
+        long lastSequence;
+        long pending;
+        volatile Throwable error;
+
+        FeedSubscriber(long batchSize, long parkNanos) {
+            this.batchSize = batchSize;
+            this.parkNanos = parkNanos;
+        }
+
+        @Override
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+            this.subscription = subscription;
+            pending = batchSize;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(ChangeRecord record) {
+            latency.record(System.nanoTime() - record.getCapturedNanos());
+            if (lastSequence != 0 && record.getSequence() != lastSequence + 1) outOfOrder++;
+            lastSequence = record.getSequence();
+            received++;
+            if (parkNanos > 0) {
+                java.util.concurrent.locks.LockSupport.parkNanos(parkNanos);
+            }
+            if (batchSize != Long.MAX_VALUE && --pending == 0) {
+                pending = batchSize;
+                subscription.request(batchSize);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ProfessionalRegistry class - one canonical object per health professional
+ * Registering a professional whose ID is already known returns the existing
+ * instance, so appointments for the same doctor share one object. Lookups by
+ * ID, department and professional type are constant time
+ */
+public class ProfessionalRegistry {
+
+    private final ConcurrentHashMap<Integer, HealthProfessional> byId;
+    private final ConcurrentHashMap<String, List<HealthProfessional>> byDepartment;
+    private final ConcurrentHashMap<String, List<HealthProfessional>> byType;
+
+    /**
+     * Default constructor - creates an empty registry
+     */
+    public ProfessionalRegistry() {
+        this.byId = new ConcurrentHashMap<>();
+        this.byDepartment = new ConcurrentHashMap<>();
+        this.byType = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Register a professional and return the canonical instance for its ID
+     * Throws if the ID already belongs to a different kind of professional
+     */
+    public <T extends HealthProfessional> T register(T professional) {
+        if (professional == null) {
+            throw new IllegalArgumentException("Professional cannot be null");
+        }
+
+        HealthProfessional existing = byId.putIfAbsent(professional.getId(), professional);
+        if (existing == null) {
+            index(professional);
+            return professional;
+        }
+        if (existing.getClass() != professional.getClass()) {
+            throw new IllegalArgumentException("ID " + professional.getId()
+                    + " is already registered as " + existing.getProfessionalType());
+        }
+        @SuppressWarnings("unchecked")
+        T canonical = (T) existing;
+        return canonical;
+    }
+
+    /**
+     * Canonical professional for an ID, or null if none is registered
+     */
+    public HealthProfessional findById(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * All professionals in a department, in registration order
+     */
+    public List<HealthProfessional> findByDepartment(String department) {
+        return view(byDepartment.get(department));
+    }
+
+    /**
+     * All professionals of a type, as named by getProfessionalType()
+     */
+    public List<HealthProfessional> findByType(String professionalType) {
+        return view(byType.get(professionalType));
+    }
+
+    /**
+     * Re-index a professional after its department was changed
+     */
+    public void refresh(HealthProfessional professional) {
+        if (professional == null || byId.get(professional.getId()) != professional) {
+            return;
+        }
+        for (List<HealthProfessional> members : byDepartment.values()) {
+            members.remove(professional);
+        }
+        byDepartment.computeIfAbsent(professional.getDepartment(), k -> new CopyOnWriteArrayList<>())
+                .add(professional);
+    }
+
+    public boolean contains(int id) {
+        return byId.containsKey(id);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Copy of every registered professional
+     */
+    public List<HealthProfessional> getAll() {
+        return new ArrayList<>(byId.values());
+    }
+
+    private void index(HealthProfessional professional) {
+        byDepartment.computeIfAbsent(professional.getDepartment(), k -> new CopyOnWriteArrayList<>())
+                .add(professional);
+        byType.computeIfAbsent(professional.getProfessionalType(), k -> new CopyOnWriteArrayList<>())
+                .add(professional);
+    }
+
+    private static List<HealthProfessional> view(List<HealthProfessional> members) {
+        return (members != null) ? Collections.unmodifiableList(members) : Collections.emptyList();
+    }
+}
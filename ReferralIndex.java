@@ -0,0 +1,226 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * ReferralIndex class - routes a referral to every matching specialist
+ * Builds an Aho-Corasick automaton over all specialties, case-folded once,
+ * so one pass over the condition text finds every specialist that
+ * Specialist.acceptReferral would accept. The index is immutable; build a
+ * new one when specialists or their specialties change
+ */
+public class ReferralIndex {
+
+    // Most experienced first, then by ID for a stable order
+    private static final Comparator<Specialist> BY_EXPERIENCE =
+            Comparator.comparingInt(Specialist::getYearsOfSpecialization).reversed()
+                    .thenComparingInt(Specialist::getId);
+
+    private final TransitionTable transitions;
+    private final int[] failure;
+    private final int[] output;        // pattern ending at a state, or -1
+    private final int[] outputLink;    // nearest state on the failure chain with an output, or -1
+    private final Specialist[][] specialistsByPattern;
+
+    /**
+     * Build the index over a set of specialists
+     */
+    public ReferralIndex(Collection<Specialist> specialists) {
+        // Group specialists sharing the same folded specialty into one pattern
+        HashMap<String, List<Specialist>> groups = new HashMap<>();
+        for (Specialist specialist : specialists) {
+            groups.computeIfAbsent(fold(specialist.getSpecialty()), k -> new ArrayList<>()).add(specialist);
+        }
+
+        String[] patterns = groups.keySet().toArray(new String[0]);
+        this.specialistsByPattern = new Specialist[patterns.length][];
+        int stateCount = 1;
+        for (int p = 0; p < patterns.length; p++) {
+            Specialist[] group = groups.get(patterns[p]).toArray(new Specialist[0]);
+            Arrays.sort(group, BY_EXPERIENCE);
+            specialistsByPattern[p] = group;
+            stateCount += patterns[p].length();
+        }
+
+        this.transitions = new TransitionTable(stateCount);
+        int[] patternAt = new int[stateCount];
+        Arrays.fill(patternAt, -1);
+        int states = 1;
+        for (int p = 0; p < patterns.length; p++) {
+            int state = 0;
+            for (int i = 0; i < patterns[p].length(); i++) {
+                char c = patterns[p].charAt(i);
+                int next = transitions.get(state, c);
+                if (next < 0) {
+                    next = states++;
+                    transitions.put(state, c, next);
+                }
+                state = next;
+            }
+            patternAt[state] = p;
+        }
+
+        this.output = Arrays.copyOf(patternAt, states);
+        this.failure = new int[states];
+        this.outputLink = new int[states];
+        outputLink[0] = -1;
+        buildFailureLinks(patterns);
+    }
+
+    /**
+     * Build the index over every Specialist in a registry
+     */
+    public static ReferralIndex fromRegistry(ProfessionalRegistry registry) {
+        List<Specialist> specialists = new ArrayList<>();
+        for (HealthProfessional professional : registry.getAll()) {
+            if (professional instanceof Specialist) {
+                specialists.add((Specialist) professional);
+            }
+        }
+        return new ReferralIndex(specialists);
+    }
+
+    /**
+     * Every specialist whose specialty appears in the condition text,
+     * most experienced first
+     */
+    public List<Specialist> findSpecialists(String condition) {
+        List<Specialist> result = new ArrayList<>();
+        if (condition == null) {
+            return result;
+        }
+
+        BitSet found = new BitSet(specialistsByPattern.length);
+        collect(0, found);  // an empty specialty matches any condition
+        int state = 0;
+        for (int i = 0; i < condition.length(); i++) {
+            char c = Character.toLowerCase(condition.charAt(i));
+            int next;
+            while ((next = transitions.get(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = Math.max(next, 0);
+            collect(state, found);
+        }
+
+        for (int p = found.nextSetBit(0); p >= 0; p = found.nextSetBit(p + 1)) {
+            result.addAll(Arrays.asList(specialistsByPattern[p]));
+        }
+        if (found.cardinality() > 1) {
+            result.sort(BY_EXPERIENCE);
+        }
+        return result;
+    }
+
+    /**
+     * Most experienced matching specialist, or null if none accepts the referral
+     */
+    public Specialist findBestSpecialist(String condition) {
+        List<Specialist> matches = findSpecialists(condition);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    // Same folding the index uses on condition text, one character at a time
+    static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private void collect(int state, BitSet found) {
+        int current = (output[state] >= 0) ? state : outputLink[state];
+        while (current >= 0) {
+            found.set(output[current]);
+            current = outputLink[current];
+        }
+    }
+
+    // Breadth-first over the trie, so every failure target is finished first
+    private void buildFailureLinks(String[] patterns) {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] parent = new int[failure.length];
+        char[] via = new char[failure.length];
+
+        // Recover each state's parent and incoming character from the patterns
+        for (String pattern : patterns) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int next = transitions.get(state, pattern.charAt(i));
+                parent[next] = state;
+                via[next] = pattern.charAt(i);
+                state = next;
+            }
+        }
+        List<List<Integer>> children = new ArrayList<>(failure.length);
+        for (int s = 0; s < failure.length; s++) {
+            children.add(new ArrayList<>());
+        }
+        for (int s = 1; s < failure.length; s++) {
+            children.get(parent[s]).add(s);
+        }
+
+        queue.addAll(children.get(0));
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (parent[state] != 0) {
+                int fallback = failure[parent[state]];
+                int next;
+                while ((next = transitions.get(fallback, via[state])) < 0 && fallback != 0) {
+                    fallback = failure[fallback];
+                }
+                failure[state] = Math.max(next, 0);
+            }
+            int target = failure[state];
+            outputLink[state] = (output[target] >= 0) ? target : outputLink[target];
+            queue.addAll(children.get(state));
+        }
+    }
+
+    /**
+     * Open-addressing map from (state, character) to the next state
+     * Keys are packed into a long, so lookups never box or allocate
+     */
+    private static class TransitionTable {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        TransitionTable(int expectedEntries) {
+            int capacity = Integer.highestOneBit(Math.max(expectedEntries, 2) * 2 - 1) << 1;
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(keys, -1L);
+        }
+
+        int get(int state, char c) {
+            long key = ((long) state << 16) | c;
+            for (int slot = hash(key); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+                if (keys[slot] == -1L) return -1;
+            }
+        }
+
+        void put(int state, char c, int next) {
+            long key = ((long) state << 16) | c;
+            int slot = hash(key);
+            while (keys[slot] != -1L && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = next;
+        }
+
+        private int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ScheduleAggregates class - running appointment counts per doctor,
+ * department and professional type
+ * Each BookingEngine keeps one up to date as an observer, so reports such as
+ * appointments per department, GP utilization or Specialist cancellation
+ * rates are single map lookups instead of scans. Every key maps to an
+ * immutable Tally that is replaced atomically, so a reader always sees one
+ * consistent set of counts for a key even while bookings continue
+ */
+public class ScheduleAggregates implements BookingObserver {
+
+    private final ConcurrentHashMap<Integer, Tally> byDoctor;
+    private final ConcurrentHashMap<String, Tally> byDepartment;
+    private final ConcurrentHashMap<String, Tally> byType;
+
+    // Department each doctor's counts were filed under, so a later
+    // setDepartment cannot leave counts stranded in the old department
+    private final ConcurrentHashMap<Integer, String> departmentOf;
+
+    /**
+     * Default constructor - empty aggregates
+     */
+    public ScheduleAggregates() {
+        this.byDoctor = new ConcurrentHashMap<>();
+        this.byDepartment = new ConcurrentHashMap<>();
+        this.byType = new ConcurrentHashMap<>();
+        this.departmentOf = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Aggregates rebuilt from scratch - a full scan, for checking the
+     * incremental counts
+     */
+    public static ScheduleAggregates of(Iterable<Appointment> appointments) {
+        ScheduleAggregates aggregates = new ScheduleAggregates();
+        for (Appointment appointment : appointments) {
+            aggregates.appointmentBooked(appointment);
+        }
+        return aggregates;
+    }
+
+    @Override
+    public void appointmentBooked(Appointment appointment) {
+        update(appointment.getDoctor(), null, appointment.getAppointmentStatus());
+    }
+
+    // Tally per doctor first, then fold each doctor in with one update per map
+    @Override
+    public void appointmentsRestored(List<Appointment> appointments) {
+        int statuses = AppointmentStatus.values().length;
+        HashMap<HealthProfessional, int[]> counts = new HashMap<>();
+        for (Appointment appointment : appointments) {
+            int[] counted = counts.computeIfAbsent(appointment.getDoctor(), doctor -> new int[statuses]);
+            counted[appointment.getAppointmentStatus().code()]++;
+        }
+        for (Map.Entry<HealthProfessional, int[]> entry : counts.entrySet()) {
+            HealthProfessional doctor = entry.getKey();
+            int[] added = entry.getValue();
+            String department = departmentOf.computeIfAbsent(doctor.getId(), id -> doctor.getDepartment());
+            byDoctor.compute(doctor.getId(), (key, tally) -> Tally.plus(tally, added));
+            byDepartment.compute(department, (key, tally) -> Tally.plus(tally, added));
+            byType.compute(doctor.getProfessionalType(), (key, tally) -> Tally.plus(tally, added));
+        }
+    }
+
+    @Override
+    public void statusChanged(Appointment appointment, AppointmentStatus oldStatus) {
+        update(appointment.getDoctor(), oldStatus, appointment.getAppointmentStatus());
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        update(appointment.getDoctor(), appointment.getAppointmentStatus(), null);
+    }
+
+    public Tally getDoctor(int doctorId) {
+        return byDoctor.getOrDefault(doctorId, Tally.EMPTY);
+    }
+
+    public Tally getDepartment(String department) {
+        return (department != null) ? byDepartment.getOrDefault(department.trim(), Tally.EMPTY) : Tally.EMPTY;
+    }
+
+    /**
+     * Counts for a professional type, e.g. "Specialist"
+     */
+    public Tally getType(String professionalType) {
+        return (professionalType != null) ? byType.getOrDefault(professionalType, Tally.EMPTY) : Tally.EMPTY;
+    }
+
+    /**
+     * Share of a GP's daily capacity taken by active appointments, 0 to 1
+     */
+    public double getUtilization(GeneralPractitioner gp) {
+        return (double) getDoctor(gp.getId()).getActive() / gp.getMaxPatientsPerDay();
+    }
+
+    /**
+     * Copies of the per-key tallies - each tally is consistent on its own
+     */
+    public Map<Integer, Tally> getDoctorTallies() {
+        return Collections.unmodifiableMap(new HashMap<>(byDoctor));
+    }
+
+    public Map<String, Tally> getDepartmentTallies() {
+        return Collections.unmodifiableMap(new HashMap<>(byDepartment));
+    }
+
+    public Map<String, Tally> getTypeTallies() {
+        return Collections.unmodifiableMap(new HashMap<>(byType));
+    }
+
+    // Move one appointment between statuses; null means not counted
+    private void update(HealthProfessional doctor, AppointmentStatus from, AppointmentStatus to) {
+        String department = departmentOf.computeIfAbsent(doctor.getId(), id -> doctor.getDepartment());
+        byDoctor.compute(doctor.getId(), (key, tally) -> Tally.moved(tally, from, to));
+        byDepartment.compute(department, (key, tally) -> Tally.moved(tally, from, to));
+        byType.compute(doctor.getProfessionalType(), (key, tally) -> Tally.moved(tally, from, to));
+    }
+
+    /**
+     * Immutable appointment counts for one key
+     */
+    public static final class Tally {
+        public static final Tally EMPTY = new Tally(0, 0, 0);
+
+        private final int scheduled;
+        private final int confirmed;
+        private final int cancelled;
+
+        private Tally(int scheduled, int confirmed, int cancelled) {
+            this.scheduled = scheduled;
+            this.confirmed = confirmed;
+            this.cancelled = cancelled;
+        }
+
+        // Null, which removes the map entry, once nothing is counted
+        static Tally moved(Tally tally, AppointmentStatus from, AppointmentStatus to) {
+            Tally base = (tally != null) ? tally : EMPTY;
+            Tally updated = new Tally(base.scheduled + change(AppointmentStatus.SCHEDULED, from, to),
+                    base.confirmed + change(AppointmentStatus.CONFIRMED, from, to),
+                    base.cancelled + change(AppointmentStatus.CANCELLED, from, to));
+            return (updated.getTotal() == 0) ? null : updated;
+        }
+
+        // Counts added per status code
+        static Tally plus(Tally tally, int[] added) {
+            Tally base = (tally != null) ? tally : EMPTY;
+            return new Tally(base.scheduled + added[AppointmentStatus.SCHEDULED.code()],
+                    base.confirmed + added[AppointmentStatus.CONFIRMED.code()],
+                    base.cancelled + added[AppointmentStatus.CANCELLED.code()]);
+        }
+
+        private static int change(AppointmentStatus status, AppointmentStatus from, AppointmentStatus to) {
+            return ((status == to) ? 1 : 0) - ((status == from) ? 1 : 0);
+        }
+
+        public int getScheduled() {
+            return scheduled;
+        }
+
+        public int getConfirmed() {
+            return confirmed;
+        }
+
+        public int getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Scheduled and confirmed - the appointments holding a slot
+         */
+        public int getActive() {
+            return scheduled + confirmed;
+        }
+
+        public int getTotal() {
+            return scheduled + confirmed + cancelled;
+        }
+
+        /**
+         * Cancelled share of all counted appointments, 0 when there are none
+         */
+        public double getCancellationRate() {
+            int total = getTotal();
+            return (total == 0) ? 0 : (double) cancelled / total;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(64)
+                    .append("Tally{scheduled=").append(scheduled)
+                    .append(", confirmed=").append(confirmed)
+                    .append(", cancelled=").append(cancelled)
+                    .append('}').toString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            Tally that = (Tally) obj;
+            return scheduled == that.scheduled && confirmed == that.confirmed && cancelled == that.cancelled;
+        }
+
+        @Override
+        public int hashCode() {
+            return (scheduled * 31 + confirmed) * 31 + cancelled;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SchedulePublisher class - publishes ScheduleView versions of a BookingEngine
+ * Writers only mark the doctors they touch; publish copies those doctors'
+ * schedules into the next immutable version and swaps it in with a single
+ * volatile write. Readers take the current view and never lock. A version
+ * is copied while no bookAll is filling its stripes, so it holds all of a
+ * batch or none of it; any other change is atomic per doctor. The engine
+ * publishes after every bookAll; other writers call publish, or let
+ * startPublishing do it on an interval
+ */
+public class SchedulePublisher implements BookingObserver {
+
+    private final BookingEngine engine;
+    private final Set<Integer> dirty;
+    private volatile ScheduleView current;
+    private volatile Thread publisher;
+
+    SchedulePublisher(BookingEngine engine) {
+        this.engine = engine;
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.current = ScheduleView.empty();
+    }
+
+    /**
+     * Mark doctors as changed, e.g. every doctor booked before this publisher existed
+     */
+    void markChanged(Collection<Integer> doctorIds) {
+        dirty.addAll(doctorIds);
+    }
+
+    /**
+     * Latest published view - a volatile read, no locking
+     */
+    public ScheduleView getView() {
+        return current;
+    }
+
+    /**
+     * Publish the changes made since the last version
+     * Returns the new view, or the current one if nothing changed
+     */
+    public synchronized ScheduleView publish() {
+        if (dirty.isEmpty()) {
+            return current;
+        }
+        HashMap<Integer, List<ScheduleView.Row>> changed = new HashMap<>();
+        Lock batches = engine.batchExclusion();
+        batches.lock();
+        try {
+            for (Integer doctorId : dirty) {
+                // Unmark before copying, so a write during the copy marks it again
+                dirty.remove(doctorId);
+                changed.put(doctorId, Collections.unmodifiableList(engine.copySchedule(doctorId)));
+            }
+        } finally {
+            batches.unlock();
+        }
+        current = current.with(changed);
+        return current;
+    }
+
+    /**
+     * Publish on a daemon thread whenever something changed, at most once
+     * per interval
+     */
+    public synchronized void startPublishing(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        if (publisher != null) {
+            return;
+        }
+        long intervalNanos = intervalMillis * 1_000_000;
+        Thread thread = new Thread(() -> {
+            while (publisher == Thread.currentThread()) {
+                publish();
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+        }, "schedule-publisher");
+        thread.setDaemon(true);
+        publisher = thread;
+        thread.start();
+    }
+
+    public synchronized void stopPublishing() {
+        Thread thread = publisher;
+        publisher = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void appointmentBooked(Appointment appointment) {
+        dirty.add(appointment.getDoctor().getId());
+    }
+
+    @Override
+    public void statusChanged(Appointment appointment, AppointmentStatus oldStatus) {
+        dirty.add(appointment.getDoctor().getId());
+    }
+
+    @Override
+    public void timeSlotChanged(Appointment appointment, int oldMinute) {
+        dirty.add(appointment.getDoctor().getId());
+    }
+
+    @Override
+    public void patientMobileChanged(Appointment appointment, long oldMobile) {
+        dirty.add(appointment.getDoctor().getId());
+    }
+
+    @Override
+    public void patientNameChanged(Appointment appointment, String oldName) {
+        dirty.add(appointment.getDoctor().getId());
+    }
+
+    @Override
+    public void appointmentRemoved(Appointment appointment) {
+        dirty.add(appointment.getDoctor().getId());
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * ScheduleRenderer class - batched text output for schedules
+ * Renders appointments and professionals into one reusable StringBuilder and
+ * hands it to the output in large chunks, instead of a println per line
+ */
+public class ScheduleRenderer implements Flushable {
+
+    public static final String NEW_LINE = System.lineSeparator();
+
+    private static final int DEFAULT_FLUSH_THRESHOLD = 64 * 1024;
+
+    private final Appendable output;
+    private final StringBuilder buffer;
+    private final int flushThreshold;
+
+    /**
+     * Parameterized constructor - output can be a Writer, PrintStream or StringBuilder
+     */
+    public ScheduleRenderer(Appendable output) {
+        this(output, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    public ScheduleRenderer(Appendable output, int flushThreshold) {
+        if (output == null) {
+            throw new IllegalArgumentException("Output cannot be null");
+        }
+        this.output = output;
+        this.flushThreshold = Math.max(flushThreshold, 1);
+        this.buffer = new StringBuilder(this.flushThreshold + 1024);
+    }
+
+    /**
+     * Render the full detail block of an appointment
+     */
+    public void renderDetails(Appointment appointment) {
+        appointment.appendDetails(buffer);
+        flushIfFull();
+    }
+
+    /**
+     * Render a one-line summary of an appointment
+     */
+    public void renderSummary(Appointment appointment) {
+        appointment.appendSummary(buffer);
+        buffer.append(NEW_LINE);
+        flushIfFull();
+    }
+
+    /**
+     * Render the full detail block of a health professional
+     */
+    public void renderProfessional(HealthProfessional professional) {
+        professional.appendHealthProfessionalDetails(buffer);
+        flushIfFull();
+    }
+
+    /**
+     * Render a plain line of text
+     */
+    public void renderLine(CharSequence line) {
+        buffer.append(line).append(NEW_LINE);
+        flushIfFull();
+    }
+
+    /**
+     * Builder for callers composing their own line; end it with endLine()
+     */
+    public StringBuilder line() {
+        return buffer;
+    }
+
+    public void endLine() {
+        buffer.append(NEW_LINE);
+        flushIfFull();
+    }
+
+    /**
+     * Write everything rendered so far to the output
+     */
+    @Override
+    public void flush() {
+        try {
+            if (buffer.length() > 0) {
+                output.append(buffer);
+                buffer.setLength(0);
+            }
+            if (output instanceof Flushable) {
+                ((Flushable) output).flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write schedule", e);
+        }
+    }
+
+    private void flushIfFull() {
+        if (buffer.length() >= flushThreshold) {
+            try {
+                output.append(buffer);
+                buffer.setLength(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write schedule", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,575 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * ScheduleSnapshot class - compact binary export and import of a whole schedule
+ * Writes every registered professional and every booked appointment as a
+ * stream of tagged records. Integers are varints, booking sequences are
+ * stored as deltas, and each distinct string (names, departments,
+ * specialties) is written once and then referred to by its dictionary index.
+ * The dictionary is reset whenever it reaches a fixed size and both
+ * directions stream through a fixed-size buffer. Import reads the file
+ * twice: the first pass checks every record, the counts and the CRC32
+ * trailer, and the second builds the appointments, so a truncated or
+ * corrupted file is rejected before anything is applied without staging
+ * its records in memory
+ */
+public final class ScheduleSnapshot {
+
+    private static final int MAGIC = 0x41505831;  // "APX1"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Both sides drop the dictionary at this size, bounding their memory
+    private static final int DICTIONARY_LIMIT = 1 << 16;
+
+    // Longest string a reader accepts, so a corrupt length cannot force a huge allocation
+    private static final int MAX_STRING_BYTES = 1 << 16;
+
+    // Record tags
+    private static final byte END = 0;
+    private static final byte STRING = 1;
+    private static final byte PROFESSIONAL = 2;
+    private static final byte APPOINTMENT = 3;
+    private static final byte RESET = 4;  // clear the string dictionary
+
+    // Professional kinds
+    private static final byte GENERIC = 0;
+    private static final byte GENERAL_PRACTITIONER = 1;
+    private static final byte SPECIALIST = 2;
+
+    private ScheduleSnapshot() {
+    }
+
+    /**
+     * Write the registry and the engine's bookings to a file, replacing it
+     * Returns the number of bytes written. Every booked doctor must be in
+     * the registry, or the file is left as it was
+     */
+    public static long export(ProfessionalRegistry professionals, BookingEngine engine, Path file)
+            throws IOException {
+        if (professionals == null || engine == null || file == null) {
+            throw new IllegalArgumentException("Registry, engine and file are required");
+        }
+        List<Appointment> appointments = registeredBookings(professionals, engine);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return write(professionals, appointments, out);
+        }
+    }
+
+    /**
+     * Write the registry and the engine's bookings, in booking order, to a channel
+     * Returns the number of bytes written. Every booked doctor must be in
+     * the registry, since load resolves doctors by ID; nothing is written otherwise
+     */
+    public static long export(ProfessionalRegistry professionals, BookingEngine engine,
+                              WritableByteChannel out) throws IOException {
+        if (professionals == null || engine == null || out == null) {
+            throw new IllegalArgumentException("Registry, engine and channel are required");
+        }
+        return write(professionals, registeredBookings(professionals, engine), out);
+    }
+
+    // The engine's bookings in booking order, once each one's doctor is known to be registered
+    private static List<Appointment> registeredBookings(ProfessionalRegistry professionals,
+                                                        BookingEngine engine) {
+        List<Appointment> appointments = engine.snapshot();
+        for (Appointment appointment : appointments) {
+            if (professionals.findById(appointment.getDoctorId()) == null) {
+                throw new IllegalArgumentException("Appointment " + appointment.getId() + " is with doctor "
+                        + appointment.getDoctorId() + ", who is not in the registry");
+            }
+        }
+        return appointments;
+    }
+
+    private static long write(ProfessionalRegistry professionals, List<Appointment> appointments,
+                              WritableByteChannel out) throws IOException {
+        Writer writer = new Writer(out);
+        writer.putInt(MAGIC);
+        writer.putVarint(VERSION);
+
+        for (HealthProfessional professional : professionals.getAll()) {
+            writer.writeProfessional(professional);
+        }
+        long professionalCount = writer.records;
+
+        long previousSequence = 0;
+        for (Appointment appointment : appointments) {
+            writer.writeAppointment(appointment, previousSequence);
+            previousSequence = appointment.getBookingSequence();
+        }
+
+        writer.putByte(END);
+        writer.putVarint(professionalCount);
+        writer.putVarint(writer.records - professionalCount);
+        return writer.finish();
+    }
+
+    /**
+     * Read a snapshot file into a registry and an empty engine
+     */
+    public static Result load(Path file, ProfessionalRegistry professionals, BookingEngine engine)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(in, professionals, engine);
+        }
+    }
+
+    /**
+     * Read a snapshot from a channel, starting at its current position.
+     * Professionals are registered, so IDs the registry already knows
+     * resolve to its existing instances; each appointment is restored with
+     * its original booking order and status. The stream is read twice, so it
+     * must not change while it loads: a first pass checks every record, the
+     * counts and the checksum, and a second builds the appointments. Only
+     * then is anything applied, so an invalid stream throws IOException and
+     * leaves the registry and engine untouched
+     */
+    public static Result load(SeekableByteChannel in, ProfessionalRegistry professionals,
+                              BookingEngine engine) throws IOException {
+        if (professionals == null || engine == null || in == null) {
+            throw new IllegalArgumentException("Registry, engine and channel are required");
+        }
+        long from = in.position();
+        Reader reader = new Reader(in);
+        List<HealthProfessional> staged = new ArrayList<>();
+        int count;
+        try {
+            count = decode(reader, professionals, staged, null);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt schedule snapshot", e);
+        }
+
+        // Doctors resolve as they will once the professionals are registered
+        HashMap<Integer, HealthProfessional> doctors = new HashMap<>();
+        for (HealthProfessional professional : staged) {
+            HealthProfessional existing = professionals.findById(professional.getId());
+            doctors.put(professional.getId(), (existing != null) ? existing : professional);
+        }
+        List<Appointment> appointments = new ArrayList<>(count);
+        long[] sequences = new long[count];
+        in.position(from);
+        try {
+            decode(new Reader(in), professionals, null, (sequence, doctorId, name, mobile, minute, status) -> {
+                HealthProfessional doctor = doctors.get(doctorId);
+                if (doctor == null) {
+                    doctor = professionals.findById(doctorId);
+                }
+                if (doctor != null) {
+                    sequences[appointments.size()] = sequence;
+                    appointments.add(new Appointment(name.trim(), mobile, minute, doctor,
+                            AppointmentStatus.fromCode(status)));
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt schedule snapshot", e);
+        }
+
+        for (HealthProfessional professional : staged) {
+            professionals.register(professional);
+        }
+        int appointmentCount = 0;
+        for (boolean restored : engine.restoreAll(appointments, sequences)) {
+            if (restored) {
+                appointmentCount++;
+            }
+        }
+        return new Result(staged.size(), appointmentCount, count - appointmentCount, reader.bytes);
+    }
+
+    /**
+     * Read and check the whole stream without touching the registry or
+     * engine. Distinct professionals go to staged and checked appointments
+     * to the sink, either of which may be null. Returns the appointment count
+     */
+    private static int decode(Reader reader, ProfessionalRegistry professionals,
+                              List<HealthProfessional> staged, AppointmentSink sink) throws IOException {
+        if (reader.getInt() != MAGIC || reader.getVarint() != VERSION) {
+            throw new IOException("Not a version " + VERSION + " schedule snapshot");
+        }
+
+        HashMap<Integer, HealthProfessional> stagedById = new HashMap<>();
+        long sequence = 0;
+        int appointments = 0;
+        while (true) {
+            byte tag = reader.getByte();
+            if (tag == END) {
+                break;
+            }
+            switch (tag) {
+                case STRING:
+                    reader.readString();
+                    break;
+                case RESET:
+                    reader.dictionary.clear();
+                    break;
+                case PROFESSIONAL:
+                    HealthProfessional professional = reader.readProfessional();
+                    HealthProfessional existing = professionals.findById(professional.getId());
+                    if (existing != null && existing.getClass() != professional.getClass()) {
+                        throw new IOException("Snapshot professional " + professional.getId()
+                                + " conflicts with a registered " + existing.getProfessionalType());
+                    }
+                    if (stagedById.putIfAbsent(professional.getId(), professional) == null && staged != null) {
+                        staged.add(professional);
+                    }
+                    break;
+                case APPOINTMENT:
+                    sequence += reader.getVarint();
+                    if (sequence <= 0) {
+                        throw new IOException("Invalid booking sequence in snapshot");
+                    }
+                    int doctor = reader.getIntVarint();
+                    String name = reader.string();
+                    long mobile = reader.getVarint();
+                    long minute = reader.getVarint();
+                    byte status = reader.getByte();
+                    if (name.trim().length() < 2 || !MobileNumber.isValidPacked(mobile)
+                            || minute >= TimeSlot.MINUTES_PER_DAY
+                            || status < 0 || status >= AppointmentStatus.values().length) {
+                        throw new IOException("Invalid appointment in snapshot at booking " + sequence);
+                    }
+                    if (appointments == Integer.MAX_VALUE) {
+                        throw new IOException("Too many appointments in snapshot");
+                    }
+                    appointments++;
+                    if (sink != null) {
+                        sink.accept(sequence, doctor, name, mobile, (int) minute, status);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown snapshot record: " + tag);
+            }
+        }
+
+        long expectedProfessionals = reader.getVarint();
+        long expectedAppointments = reader.getVarint();
+        reader.checkTrailer();
+        if (expectedProfessionals != stagedById.size() || expectedAppointments != appointments) {
+            throw new IOException("Snapshot record counts do not match its trailer");
+        }
+        return appointments;
+    }
+
+    /**
+     * Receives each checked appointment record during the building pass
+     */
+    private interface AppointmentSink {
+        void accept(long sequence, int doctorId, String name, long mobile, int minute, byte status);
+    }
+
+    /**
+     * Counts from one load
+     */
+    public static final class Result {
+        private final int professionals;
+        private final int appointments;
+        private final int skipped;
+        private final long bytes;
+
+        Result(int professionals, int appointments, int skipped, long bytes) {
+            this.professionals = professionals;
+            this.appointments = appointments;
+            this.skipped = skipped;
+            this.bytes = bytes;
+        }
+
+        public int getProfessionals() {
+            return professionals;
+        }
+
+        public int getAppointments() {
+            return appointments;
+        }
+
+        /**
+         * Appointments not restored - unknown doctor, or the slot was taken
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(96)
+                    .append("Result{professionals=").append(professionals)
+                    .append(", appointments=").append(appointments)
+                    .append(", skipped=").append(skipped)
+                    .append(", bytes=").append(bytes)
+                    .append('}').toString();
+        }
+    }
+
+    /**
+     * Buffered encoder - flushes to the channel whenever the buffer fills,
+     * folding each flushed block into the running CRC
+     */
+    private static class Writer {
+        final WritableByteChannel out;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final CRC32 crc = new CRC32();
+        final HashMap<String, Integer> dictionary = new HashMap<>();
+        long records;
+        long written;
+
+        Writer(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        void writeProfessional(HealthProfessional professional) throws IOException {
+            reserve(3);
+            int name = reference(professional.getName());
+            int department = reference(professional.getDepartment());
+            int specialty = (professional instanceof Specialist)
+                    ? reference(((Specialist) professional).getSpecialty()) : -1;
+
+            putByte(PROFESSIONAL);
+            if (professional instanceof GeneralPractitioner) {
+                GeneralPractitioner gp = (GeneralPractitioner) professional;
+                putByte(GENERAL_PRACTITIONER);
+                putCommon(professional, name, department);
+                putByte((byte) (gp.canPrescribeMedication() ? 1 : 0));
+                putVarint(gp.getMaxPatientsPerDay());
+            } else if (professional instanceof Specialist) {
+                putByte(SPECIALIST);
+                putCommon(professional, name, department);
+                putVarint(specialty);
+                putVarint(((Specialist) professional).getYearsOfSpecialization());
+            } else {
+                putByte(GENERIC);
+                putCommon(professional, name, department);
+            }
+            records++;
+        }
+
+        void writeAppointment(Appointment appointment, long previousSequence) throws IOException {
+            reserve(1);
+            int name = reference(appointment.getPatientName());
+            putByte(APPOINTMENT);
+            putVarint(appointment.getBookingSequence() - previousSequence);
+            putVarint(appointment.getDoctor().getId());
+            putVarint(name);
+            putVarint(appointment.getMobileKey());
+            putVarint(appointment.getSlotMinute());
+            putByte(appointment.getAppointmentStatus().code());
+            records++;
+        }
+
+        private void putCommon(HealthProfessional professional, int name, int department) throws IOException {
+            putVarint(professional.getId());
+            putVarint(name);
+            putVarint(department);
+        }
+
+        // Reset first if a record's strings might not fit, so its references stay valid
+        private void reserve(int strings) throws IOException {
+            if (dictionary.size() + strings > DICTIONARY_LIMIT) {
+                putByte(RESET);
+                dictionary.clear();
+            }
+        }
+
+        // Dictionary index of a string, writing its definition the first time it is seen
+        private int reference(String value) throws IOException {
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                return index;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putByte(STRING);
+            putVarint(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+            index = dictionary.size();
+            dictionary.put(value, index);
+            return index;
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        // Unsigned LEB128 - seven bits per byte, high bit set on all but the last
+        void putVarint(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        long finish() throws IOException {
+            ensure(Integer.BYTES);
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.putInt((int) crc.getValue());
+            drain(false);
+            return written;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain(true);
+            }
+        }
+
+        private void drain(boolean checksum) throws IOException {
+            if (checksum) {
+                crc.update(buffer.array(), 0, buffer.position());
+            }
+            buffer.flip();
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffered decoder - refills from the channel on demand and checksums
+     * each byte as it is consumed
+     */
+    private static class Reader {
+        final SeekableByteChannel in;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final CRC32 crc = new CRC32();
+        final List<String> dictionary = new ArrayList<>();
+        int checked;  // buffer bytes already folded into the CRC
+        long bytes;
+
+        Reader(SeekableByteChannel in) {
+            this.in = in;
+            buffer.limit(0);
+        }
+
+        HealthProfessional readProfessional() throws IOException {
+            byte kind = getByte();
+            int id = getIntVarint();
+            String name = string();
+            String department = string();
+            switch (kind) {
+                case GENERAL_PRACTITIONER:
+                    boolean prescribes = getByte() != 0;
+                    return new GeneralPractitioner(id, name, department, prescribes, getIntVarint());
+                case SPECIALIST:
+                    String specialty = string();
+                    return new Specialist(id, name, department, specialty, getIntVarint());
+                case GENERIC:
+                    return new HealthProfessional(id, name, department);
+                default:
+                    throw new IOException("Unknown professional kind: " + kind);
+            }
+        }
+
+        void readString() throws IOException {
+            long size = getVarint();
+            if (size < 0 || size > MAX_STRING_BYTES) {
+                throw new IOException("Snapshot string too long: " + size + " bytes");
+            }
+            byte[] value = new byte[(int) size];
+            for (int offset = 0; offset < value.length; ) {
+                require(1);
+                int length = Math.min(buffer.remaining(), value.length - offset);
+                buffer.get(value, offset, length);
+                offset += length;
+            }
+            dictionary.add(new String(value, StandardCharsets.UTF_8));
+        }
+
+        // Dictionary entry for the next varint reference
+        String string() throws IOException {
+            long index = getVarint();
+            if (index < 0 || index >= dictionary.size()) {
+                throw new IOException("Undefined snapshot string: " + index);
+            }
+            return dictionary.get((int) index);
+        }
+
+        // A varint that must fit a non-negative int - IDs and counts
+        int getIntVarint() throws IOException {
+            long value = getVarint();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot value out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        byte getByte() throws IOException {
+            require(1);
+            return buffer.get();
+        }
+
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = getByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed snapshot varint");
+        }
+
+        // The stored CRC covers every byte before it
+        void checkTrailer() throws IOException {
+            crc.update(buffer.array(), checked, buffer.position() - checked);
+            checked = buffer.position();
+            int expected = (int) crc.getValue();
+            if (getInt() != expected) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+        }
+
+        // Make at least n bytes readable, keeping the unread tail
+        private void require(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            crc.update(buffer.array(), checked, buffer.position() - checked);
+            buffer.compact();
+            while (buffer.position() < n) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("Truncated schedule snapshot");
+                }
+                bytes += read;
+            }
+            buffer.flip();
+            checked = 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ScheduleView class - an immutable, versioned copy of every doctor's schedule
+ * Published by a SchedulePublisher and read without any locking. Doctors are
+ * spread over fixed stripes of immutable maps, and each doctor's schedule is
+ * an immutable list of immutable rows, so a new version copies only the
+ * stripes and schedules that changed and shares everything else with the
+ * version before it
+ */
+public final class ScheduleView {
+
+    static final int STRIPES = 64;
+
+    private static final ScheduleView EMPTY = new ScheduleView(0, new Stripe[STRIPES], 0);
+
+    private final long version;
+    private final Stripe[] stripes;  // null for a stripe with no doctors
+    private final int size;
+
+    private ScheduleView(long version, Stripe[] stripes, int size) {
+        this.version = version;
+        this.stripes = stripes;
+        this.size = size;
+    }
+
+    static ScheduleView empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Publication number - increases by one with each published version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Number of appointments listed in this version
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * A doctor's appointments in time order, or an empty list
+     */
+    public List<Row> getDoctor(int doctorId) {
+        Stripe stripe = stripes[stripeOf(doctorId)];
+        List<Row> rows = (stripe != null) ? stripe.doctors.get(doctorId) : null;
+        return (rows != null) ? rows : Collections.emptyList();
+    }
+
+    /**
+     * IDs of the doctors with appointments in this version
+     */
+    public List<Integer> getDoctorIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            if (stripe != null) {
+                ids.addAll(stripe.doctors.keySet());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Every appointment in this version in booking order - sorts on each call
+     */
+    public List<Row> getAll() {
+        List<Row> all = new ArrayList<>(size);
+        for (Stripe stripe : stripes) {
+            if (stripe != null) {
+                for (List<Row> rows : stripe.doctors.values()) {
+                    all.addAll(rows);
+                }
+            }
+        }
+        all.sort(Comparator.comparingLong(Row::getBookingSequence));
+        return all;
+    }
+
+    /**
+     * Next version with the given doctors' schedules replaced; an empty
+     * schedule removes the doctor. Untouched stripes are shared
+     */
+    ScheduleView with(HashMap<Integer, List<Row>> changed) {
+        Stripe[] updated = stripes.clone();
+        boolean[] copied = new boolean[STRIPES];
+        int newSize = size;
+        for (Map.Entry<Integer, List<Row>> change : changed.entrySet()) {
+            int index = stripeOf(change.getKey());
+            if (!copied[index]) {
+                updated[index] = (stripes[index] != null) ? new Stripe(stripes[index]) : new Stripe();
+                copied[index] = true;
+            }
+            List<Row> previous = (change.getValue().isEmpty())
+                    ? updated[index].doctors.remove(change.getKey())
+                    : updated[index].doctors.put(change.getKey(), change.getValue());
+            newSize += change.getValue().size() - ((previous != null) ? previous.size() : 0);
+        }
+        return new ScheduleView(version + 1, updated, newSize);
+    }
+
+    static int stripeOf(int doctorId) {
+        int h = doctorId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    // One stripe's doctors - never modified once the view is published
+    private static final class Stripe {
+        final HashMap<Integer, List<Row>> doctors;
+
+        Stripe() {
+            this.doctors = new HashMap<>();
+        }
+
+        Stripe(Stripe source) {
+            this.doctors = new HashMap<>(source.doctors);
+        }
+    }
+
+    /**
+     * Immutable copy of one appointment as it was when the view was published
+     */
+    public static final class Row {
+        private final long id;
+        private final String patientName;
+        private final long mobile;
+        private final short slotMinute;
+        private final byte status;
+        private final long bookingSequence;
+        private final HealthProfessional doctor;
+
+        Row(Appointment appointment) {
+            this.id = appointment.getId();
+            this.patientName = appointment.getPatientName();
+            this.mobile = appointment.getMobileKey();
+            this.slotMinute = (short) appointment.getSlotMinute();
+            this.status = appointment.getAppointmentStatus().code();
+            this.bookingSequence = appointment.getBookingSequence();
+            this.doctor = appointment.getDoctor();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getPatientName() {
+            return patientName;
+        }
+
+        public String getPatientMobile() {
+            return MobileNumber.unpack(mobile);
+        }
+
+        public int getSlotMinute() {
+            return slotMinute;
+        }
+
+        public String getTimeSlot() {
+            return TimeSlot.format(slotMinute);
+        }
+
+        public AppointmentStatus getStatus() {
+            return AppointmentStatus.fromCode(status);
+        }
+
+        public long getBookingSequence() {
+            return bookingSequence;
+        }
+
+        public HealthProfessional getDoctor() {
+            return doctor;
+        }
+
+        /**
+         * Same summary line as Appointment.appendSummary
+         */
+        public void appendSummary(StringBuilder out) {
+            out.append(getTimeSlot()).append(" - ").append(patientName)
+                    .append(" with ").append(doctor.getName());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(96)
+                    .append("Row{id=").append(id)
+                    .append(", patient='").append(patientName)
+                    .append("', mobile='");
+            MobileNumber.appendTo(out, mobile);
+            return out.append("', time='").append(getTimeSlot())
+                    .append("', status=").append(getStatus())
+                    .append('}').toString();
+        }
+    }
+}
@@ -5,6 +5,7 @@
 public class Specialist extends HealthProfessional {
 
     private String specialty;
+    private String specialtyKey;  // lower-case specialty, folded once for referrals
     private int yearsOfSpecialization;
 
     /**
@@ -13,6 +14,7 @@ public class Specialist extends HealthProfessional {
     public Specialist() {
         super();
         this.specialty = "Not Specified";
+        this.specialtyKey = specialty.toLowerCase();
         this.yearsOfSpecialization = 0;
     }
 
@@ -23,6 +25,7 @@ public class Specialist extends HealthProfessional {
                       String specialty, int yearsOfSpecialization) {
         super(id, name, department);
         this.specialty = (specialty != null) ? specialty.trim() : "Not Specified";
+        this.specialtyKey = this.specialty.toLowerCase();
 
         if (yearsOfSpecialization < 0) {
             this.yearsOfSpecialization = 0;
@@ -43,13 +46,17 @@ public class Specialist extends HealthProfessional {
      * Print detailed information including specialty and experience
      */
     public void printHealthProfessionalDetails() {
-        System.out.println("The health professional details are:");
-        System.out.println("Type: " + getProfessionalType());
-        super.printDetails();
-        System.out.println("Specialty: " + specialty);
-        System.out.println("Years of Specialization: " + yearsOfSpecialization + " years");
-        System.out.println("Expertise Level: " + getExpertiseLevel());
-        System.out.println("------------------------");
+        StringBuilder details = new StringBuilder(256);
+        appendHealthProfessionalDetails(details);
+        System.out.print(details);
+    }
+
+    @Override
+    protected void appendSpecificDetails(StringBuilder out) {
+        String nl = ScheduleRenderer.NEW_LINE;
+        out.append("Specialty: ").append(specialty).append(nl);
+        out.append("Years of Specialization: ").append(yearsOfSpecialization).append(" years").append(nl);
+        out.append("Expertise Level: ").append(getExpertiseLevel()).append(nl);
     }
 
     /**
@@ -64,10 +71,11 @@ public class Specialist extends HealthProfessional {
 
     /**
      * Check if specialist accepts referrals for specific condition
+     * To route one referral across many specialists, use ReferralIndex
      */
     public boolean acceptReferral(String condition) {
         return condition != null &&
-                condition.toLowerCase().contains(specialty.toLowerCase());
+                condition.toLowerCase().contains(specialtyKey);
     }
 
     // Getters and Setters
@@ -78,6 +86,7 @@ public class Specialist extends HealthProfessional {
     public void setSpecialty(String specialty) {
         if (specialty != null && !specialty.trim().isEmpty()) {
             this.specialty = specialty.trim();
+            this.specialtyKey = this.specialty.toLowerCase();
         }
     }
 
@@ -93,9 +102,11 @@ public class Specialist extends HealthProfessional {
 
     @Override
     public String toString() {
-        return String.format(
-                "Specialist{id=%d, name='%s', specialty='%s', yearsOfSpecialization=%d}",
-                getId(), getName(), specialty, yearsOfSpecialization
-        );
+        return new StringBuilder(96)
+                .append("Specialist{id=").append(getId())
+                .append(", name='").append(getName())
+                .append("', specialty='").append(specialty)
+                .append("', yearsOfSpecialization=").append(yearsOfSpecialization)
+                .append('}').toString();
     }
 }
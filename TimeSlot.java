@@ -0,0 +1,75 @@
+/**
+ * TimeSlot class - compact handling of HH:mm appointment times
+ * A time slot is stored as its minute of the day; parsing is hand-written so
+ * the booking path never runs a regex or allocates
+ */
+public final class TimeSlot {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int INVALID = -1;
+
+    // Shared display strings, one per minute of the day
+    private static final String[] DISPLAY = new String[MINUTES_PER_DAY];
+
+    static {
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            int hours = minute / 60;
+            int minutes = minute % 60;
+            DISPLAY[minute] = new String(new char[] {
+                    (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                    (char) ('0' + minutes / 10), (char) ('0' + minutes % 10)
+            });
+        }
+    }
+
+    private TimeSlot() {
+    }
+
+    /**
+     * Parse H:mm or HH:mm (00:00 to 23:59), ignoring surrounding whitespace
+     * Returns the minute of the day, or INVALID
+     */
+    public static int parse(String time) {
+        if (time == null) return INVALID;
+
+        int start = 0;
+        int end = time.length();
+        while (start < end && time.charAt(start) <= ' ') start++;
+        while (end > start && time.charAt(end - 1) <= ' ') end--;
+
+        int length = end - start;
+        if (length != 4 && length != 5) return INVALID;
+
+        int hours = digit(time.charAt(start));
+        if (length == 5) {
+            hours = hours * 10 + digit(time.charAt(start + 1));
+        }
+        int colon = end - 3;
+        if (hours < 0 || hours > 23 || time.charAt(colon) != ':') return INVALID;
+
+        int tens = digit(time.charAt(colon + 1));
+        int ones = digit(time.charAt(colon + 2));
+        if (tens < 0 || tens > 5 || ones < 0) return INVALID;
+
+        return hours * 60 + tens * 10 + ones;
+    }
+
+    public static boolean isValid(String time) {
+        return parse(time) != INVALID;
+    }
+
+    /**
+     * Display form (HH:mm) of a minute of the day - never allocates
+     */
+    public static String format(int minute) {
+        if (minute < 0 || minute >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Minute of day out of range: " + minute);
+        }
+        return DISPLAY[minute];
+    }
+
+    // Digit value, or a large negative number so sums stay invalid
+    private static int digit(char c) {
+        return (c >= '0' && c <= '9') ? c - '0' : -1000;
+    }
+}
@@ -0,0 +1,357 @@
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Waitlist class - patients waiting for a slot with one doctor, or with any
+ * doctor in a department
+ * Each doctor and department has its own queue, ordered by urgency (highest
+ * first) and then by request order, and split into hour-wide buckets of the
+ * day: an entry sits in the bucket of every hour its time window touches, so
+ * a freed slot only looks at patients whose window reaches that hour. When a
+ * booking engine frees a slot by cancellation it asks the waitlist for the
+ * best patient whose window covers the slot and books them into it before
+ * releasing the doctor's lock, so the slot can never be lost in between.
+ * Capacity rules such as GeneralPractitioner.maxPatientsPerDay still apply:
+ * a patient who cannot be booked stays queued and the slot goes to the next
+ */
+public class Waitlist {
+
+    private static final Comparator<Entry> PRIORITY = Comparator
+            .comparingInt((Entry entry) -> -entry.urgency)
+            .thenComparingLong(entry -> entry.sequence);
+
+    // Width of a window bucket - a day has DoctorSchedule.MINUTES_PER_DAY / BUCKET_MINUTES of them
+    private static final int BUCKET_MINUTES = 60;
+    private static final int BUCKETS = DoctorSchedule.MINUTES_PER_DAY / BUCKET_MINUTES;
+
+    // A queue is only swept once this many finished entries have built up
+    private static final int MIN_TOMBSTONES_FOR_SWEEP = 1024;
+
+    private final ConcurrentHashMap<Integer, WindowQueue> byDoctor;
+    private final ConcurrentHashMap<String, WindowQueue> byDepartment;
+    private final AtomicLong nextSequence;
+    private final AtomicInteger size;
+    private final LongAdder promoted;
+
+    /**
+     * Default constructor - creates an empty waitlist
+     */
+    public Waitlist() {
+        this.byDoctor = new ConcurrentHashMap<>();
+        this.byDepartment = new ConcurrentHashMap<>();
+        this.nextSequence = new AtomicLong();
+        this.size = new AtomicInteger();
+        this.promoted = new LongAdder();
+    }
+
+    /**
+     * Queue a patient for one doctor, for any slot in [fromMinute, toMinute)
+     */
+    public Entry add(String patientName, String patientMobile, int urgency,
+                     HealthProfessional doctor, int fromMinute, int toMinute) {
+        if (doctor == null) {
+            throw new IllegalArgumentException("Doctor cannot be null");
+        }
+        Entry entry = new Entry(this, patientName, patientMobile, urgency, fromMinute, toMinute,
+                nextSequence.incrementAndGet(), doctor.getId(), null);
+        enqueue(byDoctor.computeIfAbsent(doctor.getId(), id -> new WindowQueue()), entry);
+        return entry;
+    }
+
+    /**
+     * Queue a patient for any doctor in a department
+     */
+    public Entry addForDepartment(String patientName, String patientMobile, int urgency,
+                                  String department, int fromMinute, int toMinute) {
+        if (department == null || department.trim().isEmpty()) {
+            throw new IllegalArgumentException("Department cannot be empty");
+        }
+        Entry entry = new Entry(this, patientName, patientMobile, urgency, fromMinute, toMinute,
+                nextSequence.incrementAndGet(), -1, department.trim());
+        enqueue(byDepartment.computeIfAbsent(entry.department, k -> new WindowQueue()), entry);
+        return entry;
+    }
+
+    /**
+     * Take a patient off the waitlist
+     * Returns false if they were already promoted or withdrawn
+     */
+    public boolean withdraw(Entry entry) {
+        if (entry == null || entry.owner != this) return false;
+
+        // A promotion in progress either books the patient or hands them back, so wait it out
+        while (!entry.claim()) {
+            if (entry.isDone()) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        entry.finish();
+        queueOf(entry).remove(entry);
+        size.decrementAndGet();
+        return true;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Patients queued for one doctor, not counting department requests
+     */
+    public int sizeForDoctor(int doctorId) {
+        WindowQueue queue = byDoctor.get(doctorId);
+        return (queue != null) ? queue.size() : 0;
+    }
+
+    public int sizeForDepartment(String department) {
+        WindowQueue queue = (department != null) ? byDepartment.get(department.trim()) : null;
+        return (queue != null) ? queue.size() : 0;
+    }
+
+    public long getPromotedCount() {
+        return promoted.sum();
+    }
+
+    /**
+     * Book the best eligible patient for a freed slot with the booker, which
+     * must hold the doctor's lock. A patient the booker refuses stays queued
+     * and the next one is offered the slot. Returns the new appointment, or
+     * null if nobody waiting fits or every candidate is refused
+     */
+    Appointment promote(HealthProfessional doctor, int minute, Predicate<Appointment> booker) {
+        Iterator<Entry> doctorCandidates = candidates(byDoctor.get(doctor.getId()), minute);
+        Iterator<Entry> departmentCandidates = candidates(byDepartment.get(doctor.getDepartment()), minute);
+        Entry fromDoctor = nextEligible(doctorCandidates, minute);
+        Entry fromDepartment = nextEligible(departmentCandidates, minute);
+
+        // Merge the two queues in priority order
+        while (fromDoctor != null || fromDepartment != null) {
+            Entry best;
+            if (fromDepartment == null || (fromDoctor != null && PRIORITY.compare(fromDoctor, fromDepartment) < 0)) {
+                best = fromDoctor;
+                fromDoctor = nextEligible(doctorCandidates, minute);
+            } else {
+                best = fromDepartment;
+                fromDepartment = nextEligible(departmentCandidates, minute);
+            }
+            // Another doctor's cancellation, or a withdrawal, may have claimed it first
+            if (!best.claim()) {
+                continue;
+            }
+
+            Appointment appointment = new Appointment(best.patientName, MobileNumber.unpack(best.mobile),
+                    TimeSlot.format(minute), doctor);
+            if (!booker.test(appointment)) {
+                best.release();
+                continue;
+            }
+            best.appointment = appointment;
+            best.finish();
+            queueOf(best).remove(best);
+            size.decrementAndGet();
+            promoted.increment();
+            return appointment;
+        }
+        return null;
+    }
+
+    private void enqueue(WindowQueue queue, Entry entry) {
+        queue.add(entry);
+        size.incrementAndGet();
+    }
+
+    private WindowQueue queueOf(Entry entry) {
+        return (entry.department != null) ? byDepartment.get(entry.department) : byDoctor.get(entry.doctorId);
+    }
+
+    // Entries whose window touches the minute's hour, in priority order
+    private static Iterator<Entry> candidates(WindowQueue queue, int minute) {
+        ConcurrentSkipListSet<Entry> bucket = (queue != null) ? queue.bucketFor(minute) : null;
+        return (bucket != null) ? bucket.iterator() : Collections.emptyIterator();
+    }
+
+    // Next waiting entry whose window covers the minute - only entries with a
+    // window edge inside the bucket are ever skipped, and finished entries
+    // met on the way are unlinked from the bucket
+    private static Entry nextEligible(Iterator<Entry> candidates, int minute) {
+        while (candidates.hasNext()) {
+            Entry entry = candidates.next();
+            if (entry.isDone()) {
+                candidates.remove();
+            } else if (minute >= entry.fromMinute && minute < entry.toMinute) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One doctor's or department's queue - a skip list per bucket, created on
+     * first use, holding every entry whose window touches that bucket. A
+     * finished entry stays in its buckets as a tombstone until a scan passes
+     * it, or until tombstones outnumber waiting entries and the queue is swept,
+     * so promoting a wide window does not pay for a removal per hour
+     */
+    private static final class WindowQueue {
+        private final AtomicReferenceArray<ConcurrentSkipListSet<Entry>> buckets =
+                new AtomicReferenceArray<>(BUCKETS);
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger tombstones = new AtomicInteger();
+
+        void add(Entry entry) {
+            for (int b = entry.fromMinute / BUCKET_MINUTES; b <= (entry.toMinute - 1) / BUCKET_MINUTES; b++) {
+                ConcurrentSkipListSet<Entry> bucket = buckets.get(b);
+                if (bucket == null) {
+                    buckets.compareAndSet(b, null, new ConcurrentSkipListSet<>(PRIORITY));
+                    bucket = buckets.get(b);
+                }
+                bucket.add(entry);
+            }
+            size.incrementAndGet();
+        }
+
+        // Called once the entry is finished
+        void remove(Entry entry) {
+            int waiting = size.decrementAndGet();
+            int dead = tombstones.incrementAndGet();
+            if (dead >= MIN_TOMBSTONES_FOR_SWEEP && dead > waiting && tombstones.compareAndSet(dead, 0)) {
+                for (int b = 0; b < BUCKETS; b++) {
+                    ConcurrentSkipListSet<Entry> bucket = buckets.get(b);
+                    if (bucket != null) {
+                        bucket.removeIf(Entry::isDone);
+                    }
+                }
+            }
+        }
+
+        ConcurrentSkipListSet<Entry> bucketFor(int minute) {
+            return buckets.get(minute / BUCKET_MINUTES);
+        }
+
+        int size() {
+            return size.get();
+        }
+    }
+
+    /**
+     * One patient's place on the waitlist
+     */
+    public static final class Entry {
+        // Claimed while a promotion tries to book the patient or a withdrawal takes them off
+        private static final int WAITING = 0;
+        private static final int CLAIMED = 1;
+        private static final int DONE = 2;
+
+        private final Waitlist owner;
+        private final String patientName;
+        private final long mobile;
+        private final int urgency;
+        private final int fromMinute;
+        private final int toMinute;
+        private final long sequence;
+        private final long requestedAt;
+        private final int doctorId;
+        private final String department;
+        private final AtomicInteger state;
+        private volatile Appointment appointment;
+
+        private Entry(Waitlist owner, String patientName, String patientMobile, int urgency,
+                      int fromMinute, int toMinute, long sequence, int doctorId, String department) {
+            if (patientName == null || patientName.trim().length() < 2) {
+                throw new IllegalArgumentException("Invalid patient name: " + patientName);
+            }
+            long mobile = MobileNumber.parse(patientMobile);
+            if (mobile == MobileNumber.INVALID) {
+                throw new IllegalArgumentException("Invalid mobile number: " + patientMobile);
+            }
+            if (fromMinute < 0 || toMinute > DoctorSchedule.MINUTES_PER_DAY || fromMinute >= toMinute) {
+                throw new IllegalArgumentException("Invalid time window: " + fromMinute + "-" + toMinute);
+            }
+            this.owner = owner;
+            this.patientName = patientName.trim();
+            this.mobile = mobile;
+            this.urgency = urgency;
+            this.fromMinute = fromMinute;
+            this.toMinute = toMinute;
+            this.sequence = sequence;
+            this.requestedAt = System.currentTimeMillis();
+            this.doctorId = doctorId;
+            this.department = department;
+            this.state = new AtomicInteger(WAITING);
+        }
+
+        public String getPatientName() {
+            return patientName;
+        }
+
+        public String getPatientMobile() {
+            return MobileNumber.unpack(mobile);
+        }
+
+        public int getUrgency() {
+            return urgency;
+        }
+
+        /**
+         * Wall-clock time the patient joined the waitlist, in milliseconds
+         */
+        public long getRequestedAt() {
+            return requestedAt;
+        }
+
+        /**
+         * Appointment the patient was promoted into, or null while waiting
+         */
+        public Appointment getAppointment() {
+            return appointment;
+        }
+
+        public boolean isPromoted() {
+            return appointment != null;
+        }
+
+        private boolean claim() {
+            return state.compareAndSet(WAITING, CLAIMED);
+        }
+
+        private void release() {
+            state.set(WAITING);
+        }
+
+        private void finish() {
+            state.set(DONE);
+        }
+
+        private boolean isDone() {
+            return state.get() == DONE;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(96)
+                    .append("Entry{patient='").append(patientName)
+                    .append("', urgency=").append(urgency)
+                    .append(", window=").append(TimeSlot.format(fromMinute)).append('-')
+                    .append((toMinute == DoctorSchedule.MINUTES_PER_DAY) ? "24:00" : TimeSlot.format(toMinute));
+            if (department != null) {
+                out.append(", department='").append(department).append('\'');
+            } else {
+                out.append(", doctorId=").append(doctorId);
+            }
+            return out.append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AppointmentBenchmarks class - per-appointment hot paths with no stored data:
+ * validated construction and rendering the detail block
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppointmentBenchmarks {
+
+    @Param({"appointment.construct", "schedule.renderDetails"})
+    String target;
+
+    private IntToLongFunction operation;
+    private int invocation;
+
+    @Setup
+    public void setUp() {
+        operation = Targets.create(target, 0);
+    }
+
+    @Benchmark
+    public long run() {
+        return operation.applyAsLong(invocation++);
+    }
+}
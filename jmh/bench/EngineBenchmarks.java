@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EngineBenchmarks class - BookingEngine lookups and cancel-and-rebook
+ * against an engine already holding the given number of appointments
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class EngineBenchmarks {
+
+    @Param({"engine.cancelAndRebook", "engine.findByMobile"})
+    String target;
+
+    @Param({"1000", "100000", "1000000"})
+    int appointments;
+
+    private IntToLongFunction operation;
+    private int invocation;
+
+    @Setup
+    public void setUp() {
+        operation = Targets.create(target, appointments);
+    }
+
+    @Benchmark
+    public long run() {
+        return operation.applyAsLong(invocation++);
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RegistryBenchmarks class - professional lookup by ID and referral routing
+ * through the ReferralIndex, against registries of increasing size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmarks {
+
+    @Param({"registry.findById", "referral.index"})
+    String target;
+
+    @Param({"10", "1000", "100000"})
+    int professionals;
+
+    private IntToLongFunction operation;
+    private int invocation;
+
+    @Setup
+    public void setUp() {
+        operation = Targets.create(target, professionals);
+    }
+
+    @Benchmark
+    public long run() {
+        return operation.applyAsLong(invocation++);
+    }
+}
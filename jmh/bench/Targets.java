@@ -0,0 +1,25 @@
+package bench;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Targets class - loads a BenchmarkTargets hot path for a JMH benchmark
+ * BenchmarkTargets is in the default package, which code in a named package
+ * cannot reference, so it is looked up by name. The reflective call happens
+ * once per trial; each measured invocation is a plain interface call
+ */
+final class Targets {
+
+    private Targets() {
+    }
+
+    static IntToLongFunction create(String name, int size) {
+        try {
+            return (IntToLongFunction) Class.forName("BenchmarkTargets")
+                    .getMethod("create", String.class, int.class)
+                    .invoke(null, name, size);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create benchmark target " + name, e);
+        }
+    }
+}